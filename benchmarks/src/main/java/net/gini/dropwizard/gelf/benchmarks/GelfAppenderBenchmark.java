@@ -0,0 +1,143 @@
+package net.gini.dropwizard.gelf.benchmarks;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import io.dropwizard.logging.async.AsyncLoggingEventAppenderFactory;
+import io.dropwizard.logging.filter.ThresholdLevelFilterFactory;
+import net.gini.dropwizard.gelf.logging.GelfAppenderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.MDC;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a single log event going through the appender built by {@link GelfAppenderFactory}.
+ * <p>
+ * Run with {@code -prof gc} to get the bytes allocated per operation ({@code gc.alloc.rate.norm}). The streaming
+ * encoder only supports UDP and TCP hosts, compare the encoders with {@code -p encoder=GELF_MESSAGE,STREAMING
+ * -p sink=UDP}. Compare the async queues under contention with {@code -p asyncQueue=BLOCKING_QUEUE,RING_BUFFER
+ * -p async=true -t 8}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GelfAppenderBenchmark {
+
+    private static final Exception EXCEPTION = new IllegalStateException("Benchmark exception",
+            new IOException("Benchmark cause"));
+
+    @Param({"NOOP", "UDP"})
+    public Sink sink;
+
+    @Param({"GELF_MESSAGE"})
+    public GelfAppenderFactory.Encoder encoder;
+
+    @Param({"BLOCKING_QUEUE"})
+    public GelfAppenderFactory.AsyncQueue asyncQueue;
+
+    @Param({"true", "false"})
+    public boolean includeLocation;
+
+    @Param({"true", "false"})
+    public boolean includeFullMDC;
+
+    @Param({"true", "false"})
+    public boolean extractStackTrace;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private Appender<ILoggingEvent> appender;
+    private Logger logger;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final GelfAppenderFactory factory = new GelfAppenderFactory();
+        factory.setEncoder(encoder);
+        factory.setAsyncQueue(asyncQueue);
+        factory.setIncludeLocation(includeLocation);
+        factory.setIncludeFullMDC(includeFullMDC);
+        factory.setExtractStackTrace(extractStackTrace);
+        // Apply back pressure instead of silently discarding INFO events once the queue is 80% full
+        factory.setDiscardingThreshold(0);
+        sink.configure(factory);
+
+        final LoggerContext context = new LoggerContext();
+        final Appender<ILoggingEvent> gelfAppender = factory.build(context, "benchmark", null,
+                new ThresholdLevelFilterFactory(), new AsyncLoggingEventAppenderFactory());
+        // GelfAppenderFactory always wraps the appender, see AbstractAppenderFactory#wrapAsync()
+        appender = async ? gelfAppender : unwrap(gelfAppender);
+
+        logger = context.getLogger("benchmark");
+        logger.setLevel(ch.qos.logback.classic.Level.ALL);
+        logger.setAdditive(false);
+        logger.addAppender(appender);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        logger.detachAndStopAllAppenders();
+        appender.stop();
+        sink.close();
+    }
+
+    @Benchmark
+    public void info(DiagnosticContext context) {
+        logger.info("Processed {} items for customer {}", 42, "ACME Corporation");
+    }
+
+    @Benchmark
+    public void errorWithException(DiagnosticContext context) {
+        logger.error("Could not process request", EXCEPTION);
+    }
+
+    /**
+     * Populates the {@link MDC} of each benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class DiagnosticContext {
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            MDC.put("requestId", "0f5d5c9e-6a8b-4d36-8f55-1f7d5d4c2c4e");
+            MDC.put("userId", "4711");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            MDC.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Appender<ILoggingEvent> unwrap(Appender<ILoggingEvent> appender) {
+        if (appender instanceof AppenderAttachable) {
+            final AppenderAttachable<ILoggingEvent> attachable = (AppenderAttachable<ILoggingEvent>) appender;
+            final Appender<ILoggingEvent> delegate = attachable.iteratorForAppenders().next();
+            attachable.detachAppender(delegate);
+            appender.stop();
+            return delegate;
+        }
+        return appender;
+    }
+}
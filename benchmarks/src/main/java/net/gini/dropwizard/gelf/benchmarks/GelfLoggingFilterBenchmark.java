@@ -0,0 +1,107 @@
+package net.gini.dropwizard.gelf.benchmarks;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.dropwizard.logging.async.AsyncLoggingEventAppenderFactory;
+import io.dropwizard.logging.filter.ThresholdLevelFilterFactory;
+import net.gini.dropwizard.gelf.filters.GelfLoggingFilter;
+import net.gini.dropwizard.gelf.logging.GelfAppenderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what {@link GelfLoggingFilter#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse,
+ * FilterChain)} adds to a request which writes a small response body, including handing the resulting log event to
+ * the appender built by {@link GelfAppenderFactory}.
+ * <p>
+ * Run with {@code -prof gc} to get the bytes allocated per operation ({@code gc.alloc.rate.norm}).
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GelfLoggingFilterBenchmark {
+
+    private static final byte[] BODY = new byte[1024];
+
+    static {
+        Arrays.fill(BODY, "x".getBytes(StandardCharsets.UTF_8)[0]);
+    }
+
+    @Param({"NOOP", "UDP"})
+    public Sink sink;
+
+    @Param({"false", "true"})
+    public boolean asyncRequest;
+
+    @Param({"mdc", "marker"})
+    public String fieldMode;
+
+    private final GelfLoggingFilter filter = new GelfLoggingFilter();
+    private final ServletStubs.Request request = new ServletStubs.Request();
+    private final ServletStubs.Response response = new ServletStubs.Response();
+    private final FilterChain chain = (req, resp) -> resp.getOutputStream().write(BODY);
+
+    private Logger logger;
+    private Appender<ILoggingEvent> appender;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ServletException {
+        final GelfAppenderFactory factory = new GelfAppenderFactory();
+        // Apply back pressure instead of silently discarding INFO events once the queue is 80% full
+        factory.setDiscardingThreshold(0);
+        sink.configure(factory);
+
+        logger = (Logger) LoggerFactory.getLogger(GelfLoggingFilter.class);
+        final LoggerContext context = logger.getLoggerContext();
+        appender = factory.build(context, "benchmark", null, new ThresholdLevelFilterFactory(),
+                new AsyncLoggingEventAppenderFactory());
+        logger.setLevel(ch.qos.logback.classic.Level.INFO);
+        logger.setAdditive(false);
+        logger.addAppender(appender);
+
+        request.setAsyncStarted(asyncRequest);
+        filter.init(ServletStubs.filterConfig(Collections.singletonMap("fieldMode", fieldMode)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        filter.destroy();
+        logger.detachAppender(appender);
+        appender.stop();
+        sink.close();
+    }
+
+    @Benchmark
+    public void doFilter() throws IOException, ServletException {
+        filter.doFilter(request, response, chain);
+        if (asyncRequest) {
+            request.getAsync().complete(response);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package net.gini.dropwizard.gelf.benchmarks;
+
+import biz.paluch.logging.gelf.intern.GelfMessage;
+import biz.paluch.logging.gelf.intern.GelfSender;
+import biz.paluch.logging.gelf.intern.GelfSenderConfiguration;
+import biz.paluch.logging.gelf.intern.GelfSenderProvider;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link GelfSenderProvider} for hosts of the form {@code noop:<anything>}. The created sender serializes every
+ * message into a reusable buffer like a real sender would and then discards it, so benchmarks measure the cost of
+ * the logging pipeline without any I/O.
+ */
+public class NoopGelfSenderProvider implements GelfSenderProvider {
+
+    public static final String SCHEME = "noop:";
+
+    @Override
+    public boolean supports(String host) {
+        return host != null && host.startsWith(SCHEME);
+    }
+
+    @Override
+    public GelfSender create(GelfSenderConfiguration configuration) {
+        return new NoopGelfSender();
+    }
+
+    private static final class NoopGelfSender implements GelfSender {
+
+        private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(8192));
+
+        @Override
+        public boolean sendMessage(GelfMessage message) {
+            while (true) {
+                final ByteBuffer buffer = buffers.get();
+                buffer.clear();
+                try {
+                    message.toJson(buffer, "_");
+                    return true;
+                } catch (BufferOverflowException e) {
+                    buffers.set(ByteBuffer.allocate(buffer.capacity() * 2));
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package net.gini.dropwizard.gelf.benchmarks;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal, allocation-free servlet request and response implementations for benchmarking servlet filters without a
+ * container. Only the methods used by the filters in this project are implemented, everything else throws an
+ * {@link UnsupportedOperationException}.
+ */
+final class ServletStubs {
+
+    private ServletStubs() {
+    }
+
+    private static <T> T unsupported(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(ServletStubs.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                }));
+    }
+
+    /**
+     * Returns a {@link FilterConfig} with the given init parameters.
+     */
+    static FilterConfig filterConfig(Map<String, String> initParameters) {
+        return new FilterConfig() {
+            @Override
+            public String getFilterName() {
+                return "benchmark";
+            }
+
+            @Override
+            public ServletContext getServletContext() {
+                return unsupported(ServletContext.class);
+            }
+
+            @Override
+            public String getInitParameter(String name) {
+                return initParameters.get(name);
+            }
+
+            @Override
+            public Enumeration<String> getInitParameterNames() {
+                return Collections.enumeration(initParameters.keySet());
+            }
+        };
+    }
+
+    static final class Request extends HttpServletRequestWrapper {
+
+        private final Async asyncContext = new Async(this);
+        private boolean asyncStarted;
+
+        Request() {
+            super(unsupported(HttpServletRequest.class));
+        }
+
+        void setAsyncStarted(boolean asyncStarted) {
+            this.asyncStarted = asyncStarted;
+        }
+
+        Async getAsync() {
+            return asyncContext;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return "User-Agent".equalsIgnoreCase(name) ? "Mozilla/5.0 (X11; Linux x86_64) Benchmark/1.0" : null;
+        }
+
+        @Override
+        public String getRemoteAddr() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getAuthType() {
+            return null;
+        }
+
+        @Override
+        public String getMethod() {
+            return "GET";
+        }
+
+        @Override
+        public String getRequestURI() {
+            return "/users/4711/orders";
+        }
+
+        @Override
+        public String getProtocol() {
+            return "HTTP/1.1";
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public String getContentType() {
+            return null;
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return null;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return null;
+        }
+
+        @Override
+        public boolean isAsyncStarted() {
+            return asyncStarted;
+        }
+
+        @Override
+        public AsyncContext getAsyncContext() {
+            return asyncContext;
+        }
+    }
+
+    static final class Response extends HttpServletResponseWrapper {
+
+        private final ServletOutputStream outputStream = new DiscardingServletOutputStream();
+
+        Response() {
+            super(unsupported(HttpServletResponse.class));
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public int getStatus() {
+            return SC_OK;
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/json";
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return "UTF-8";
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return false;
+        }
+
+        @Override
+        public void flushBuffer() {
+        }
+    }
+
+    /**
+     * An {@link AsyncContext} which only records listeners so that the benchmark can complete the request itself.
+     */
+    static final class Async implements AsyncContext {
+
+        private final ServletRequest request;
+        private final List<AsyncListener> listeners = new ArrayList<>(1);
+
+        private Async(ServletRequest request) {
+            this.request = request;
+        }
+
+        void complete(ServletResponse response) throws IOException {
+            final AsyncEvent event = new AsyncEvent(this, request, response);
+            for (AsyncListener listener : listeners) {
+                listener.onComplete(event);
+            }
+            listeners.clear();
+        }
+
+        @Override
+        public void addListener(AsyncListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void addListener(AsyncListener listener, ServletRequest servletRequest,
+                                ServletResponse servletResponse) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public ServletRequest getRequest() {
+            return request;
+        }
+
+        @Override
+        public ServletResponse getResponse() {
+            throw new UnsupportedOperationException("getResponse");
+        }
+
+        @Override
+        public boolean hasOriginalRequestAndResponse() {
+            return true;
+        }
+
+        @Override
+        public void dispatch() {
+            throw new UnsupportedOperationException("dispatch");
+        }
+
+        @Override
+        public void dispatch(String path) {
+            throw new UnsupportedOperationException("dispatch");
+        }
+
+        @Override
+        public void dispatch(ServletContext context, String path) {
+            throw new UnsupportedOperationException("dispatch");
+        }
+
+        @Override
+        public void complete() {
+            throw new UnsupportedOperationException("complete");
+        }
+
+        @Override
+        public void start(Runnable run) {
+            throw new UnsupportedOperationException("start");
+        }
+
+        @Override
+        public <T extends AsyncListener> T createListener(Class<T> clazz) {
+            throw new UnsupportedOperationException("createListener");
+        }
+
+        @Override
+        public void setTimeout(long timeout) {
+        }
+
+        @Override
+        public long getTimeout() {
+            return 0L;
+        }
+    }
+
+    private static final class DiscardingServletOutputStream extends ServletOutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException("setWriteListener");
+        }
+    }
+}
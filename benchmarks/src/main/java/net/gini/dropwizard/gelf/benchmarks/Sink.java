@@ -0,0 +1,56 @@
+package net.gini.dropwizard.gelf.benchmarks;
+
+import biz.paluch.logging.gelf.intern.GelfSenderFactory;
+import net.gini.dropwizard.gelf.logging.GelfAppenderFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * The local destinations benchmarks can send GELF messages to.
+ */
+public enum Sink {
+    /**
+     * Messages are serialized and discarded in-process, see {@link NoopGelfSenderProvider}.
+     */
+    NOOP {
+        @Override
+        void configure(GelfAppenderFactory factory) {
+            GelfSenderFactory.addGelfSenderProvider(NOOP_PROVIDER);
+            factory.setHost(NoopGelfSenderProvider.SCHEME + "benchmark");
+        }
+
+        @Override
+        void close() {
+        }
+    },
+
+    /**
+     * Messages are sent to a UDP socket bound to the loopback interface which never reads them. The kernel drops
+     * datagrams once the receive buffer is full, so the sending side never blocks.
+     */
+    UDP {
+        private DatagramChannel channel;
+
+        @Override
+        void configure(GelfAppenderFactory factory) throws IOException {
+            channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+            factory.setHost("udp:127.0.0.1");
+            factory.setPort(((InetSocketAddress) channel.getLocalAddress()).getPort());
+        }
+
+        @Override
+        void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    };
+
+    private static final NoopGelfSenderProvider NOOP_PROVIDER = new NoopGelfSenderProvider();
+
+    abstract void configure(GelfAppenderFactory factory) throws IOException;
+
+    abstract void close() throws IOException;
+}
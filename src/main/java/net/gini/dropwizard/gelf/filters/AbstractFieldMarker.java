@@ -0,0 +1,85 @@
+package net.gini.dropwizard.gelf.filters;
+
+import net.gini.dropwizard.gelf.logging.FieldMarker;
+import org.slf4j.Marker;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+
+/**
+ * Base class of the {@link FieldMarker}s logged by {@link GelfLoggingFilter}, markers without references which are
+ * equal if their names are.
+ */
+abstract class AbstractFieldMarker implements FieldMarker {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+
+    AbstractFieldMarker(String name) {
+        this.name = name;
+    }
+
+    static void accept(BiConsumer<String, String> consumer, String name, String value) {
+        if (value != null) {
+            consumer.accept(name, value);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void add(Marker reference) {
+        throw new UnsupportedOperationException("A " + name + " marker has no references");
+    }
+
+    @Override
+    public boolean remove(Marker reference) {
+        return false;
+    }
+
+    @Override
+    @Deprecated
+    public boolean hasChildren() {
+        return false;
+    }
+
+    @Override
+    public boolean hasReferences() {
+        return false;
+    }
+
+    @Override
+    public Iterator<Marker> iterator() {
+        return Collections.emptyIterator();
+    }
+
+    @Override
+    public boolean contains(Marker other) {
+        return equals(other);
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return this.name.equals(name);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Marker && name.equals(((Marker) o).getName());
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,95 @@
+package net.gini.dropwizard.gelf.filters;
+
+import java.io.PrintWriter;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link PrintWriter} which counts the bytes the characters written to the response writer are encoded to, and
+ * records when the first and the last byte were written and when the writer was first flushed.
+ * The characters are only encoded by the container, see {@link EncodedLength}.
+ */
+final class CountingPrintWriter extends PrintWriter {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final EncodedLength encodedLength;
+    private final char[] singleChar = new char[1];
+    private long count;
+    private long firstByteNanos = CountingServletOutputStream.NONE;
+    private long lastByteNanos = CountingServletOutputStream.NONE;
+    private long firstFlushNanos = CountingServletOutputStream.NONE;
+
+    CountingPrintWriter(PrintWriter writer, Charset charset) {
+        super(writer);
+        this.encodedLength = EncodedLength.of(charset);
+    }
+
+    @Override
+    public void write(int c) {
+        super.write(c);
+        singleChar[0] = (char) c;
+        written(singleChar, 0, 1);
+    }
+
+    @Override
+    public void write(char[] buf, int off, int len) {
+        super.write(buf, off, len);
+        written(buf, off, len);
+    }
+
+    @Override
+    public void write(String s, int off, int len) {
+        super.write(s, off, len);
+        written(s, off, len);
+    }
+
+    @Override
+    public void println() {
+        // PrintWriter writes the line separator directly to the underlying writer
+        write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length());
+    }
+
+    private void written(CharSequence chars, int off, int len) {
+        if (len > 0) {
+            count += encodedLength.count(chars, off, len);
+            written();
+        }
+    }
+
+    private void written(char[] chars, int off, int len) {
+        written(CharBuffer.wrap(chars), off, len);
+    }
+
+    private void written() {
+        final long now = System.nanoTime();
+        if (firstByteNanos == CountingServletOutputStream.NONE) {
+            firstByteNanos = now;
+        }
+        lastByteNanos = now;
+    }
+
+    @Override
+    public void flush() {
+        if (firstFlushNanos == CountingServletOutputStream.NONE) {
+            firstFlushNanos = System.nanoTime();
+        }
+        super.flush();
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getFirstByteNanos() {
+        return firstByteNanos;
+    }
+
+    long getLastByteNanos() {
+        return lastByteNanos;
+    }
+
+    long getFirstFlushNanos() {
+        return firstFlushNanos;
+    }
+}
@@ -0,0 +1,41 @@
+package net.gini.dropwizard.gelf.filters;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link Reader} which counts the bytes the characters read from the request reader were decoded from using a
+ * {@link RequestBodyCounter}. The characters are only decoded by the container, see {@link EncodedLength}.
+ */
+final class CountingReader extends Reader {
+
+    private final Reader reader;
+    private final EncodedLength encodedLength;
+    private final RequestBodyCounter counter;
+
+    CountingReader(Reader reader, Charset charset, RequestBodyCounter counter) {
+        this.reader = reader;
+        this.encodedLength = EncodedLength.of(charset);
+        this.counter = counter;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        counter.reading();
+        final int read = reader.read(cbuf, off, len);
+        counter.read(read > 0 ? encodedLength.count(CharBuffer.wrap(cbuf), off, read) : 0L);
+        return read;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return reader.ready();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,70 @@
+package net.gini.dropwizard.gelf.filters;
+
+import java.io.IOException;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+
+/**
+ * An implementation of {@link ServletInputStream} which counts the bytes being
+ * read using a {@link RequestBodyCounter}, the counterpart of {@link CountingServletOutputStream}.
+ */
+final class CountingServletInputStream extends ServletInputStream {
+
+    private final ServletInputStream underlyingStream;
+    private final RequestBodyCounter counter;
+
+    CountingServletInputStream(ServletInputStream servletInputStream, RequestBodyCounter counter) {
+        this.underlyingStream = servletInputStream;
+        this.counter = counter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        counter.reading();
+        final int b = underlyingStream.read();
+        counter.read(b < 0 ? 0L : 1L);
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        counter.reading();
+        final int read = underlyingStream.read(b, off, len);
+        counter.read(Math.max(read, 0));
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        counter.reading();
+        final long skipped = underlyingStream.skip(n);
+        counter.read(Math.max(skipped, 0L));
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return underlyingStream.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        underlyingStream.close();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return underlyingStream.isFinished();
+    }
+
+    @Override
+    public boolean isReady() {
+        return underlyingStream.isReady();
+    }
+
+    @Override
+    public void setReadListener(ReadListener readListener) {
+        underlyingStream.setReadListener(readListener);
+    }
+}
@@ -9,15 +9,24 @@ import javax.servlet.WriteListener;
 
 /**
  * An implementation of {@link ServletOutputStream} which counts the bytes being
- * written using a {@link CountingOutputStream}.
+ * written using a {@link CountingOutputStream} and records when the first and the
+ * last byte were written and when the stream was first flushed.
  */
 final class CountingServletOutputStream extends ServletOutputStream {
 
+    /**
+     * The timestamp of events which haven't happened yet, {@link System#nanoTime()} may be negative.
+     */
+    static final long NONE = Long.MIN_VALUE;
+
     /**
      * The underlying stream that is wrapped by CountingOutputStream.
      */
     private final ServletOutputStream underlyingStream;
     private final CountingOutputStream outputStream;
+    private long firstByteNanos = NONE;
+    private long lastByteNanos = NONE;
+    private long firstFlushNanos = NONE;
 
     CountingServletOutputStream(ServletOutputStream servletOutputStream) {
         this.underlyingStream = servletOutputStream;
@@ -43,11 +52,23 @@ final class CountingServletOutputStream extends ServletOutputStream {
     @Override
     public void write(int b) throws IOException {
         outputStream.write(b);
+        written();
     }
 
     @Override
     public void write(final byte[] b, final int off, final int len) throws IOException {
         outputStream.write(b, off, len);
+        if (len > 0) {
+            written();
+        }
+    }
+
+    private void written() {
+        final long now = System.nanoTime();
+        if (firstByteNanos == NONE) {
+            firstByteNanos = now;
+        }
+        lastByteNanos = now;
     }
 
     @Override
@@ -57,6 +78,9 @@ final class CountingServletOutputStream extends ServletOutputStream {
 
     @Override
     public void flush() throws IOException {
+        if (firstFlushNanos == NONE) {
+            firstFlushNanos = System.nanoTime();
+        }
         underlyingStream.flush();
     }
 
@@ -64,6 +88,27 @@ final class CountingServletOutputStream extends ServletOutputStream {
         return outputStream.getCount();
     }
 
+    /**
+     * @return the {@link System#nanoTime()} when the first byte was written or {@link #NONE}
+     */
+    long getFirstByteNanos() {
+        return firstByteNanos;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} when the last byte was written or {@link #NONE}
+     */
+    long getLastByteNanos() {
+        return lastByteNanos;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} when the stream was first flushed or {@link #NONE}
+     */
+    long getFirstFlushNanos() {
+        return firstFlushNanos;
+    }
+
     @Override
     public boolean isReady() {
         return underlyingStream.isReady();
@@ -0,0 +1,123 @@
+package net.gini.dropwizard.gelf.filters;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Computes the number of bytes characters are encoded to in a charset, for characters written or read in chunks.
+ * <p>
+ * The count is computed from the characters for UTF-8, UTF-16BE, UTF-16LE and charsets with a single byte per
+ * character. Only for other charsets, the characters are run through an encoder of the charset in small chunks.
+ * </p>
+ */
+abstract class EncodedLength {
+
+    /**
+     * Creates a counter for a charset. Counters keep state between chunks and must not be shared.
+     *
+     * @param charset the charset
+     * @return the counter
+     */
+    static EncodedLength of(Charset charset) {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            return new CharacterLength(false);
+        }
+        if (StandardCharsets.UTF_16BE.equals(charset) || StandardCharsets.UTF_16LE.equals(charset)) {
+            return new EncodedLength() {
+                @Override
+                long count(CharSequence chars, int off, int len) {
+                    return 2L * len;
+                }
+            };
+        }
+        final CharsetEncoder encoder = charset.newEncoder();
+        if (encoder.maxBytesPerChar() == 1.0f) {
+            return new CharacterLength(true);
+        }
+        return new EncoderLength(encoder);
+    }
+
+    /**
+     * Returns the number of bytes a chunk of characters is encoded to.
+     *
+     * @param chars the characters
+     * @param off   the offset of the chunk
+     * @param len   the length of the chunk
+     * @return the number of bytes
+     */
+    abstract long count(CharSequence chars, int off, int len);
+
+    /**
+     * Counts bytes like UTF-8 or a charset with a single byte per character encodes, i. e. a surrogate pair to four
+     * bytes or the single byte {@code ?} and a lone surrogate to {@code ?}. A surrogate pair may be split across
+     * chunks.
+     */
+    private static final class CharacterLength extends EncodedLength {
+
+        private final boolean singleByte;
+        private boolean pendingHighSurrogate;
+
+        private CharacterLength(boolean singleByte) {
+            this.singleByte = singleByte;
+        }
+
+        @Override
+        long count(CharSequence chars, int off, int len) {
+            long bytes = 0L;
+            for (int i = off; i < off + len; i++) {
+                final char c = chars.charAt(i);
+                if (pendingHighSurrogate) {
+                    pendingHighSurrogate = false;
+                    if (Character.isLowSurrogate(c)) {
+                        bytes += singleByte ? 1 : 4;
+                        continue;
+                    }
+                    bytes += 1;
+                }
+                if (Character.isHighSurrogate(c)) {
+                    pendingHighSurrogate = true;
+                } else if (singleByte || c < 0x80 || Character.isLowSurrogate(c)) {
+                    bytes += 1;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else {
+                    bytes += 3;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Counts the bytes by encoding the characters into a small reusable buffer.
+     */
+    private static final class EncoderLength extends EncodedLength {
+
+        private final CharsetEncoder encoder;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        private EncoderLength(CharsetEncoder encoder) {
+            this.encoder = encoder
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        long count(CharSequence chars, int off, int len) {
+            final CharBuffer in = CharBuffer.wrap(chars, off, off + len);
+            long bytes = 0L;
+            while (true) {
+                buffer.clear();
+                final boolean overflow = encoder.encode(in, buffer, false).isOverflow();
+                bytes += buffer.position();
+                if (!overflow) {
+                    return bytes;
+                }
+            }
+        }
+    }
+}
@@ -2,7 +2,7 @@ package net.gini.dropwizard.gelf.filters;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
-import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -13,15 +13,24 @@ import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.Optional;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A {@link Filter} which logs requests and adds some data about it to the logger's {@link MDC}.
@@ -30,6 +39,69 @@ public class GelfLoggingFilter implements Filter {
 
     private static final Logger LOG = LoggerFactory.getLogger(GelfLoggingFilter.class);
 
+    /**
+     * Where the data about a request is put for the request log event.
+     */
+    enum FieldMode {
+        /**
+         * Put the data into the {@link org.slf4j.MDC} while logging the request, so every appender can access it.
+         */
+        MDC,
+        /**
+         * Attach the data to the request log event as {@link net.gini.dropwizard.gelf.logging.FieldMarker}, so the
+         * MDC isn't touched. Only GELF appenders built by Dropwizard GELF add the data to their messages.
+         */
+        MARKER
+    }
+
+    /**
+     * How the handling of a request ended.
+     */
+    enum Outcome {
+        /**
+         * The request was handled, possibly with an error status.
+         */
+        COMPLETED,
+        /**
+         * An asynchronous request timed out.
+         */
+        TIMEOUT,
+        /**
+         * An exception was thrown while handling the request.
+         */
+        ERROR;
+
+        private final String value = name().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * What is logged about requests.
+     */
+    enum LogMode {
+        /**
+         * Log a message for every request.
+         */
+        REQUESTS,
+        /**
+         * Log a summary of the requests by method, route and status every interval.
+         */
+        SUMMARIES,
+        /**
+         * Log both, a message for every request and the summaries.
+         */
+        BOTH
+    }
+
+    private RequestMatcher includes;
+    private RequestMatcher excludes = RequestMatcher.NONE;
+    private RequestSampler sampler = RequestSampler.ALL;
+    private RouteNormalizer routes = RouteNormalizer.ATTRIBUTE_ONLY;
+    private FieldMode fieldMode = FieldMode.MDC;
+    private LogMode logMode = LogMode.REQUESTS;
+    private long summaryIntervalSeconds = 60L;
+    private RequestSummaries summaries;
+    private ScheduledExecutorService summaryExecutor;
+
     /**
      * Called by the web container to indicate to a filter that it is
      * being placed into service.
@@ -45,12 +117,103 @@ public class GelfLoggingFilter implements Filter {
      * <li>Does not return within a time period defined by the web container
      * </ol>
      *
+     * <p>Requests matching the comma separated patterns of the init parameter {@code exclude} aren't logged, if the
+     * init parameter {@code include} is set only requests matching its patterns are. A pattern is an optional method
+     * and a path, whose segments may be {@code *} for any segment or, as last segment, {@code **} for any number of
+     * segments, e. g. {@code GET /healthcheck,/ping,/static/**}.
+     * </p>
+     * <p>Only a sample of the requests is logged if the init parameters {@code sampleRate} (the default rate between
+     * 0 and 1), {@code statusSampleRates} (rates by status class, e. g. {@code 5xx=1,2xx=0.01}) or
+     * {@code pathSampleRates} (rates by path prefix, e. g. {@code /health=0}) are set. Status class rates take
+     * precedence over path rates, the longest matching path prefix wins.
+     * </p>
+     * <p>If the init parameters {@code slowRequestMillis} (e. g. {@code 1000}) or {@code errorStatuses} (e. g.
+     * {@code 429,5xx}) are set, only requests taking at least that long or with one of these statuses are logged.
+     * </p>
+     * <p>With the init parameter {@code fieldMode} set to {@code marker}, the data about the request is attached to
+     * the request log event as marker instead of being put into the MDC.
+     * </p>
+     * <p>With the init parameter {@code logMode} set to {@code summaries} or {@code both}, a summary of the requests
+     * by method, route and status with their count, response time percentiles and response length is logged every
+     * {@code summaryIntervalSeconds} (60 by default), for at most {@code maximumSummaryRoutes} (1000 by default)
+     * routes and statuses.
+     * </p>
+     * <p>The route template of a request is logged as {@code requestRoute} and used for the summaries if
+     * {@link RouteTemplateFilter} is registered with Jersey or the request URI matches one of the comma separated
+     * JAX-RS templates of the init parameter {@code routeTemplates}, e. g. {@code /users/{id},/files/{path: .+}}.
+     * </p>
+     *
      * @param filterConfig the {@link FilterChain} for this {@link Filter}
      * @throws ServletException if something goes wrong
      */
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
-        // Do nothing
+        if (filterConfig == null) {
+            return;
+        }
+        try {
+            final String include = filterConfig.getInitParameter("include");
+            includes = include == null ? null : RequestMatcher.of(include);
+            final String exclude = filterConfig.getInitParameter("exclude");
+            excludes = exclude == null ? RequestMatcher.NONE : RequestMatcher.of(exclude);
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid request log include or exclude patterns", e);
+        }
+        try {
+            sampler = RequestSampler.of(filterConfig::getInitParameter);
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid request log sampling configuration", e);
+        }
+        final String fieldModeName = filterConfig.getInitParameter("fieldMode");
+        if (fieldModeName != null) {
+            try {
+                fieldMode = FieldMode.valueOf(fieldModeName.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new ServletException("Invalid fieldMode, expected mdc or marker: " + fieldModeName, e);
+            }
+        }
+        try {
+            routes = RouteNormalizer.of(filterConfig.getInitParameter("routeTemplates"));
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid routeTemplates", e);
+        }
+        final String logModeName = filterConfig.getInitParameter("logMode");
+        if (logModeName != null) {
+            try {
+                logMode = LogMode.valueOf(logModeName.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new ServletException("Invalid logMode, expected requests, summaries or both: " + logModeName, e);
+            }
+        }
+        if (logMode != LogMode.REQUESTS) {
+            summaryIntervalSeconds = positiveInitParameter(filterConfig, "summaryIntervalSeconds", 60L);
+            summaries = new RequestSummaries(
+                    (int) Math.min(positiveInitParameter(filterConfig, "maximumSummaryRoutes", 1000L),
+                            Integer.MAX_VALUE));
+            summaryExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("gelf-request-summaries-%d")
+                    .setDaemon(true)
+                    .build());
+            summaryExecutor.scheduleAtFixedRate(this::logSummaries, summaryIntervalSeconds, summaryIntervalSeconds,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    private static long positiveInitParameter(FilterConfig filterConfig, String name, long defaultValue)
+            throws ServletException {
+        final String value = filterConfig.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final long parsed = Long.parseLong(value.trim());
+            if (parsed > 0L) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            throw new ServletException("Invalid " + name + ", expected a positive number: " + value, e);
+        }
+        throw new ServletException("Invalid " + name + ", expected a positive number: " + value);
     }
 
     /**
@@ -87,85 +250,180 @@ public class GelfLoggingFilter implements Filter {
         final HttpServletRequest httpRequest = (HttpServletRequest) request;
         final HttpServletResponse httpResponse = (HttpServletResponse) response;
 
-        final StringBuilder buf = new StringBuilder(256);
-
-        final Optional<String> address = Optional.ofNullable(httpRequest.getHeader(HttpHeaders.X_FORWARDED_FOR));
-        final String clientAddress = address.orElse(request.getRemoteAddr());
-
-        buf.append(clientAddress);
-        buf.append(" - ");
-
-        final String authType = httpRequest.getAuthType();
-        if (authType != null) {
-            buf.append(httpRequest.getUserPrincipal().getName());
-        } else {
-            buf.append("-");
+        // Requests which aren't logged at all don't need the response to be wrapped
+        if (!isLogged(httpRequest)) {
+            chain.doFilter(request, response);
+            return;
         }
-        buf.append(" \"");
-        buf.append(httpRequest.getMethod());
-        buf.append(' ');
-        buf.append(httpRequest.getRequestURI());
-        buf.append(' ');
-        buf.append(request.getProtocol());
-        buf.append("\" ");
-
-        final CountingHttpServletResponseWrapper responseWrapper = new CountingHttpServletResponseWrapper(httpResponse);
 
         final Stopwatch stopwatch = Stopwatch.createUnstarted();
         stopwatch.start();
 
+        final CountingHttpServletRequestWrapper requestWrapper = new CountingHttpServletRequestWrapper(httpRequest);
+        final CountingHttpServletResponseWrapper responseWrapper =
+                new CountingHttpServletResponseWrapper(httpResponse, System.nanoTime());
+
+        boolean handled = false;
         try {
-            chain.doFilter(request, responseWrapper);
+            chain.doFilter(requestWrapper, responseWrapper);
+            handled = true;
         } finally {
             if (request.isAsyncStarted()) {
+                // Don't keep the request until it completes, the container may recycle it
+                final RequestSnapshot snapshot = RequestSnapshot.of(requestWrapper, routes.route(requestWrapper));
                 final AsyncListener listener =
-                        new LoggingAsyncListener(buf, stopwatch, authType, clientAddress, httpRequest,
-                                responseWrapper);
+                        new LoggingAsyncListener(stopwatch, snapshot, requestWrapper.getCounter(), responseWrapper);
                 request.getAsyncContext().addListener(listener);
             } else {
-                logRequest(buf, stopwatch, authType, clientAddress, httpRequest, responseWrapper);
+                logRequest(stopwatch, requestWrapper, responseWrapper, handled ? Outcome.COMPLETED : Outcome.ERROR);
             }
         }
     }
 
-    private static void logRequest(final StringBuilder buf, final Stopwatch stopwatch, final String authType,
-                                   final String clientAddress,
-                                   final HttpServletRequest httpRequest,
-                                   final CountingHttpServletResponseWrapper responseWrapper) {
+    private boolean isLogged(final HttpServletRequest httpRequest) {
+        final String method = httpRequest.getMethod();
+        final String uri = httpRequest.getRequestURI();
+        return (includes == null || includes.matches(method, uri)) && !excludes.matches(method, uri);
+    }
+
+    /**
+     * Logs a request once it has been handled. The data about the request is only read if the request is logged.
+     */
+    private void logRequest(final Stopwatch stopwatch, final CountingHttpServletRequestWrapper httpRequest,
+                            final CountingHttpServletResponseWrapper responseWrapper, final Outcome outcome) {
+        stopwatch.stop();
+        final long responseNanos = stopwatch.elapsed(TimeUnit.NANOSECONDS);
+
+        final String route = summaries != null ? routes.route(httpRequest) : null;
+        final int status = status(responseWrapper, outcome);
+        final double sampleRate = sampleRate(httpRequest.getMethod(), httpRequest.getRequestURI(), route,
+                responseWrapper, status, responseNanos);
+        if (sampleRate < 0.0d) {
+            return;
+        }
+
+        final RequestSnapshot snapshot =
+                RequestSnapshot.of(httpRequest, route != null ? route : routes.route(httpRequest));
+        log(snapshot, httpRequest.getCounter(), responseWrapper, status, responseNanos, outcome, sampleRate);
+    }
+
+    /**
+     * Logs an asynchronous request from the snapshot taken when it was dispatched.
+     */
+    private void logRequest(final Stopwatch stopwatch, final RequestSnapshot snapshot,
+                            final RequestBodyCounter requestBody,
+                            final CountingHttpServletResponseWrapper responseWrapper, final Outcome outcome) {
         stopwatch.stop();
+        final long responseNanos = stopwatch.elapsed(TimeUnit.NANOSECONDS);
+
+        final int status = status(responseWrapper, outcome);
+        final double sampleRate = sampleRate(snapshot.getMethod(), snapshot.getRequestUri(), snapshot.getRoute(),
+                responseWrapper, status, responseNanos);
+        if (sampleRate >= 0.0d) {
+            log(snapshot, requestBody, responseWrapper, status, responseNanos, outcome, sampleRate);
+        }
+    }
+
+    /**
+     * Returns the status the client receives. When a request timed out or failed before the response has been
+     * committed, the container hasn't set its error status yet and sends 500 unless an error status has been set.
+     */
+    private static int status(final CountingHttpServletResponseWrapper responseWrapper, final Outcome outcome) {
+        final int status = responseWrapper.getStatus();
+        if (outcome != Outcome.COMPLETED && !responseWrapper.isCommitted()
+                && status < HttpServletResponse.SC_BAD_REQUEST) {
+            return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        }
+        return status;
+    }
+
+    /**
+     * Records a request for the summaries and decides whether it is logged.
+     *
+     * @return the rate the request is logged with or -1 if it isn't logged
+     */
+    private double sampleRate(final String method, final String uri, final String route,
+                              final CountingHttpServletResponseWrapper responseWrapper, final int status,
+                              final long responseNanos) {
+        if (summaries != null) {
+            summaries.record(method, route, uri, status, responseNanos, responseWrapper.getCount());
+            if (logMode == LogMode.SUMMARIES) {
+                return -1.0d;
+            }
+        }
+
+        // Decide before doing anything else, so requests which aren't logged cost no more than counting and timing
+        final double sampleRate = sampler.rate(uri, status, responseNanos);
+        return RequestSampler.sample(sampleRate) ? sampleRate : -1.0d;
+    }
 
-        buf.append(responseWrapper.getStatus());
+    private void log(final RequestSnapshot request, final RequestBodyCounter requestBody,
+                     final CountingHttpServletResponseWrapper responseWrapper, final int status,
+                     final long responseNanos, final Outcome outcome, final double sampleRate) {
+        final StringBuilder buf = new StringBuilder(256);
+
+        buf.append(request.getClientAddress());
+        buf.append(" - ");
+
+        if (request.getPrincipal() != null) {
+            buf.append(request.getPrincipal());
+        } else {
+            buf.append("-");
+        }
+        buf.append(" \"");
+        buf.append(request.getMethod());
+        buf.append(' ');
+        buf.append(request.getRequestUri());
+        buf.append(' ');
+        buf.append(request.getProtocol());
+        buf.append("\" ");
+        buf.append(status);
         buf.append(" ");
         buf.append(responseWrapper.getCount());
-
-        final String userAgent = httpRequest.getHeader(HttpHeaders.USER_AGENT);
-        if (userAgent != null) {
-            MDC.put(AdditionalKeys.USER_AGENT, userAgent);
+        if (outcome != Outcome.COMPLETED) {
+            buf.append(" (").append(outcome.value).append(')');
         }
 
-        if (authType != null) {
-            MDC.put(AdditionalKeys.REQ_AUTH, authType);
-            MDC.put(AdditionalKeys.PRINCIPAL, httpRequest.getUserPrincipal().getName());
+        final RequestLogMarker marker = new RequestLogMarker(
+                request,
+                requestBody.isRead() ? requestBody.getCount() : -1L,
+                requestBody.getReadNanos(),
+                requestBody.getBytesPerSecond(),
+                status,
+                responseWrapper.getContentType(),
+                responseWrapper.getCharacterEncoding(),
+                responseNanos,
+                responseWrapper.getTimeToFirstByteNanos(),
+                responseWrapper.getStreamNanos(),
+                responseWrapper.getCount(),
+                outcome.value,
+                sampleRate);
+
+        if (fieldMode == FieldMode.MARKER) {
+            LOG.info(marker, buf.toString());
+            return;
         }
 
-        MDC.put(AdditionalKeys.REMOTE_ADDRESS, clientAddress);
-        MDC.put(AdditionalKeys.HTTP_METHOD, httpRequest.getMethod());
-        MDC.put(AdditionalKeys.PROTOCOL, httpRequest.getProtocol());
-        MDC.put(AdditionalKeys.REQ_URI, httpRequest.getRequestURI());
-        MDC.put(AdditionalKeys.REQ_LENGTH, String.valueOf(httpRequest.getContentLength()));
-        MDC.put(AdditionalKeys.REQ_CONTENT_TYPE, httpRequest.getContentType());
-        MDC.put(AdditionalKeys.REQ_ENCODING, httpRequest.getCharacterEncoding());
-        MDC.put(AdditionalKeys.RESP_STATUS, String.valueOf(responseWrapper.getStatus()));
-        MDC.put(AdditionalKeys.RESP_CONTENT_TYPE, responseWrapper.getContentType());
-        MDC.put(AdditionalKeys.RESP_ENCODING, responseWrapper.getCharacterEncoding());
-        MDC.put(AdditionalKeys.RESP_TIME, String.valueOf(stopwatch.elapsed(TimeUnit.NANOSECONDS)));
-        MDC.put(AdditionalKeys.RESP_LENGTH, String.valueOf(responseWrapper.getCount()));
+        marker.forEachField(MDC::put);
 
         LOG.info(buf.toString());
 
         clearMDC();
     }
 
+    @VisibleForTesting
+    void logSummaries() {
+        for (RequestSummaryMarker summary : summaries.drain(summaryIntervalSeconds)) {
+            if (fieldMode == FieldMode.MARKER) {
+                LOG.info(summary, summary.getMessage());
+                continue;
+            }
+            summary.forEachField(MDC::put);
+            LOG.info(summary.getMessage());
+            summary.forEachField((name, value) -> MDC.remove(name));
+        }
+    }
+
     /**
      * Called by the web container to indicate to a filter that it is being
      * taken out of service.
@@ -182,7 +440,16 @@ public class GelfLoggingFilter implements Filter {
      */
     @Override
     public void destroy() {
-        // Do nothing
+        if (summaryExecutor != null) {
+            summaryExecutor.shutdown();
+            try {
+                summaryExecutor.awaitTermination(1L, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Don't lose the requests of the last interval
+            logSummaries();
+        }
     }
 
     private static void clearMDC() {
@@ -193,25 +460,90 @@ public class GelfLoggingFilter implements Filter {
         MDC.remove(AdditionalKeys.HTTP_METHOD);
         MDC.remove(AdditionalKeys.PROTOCOL);
         MDC.remove(AdditionalKeys.REQ_URI);
+        MDC.remove(AdditionalKeys.REQ_ROUTE);
         MDC.remove(AdditionalKeys.REQ_LENGTH);
+        MDC.remove(AdditionalKeys.REQ_BYTES_READ);
+        MDC.remove(AdditionalKeys.REQ_READ_TIME);
+        MDC.remove(AdditionalKeys.REQ_THROUGHPUT);
         MDC.remove(AdditionalKeys.REQ_CONTENT_TYPE);
         MDC.remove(AdditionalKeys.REQ_ENCODING);
         MDC.remove(AdditionalKeys.RESP_STATUS);
         MDC.remove(AdditionalKeys.RESP_CONTENT_TYPE);
         MDC.remove(AdditionalKeys.RESP_ENCODING);
         MDC.remove(AdditionalKeys.RESP_TIME);
+        MDC.remove(AdditionalKeys.RESP_TTFB);
+        MDC.remove(AdditionalKeys.RESP_STREAM_TIME);
         MDC.remove(AdditionalKeys.RESP_LENGTH);
+        MDC.remove(AdditionalKeys.OUTCOME);
+        MDC.remove(AdditionalKeys.SAMPLE_RATE);
+    }
+
+    private static Charset charset(String characterEncoding) {
+        try {
+            return characterEncoding == null ? StandardCharsets.ISO_8859_1 : Charset.forName(characterEncoding);
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+
+    /**
+     * An implementation of {@link HttpServletRequestWrapper} which counts the bytes being read from the request body
+     * using a {@link CountingServletInputStream} or a {@link CountingReader}.
+     */
+    private static final class CountingHttpServletRequestWrapper extends HttpServletRequestWrapper {
+        private final RequestBodyCounter counter = new RequestBodyCounter();
+        private CountingServletInputStream inputStream;
+        private BufferedReader reader;
+
+        private CountingHttpServletRequestWrapper(HttpServletRequest request) {
+            super(request);
+        }
+
+        /**
+         * The default behavior of this method is to return getInputStream()
+         * on the wrapped request object.
+         */
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new CountingServletInputStream(getRequest().getInputStream(), counter);
+            }
+            return inputStream;
+        }
+
+        /**
+         * The default behavior of this method is to return getReader()
+         * on the wrapped request object.
+         */
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (reader == null) {
+                final BufferedReader requestReader = getRequest().getReader();
+                reader = new BufferedReader(
+                        new CountingReader(requestReader, charset(getCharacterEncoding()), counter));
+            }
+            return reader;
+        }
+
+        RequestBodyCounter getCounter() {
+            return counter;
+        }
     }
 
     /**
      * An implementation of {@link HttpServletResponseWrapper} which counts the bytes being written as the response
-     * body using a {@link CountingServletOutputStream}.
+     * body using a {@link CountingServletOutputStream} or a {@link CountingPrintWriter} and measures the time to the
+     * first byte and the time it took to stream the body.
      */
     private static final class CountingHttpServletResponseWrapper extends HttpServletResponseWrapper {
+        private final long startNanos;
         private CountingServletOutputStream outputStream;
+        private CountingPrintWriter writer;
+        private long firstFlushNanos = CountingServletOutputStream.NONE;
 
-        private CountingHttpServletResponseWrapper(HttpServletResponse response) throws IOException {
+        private CountingHttpServletResponseWrapper(HttpServletResponse response, long startNanos) throws IOException {
             super(response);
+            this.startNanos = startNanos;
         }
 
         /**
@@ -227,12 +559,93 @@ public class GelfLoggingFilter implements Filter {
         }
 
         /**
-         * Get the number of bytes written to the response output stream.
+         * The default behavior of this method is to return getWriter()
+         * on the wrapped response object.
+         */
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                final PrintWriter responseWriter = getResponse().getWriter();
+                // The charset of the writer is fixed once it has been obtained
+                writer = new CountingPrintWriter(responseWriter, charset(getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        /**
+         * Get the number of bytes written to the response output stream or writer.
          *
-         * @return the number of bytes written to the response output stream
+         * @return the number of bytes written to the response output stream or writer
          */
         public long getCount() {
-            return outputStream == null ? 0L : outputStream.getCount();
+            return (outputStream == null ? 0L : outputStream.getCount()) + (writer == null ? 0L : writer.getCount());
+        }
+
+        /**
+         * Get the time from the start of the request to the first byte written or the response being committed,
+         * whichever came first.
+         *
+         * @return the time in nanoseconds or -1 if neither happened
+         */
+        long getTimeToFirstByteNanos() {
+            final long firstByteNanos = getFirstByteNanos();
+            return firstByteNanos == CountingServletOutputStream.NONE ? -1L : firstByteNanos - startNanos;
+        }
+
+        /**
+         * Get the time from the first byte written or the response being committed to the last byte written.
+         *
+         * @return the time in nanoseconds or -1 if no byte was written
+         */
+        long getStreamNanos() {
+            long lastByteNanos = CountingServletOutputStream.NONE;
+            if (outputStream != null) {
+                lastByteNanos = outputStream.getLastByteNanos();
+            }
+            if (writer != null && writer.getLastByteNanos() != CountingServletOutputStream.NONE) {
+                lastByteNanos = writer.getLastByteNanos();
+            }
+            if (lastByteNanos == CountingServletOutputStream.NONE) {
+                return -1L;
+            }
+            return Math.max(0L, lastByteNanos - getFirstByteNanos());
+        }
+
+        private long getFirstByteNanos() {
+            long first = firstFlushNanos;
+            if (outputStream != null) {
+                first = earliest(first, outputStream.getFirstByteNanos());
+                first = earliest(first, outputStream.getFirstFlushNanos());
+            }
+            if (writer != null) {
+                first = earliest(first, writer.getFirstByteNanos());
+                first = earliest(first, writer.getFirstFlushNanos());
+            }
+            return first;
+        }
+
+        private static long earliest(long nanos, long otherNanos) {
+            if (nanos == CountingServletOutputStream.NONE) {
+                return otherNanos;
+            }
+            if (otherNanos == CountingServletOutputStream.NONE) {
+                return nanos;
+            }
+            // Compare differences, System.nanoTime() may overflow
+            return otherNanos - nanos < 0 ? otherNanos : nanos;
+        }
+
+        /**
+         * The default behavior of this method is to call flushBuffer() on the wrapped response object.
+         *
+         * @see javax.servlet.ServletResponseWrapper#flushBuffer()
+         */
+        @Override
+        public void flushBuffer() throws IOException {
+            if (firstFlushNanos == CountingServletOutputStream.NONE) {
+                firstFlushNanos = System.nanoTime();
+            }
+            super.flushBuffer();
         }
 
         /**
@@ -244,6 +657,7 @@ public class GelfLoggingFilter implements Filter {
         public void resetBuffer() {
             super.resetBuffer();
             outputStream = null;
+            writer = null;
         }
 
         /**
@@ -255,48 +669,57 @@ public class GelfLoggingFilter implements Filter {
         public void reset() {
             super.reset();
             outputStream = null;
+            writer = null;
         }
     }
 
-    private static class LoggingAsyncListener implements AsyncListener {
+    /**
+     * Logs an asynchronous request once it completed, timed out or failed, whichever comes first. The container may
+     * call {@link #onComplete(AsyncEvent)} after {@link #onTimeout(AsyncEvent)} or {@link #onError(AsyncEvent)}, but
+     * the request is logged only once.
+     */
+    private class LoggingAsyncListener implements AsyncListener {
 
-        private final StringBuilder buf;
         private final Stopwatch stopwatch;
-        private final String authType;
-        private final String clientAddress;
-        private final HttpServletRequest httpRequest;
+        private final RequestSnapshot snapshot;
+        private final RequestBodyCounter requestBody;
         private final CountingHttpServletResponseWrapper responseWrapper;
+        private final AtomicBoolean logged = new AtomicBoolean();
 
-        public LoggingAsyncListener(final StringBuilder buf, final Stopwatch stopwatch, final String authType,
-                                    final String clientAddress,
-                                    final HttpServletRequest httpRequest,
+        public LoggingAsyncListener(final Stopwatch stopwatch, final RequestSnapshot snapshot,
+                                    final RequestBodyCounter requestBody,
                                     final CountingHttpServletResponseWrapper responseWrapper) {
-            this.buf = buf;
             this.stopwatch = stopwatch;
-            this.authType = authType;
-            this.clientAddress = clientAddress;
-            this.httpRequest = httpRequest;
+            this.snapshot = snapshot;
+            this.requestBody = requestBody;
             this.responseWrapper = responseWrapper;
         }
 
+        private void log(final Outcome outcome) {
+            if (logged.compareAndSet(false, true)) {
+                logRequest(stopwatch, snapshot, requestBody, responseWrapper, outcome);
+            }
+        }
+
         @Override
         public void onComplete(final AsyncEvent event) throws IOException {
-            logRequest(buf, stopwatch, authType, clientAddress, httpRequest, responseWrapper);
+            log(Outcome.COMPLETED);
         }
 
         @Override
         public void onTimeout(final AsyncEvent event) throws IOException {
-            // Intentionally empty
+            log(Outcome.TIMEOUT);
         }
 
         @Override
         public void onError(final AsyncEvent event) throws IOException {
-            // Intentionally empty
+            log(Outcome.ERROR);
         }
 
         @Override
         public void onStartAsync(final AsyncEvent event) throws IOException {
-            // Intentionally empty
+            // Listeners are removed when asynchronous processing is started again
+            event.getAsyncContext().addListener(this);
         }
     }
 
@@ -310,14 +733,29 @@ public class GelfLoggingFilter implements Filter {
         public static final String HTTP_METHOD = "httpMethod";
         public static final String PROTOCOL = "protocol";
         public static final String REQ_URI = "requestUri";
+        public static final String REQ_ROUTE = "requestRoute";
         public static final String REQ_LENGTH = "requestLength";
+        public static final String REQ_BYTES_READ = "requestBytesRead";
+        public static final String REQ_READ_TIME = "requestReadNanos";
+        public static final String REQ_THROUGHPUT = "requestBytesPerSecond";
         public static final String REQ_CONTENT_TYPE = "requestContentType";
         public static final String REQ_ENCODING = "requestEncoding";
         public static final String RESP_STATUS = "responseStatus";
         public static final String RESP_CONTENT_TYPE = "responseContentType";
         public static final String RESP_ENCODING = "responseEncoding";
         public static final String RESP_TIME = "responseTimeNanos";
+        public static final String RESP_TTFB = "ttfbNanos";
+        public static final String RESP_STREAM_TIME = "streamNanos";
         public static final String RESP_LENGTH = "responseLength";
+        public static final String OUTCOME = "requestOutcome";
+        public static final String SAMPLE_RATE = "sampleRate";
+        public static final String SUMMARY_INTERVAL = "summaryIntervalSeconds";
+        public static final String REQ_COUNT = "requestCount";
+        public static final String RESP_TIME_P50 = "responseTimeP50Nanos";
+        public static final String RESP_TIME_P90 = "responseTimeP90Nanos";
+        public static final String RESP_TIME_P99 = "responseTimeP99Nanos";
+        public static final String RESP_TIME_MAX = "responseTimeMaxNanos";
+        public static final String RESP_LENGTH_TOTAL = "responseLengthTotal";
 
         private AdditionalKeys() {
         }
@@ -0,0 +1,115 @@
+package net.gini.dropwizard.gelf.filters;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of response times with log-linear buckets, i. e. 16 buckets for every power of two, so
+ * percentiles are accurate to about 6%.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Long.MAX_VALUE has its highest bit at 62
+    private static final int BUCKETS = (62 - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+    private final LongAdder bytes = new LongAdder();
+
+    /**
+     * Records a request.
+     *
+     * @param nanos the response time in nanoseconds
+     * @param bytes the response length in bytes
+     */
+    void record(long nanos, long bytes) {
+        final long value = Math.max(nanos, 0L);
+        counts.incrementAndGet(bucket(value));
+        max.accumulate(value);
+        this.bytes.add(bytes);
+    }
+
+    /**
+     * Takes a snapshot of the recorded requests. Requests recorded while the snapshot is taken may or may not be
+     * part of it.
+     *
+     * @return the snapshot
+     */
+    Snapshot snapshot() {
+        final long[] values = new long[BUCKETS];
+        long count = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            values[i] = counts.get(i);
+            count += values[i];
+        }
+        return new Snapshot(values, count, max.get(), bytes.sum());
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) - 1L);
+    }
+
+    static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long max;
+        private final long bytes;
+
+        private Snapshot(long[] counts, long count, long max, long bytes) {
+            this.counts = counts;
+            this.count = count;
+            this.max = max;
+            this.bytes = bytes;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        long getMax() {
+            return max;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the response time the given share of the requests didn't exceed.
+         *
+         * @param quantile the share between 0 and 1
+         * @return the highest response time of the bucket containing the quantile, at most the maximum
+         */
+        long getValue(double quantile) {
+            if (count == 0L) {
+                return 0L;
+            }
+            final long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
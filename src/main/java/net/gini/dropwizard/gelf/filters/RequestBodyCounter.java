@@ -0,0 +1,64 @@
+package net.gini.dropwizard.gelf.filters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the bytes of a request body read through a {@link CountingServletInputStream} or a {@link CountingReader}
+ * and records when the body was read.
+ */
+final class RequestBodyCounter {
+
+    private long count;
+    private long firstReadNanos = CountingServletOutputStream.NONE;
+    private long lastReadNanos = CountingServletOutputStream.NONE;
+
+    /**
+     * Called before reading from the request body.
+     */
+    void reading() {
+        if (firstReadNanos == CountingServletOutputStream.NONE) {
+            firstReadNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called after reading from the request body.
+     *
+     * @param bytes the number of bytes read
+     */
+    void read(long bytes) {
+        count += bytes;
+        lastReadNanos = System.nanoTime();
+    }
+
+    /**
+     * @return whether the request body has been read from
+     */
+    boolean isRead() {
+        return lastReadNanos != CountingServletOutputStream.NONE;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the time from the first read starting to the last read returning in nanoseconds or -1 if the request
+     * body hasn't been read from
+     */
+    long getReadNanos() {
+        return isRead() ? Math.max(0L, lastReadNanos - firstReadNanos) : -1L;
+    }
+
+    /**
+     * @return the bytes read per second or -1 if the request body hasn't been read from
+     */
+    long getBytesPerSecond() {
+        final long readNanos = getReadNanos();
+        if (readNanos < 0L) {
+            return -1L;
+        }
+        // Reads finishing within the resolution of the clock count as one nanosecond
+        return (long) (count * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1L, readNanos));
+    }
+}
@@ -0,0 +1,89 @@
+package net.gini.dropwizard.gelf.filters;
+
+import net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys;
+import net.gini.dropwizard.gelf.logging.FieldMarker;
+
+import java.util.function.BiConsumer;
+
+/**
+ * The data about a request logged by {@link GelfLoggingFilter}, as {@link FieldMarker} of the request log event.
+ * <p>
+ * Numbers are kept as such and only turned into strings once the fields are read, i. e. usually on the thread sending
+ * the GELF messages.
+ * </p>
+ */
+final class RequestLogMarker extends AbstractFieldMarker {
+
+    static final String NAME = "RequestLog";
+
+    private static final long serialVersionUID = 1L;
+
+    private final RequestSnapshot request;
+    private final long requestBytesRead;
+    private final long requestReadNanos;
+    private final long requestBytesPerSecond;
+    private final int responseStatus;
+    private final String responseContentType;
+    private final String responseEncoding;
+    private final long responseTimeNanos;
+    private final long ttfbNanos;
+    private final long streamNanos;
+    private final long responseLength;
+    private final String outcome;
+    private final double sampleRate;
+
+    RequestLogMarker(RequestSnapshot request, long requestBytesRead, long requestReadNanos,
+                     long requestBytesPerSecond, int responseStatus, String responseContentType,
+                     String responseEncoding, long responseTimeNanos, long ttfbNanos, long streamNanos,
+                     long responseLength, String outcome, double sampleRate) {
+        super(NAME);
+        this.request = request;
+        this.requestBytesRead = requestBytesRead;
+        this.requestReadNanos = requestReadNanos;
+        this.requestBytesPerSecond = requestBytesPerSecond;
+        this.responseStatus = responseStatus;
+        this.responseContentType = responseContentType;
+        this.responseEncoding = responseEncoding;
+        this.responseTimeNanos = responseTimeNanos;
+        this.ttfbNanos = ttfbNanos;
+        this.streamNanos = streamNanos;
+        this.responseLength = responseLength;
+        this.outcome = outcome;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void forEachField(BiConsumer<String, String> consumer) {
+        accept(consumer, AdditionalKeys.USER_AGENT, request.getUserAgent());
+        accept(consumer, AdditionalKeys.REQ_AUTH, request.getAuthType());
+        accept(consumer, AdditionalKeys.PRINCIPAL, request.getPrincipal());
+        accept(consumer, AdditionalKeys.REMOTE_ADDRESS, request.getClientAddress());
+        accept(consumer, AdditionalKeys.HTTP_METHOD, request.getMethod());
+        accept(consumer, AdditionalKeys.PROTOCOL, request.getProtocol());
+        accept(consumer, AdditionalKeys.REQ_URI, request.getRequestUri());
+        accept(consumer, AdditionalKeys.REQ_ROUTE, request.getRoute());
+        consumer.accept(AdditionalKeys.REQ_LENGTH, String.valueOf(request.getContentLength()));
+        if (requestBytesRead >= 0L) {
+            consumer.accept(AdditionalKeys.REQ_BYTES_READ, String.valueOf(requestBytesRead));
+            consumer.accept(AdditionalKeys.REQ_READ_TIME, String.valueOf(requestReadNanos));
+            consumer.accept(AdditionalKeys.REQ_THROUGHPUT, String.valueOf(requestBytesPerSecond));
+        }
+        accept(consumer, AdditionalKeys.REQ_CONTENT_TYPE, request.getContentType());
+        accept(consumer, AdditionalKeys.REQ_ENCODING, request.getCharacterEncoding());
+        consumer.accept(AdditionalKeys.RESP_STATUS, String.valueOf(responseStatus));
+        accept(consumer, AdditionalKeys.RESP_CONTENT_TYPE, responseContentType);
+        accept(consumer, AdditionalKeys.RESP_ENCODING, responseEncoding);
+        consumer.accept(AdditionalKeys.RESP_TIME, String.valueOf(responseTimeNanos));
+        if (ttfbNanos >= 0L) {
+            consumer.accept(AdditionalKeys.RESP_TTFB, String.valueOf(ttfbNanos));
+        }
+        if (streamNanos >= 0L) {
+            consumer.accept(AdditionalKeys.RESP_STREAM_TIME, String.valueOf(streamNanos));
+        }
+        consumer.accept(AdditionalKeys.RESP_LENGTH, String.valueOf(responseLength));
+        accept(consumer, AdditionalKeys.OUTCOME, outcome);
+        if (sampleRate < 1.0d) {
+            consumer.accept(AdditionalKeys.SAMPLE_RATE, String.valueOf(sampleRate));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package net.gini.dropwizard.gelf.filters;
+
+import com.google.common.base.Splitter;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Matches requests by method and path against patterns compiled into a trie of path segments, so a request is
+ * matched in time proportional to the depth of its path without regular expressions.
+ * <p>
+ * A pattern is an optional method followed by a path, e. g. {@code GET /healthcheck}. A path segment {@code *}
+ * matches any single segment, a trailing segment {@code **} matches any number of segments, e. g.
+ * {@code /static/**}. Paths match with or without trailing slash.
+ * </p>
+ */
+final class RequestMatcher {
+
+    static final RequestMatcher NONE = new RequestMatcher(new Node());
+
+    private static final Splitter PATTERN_SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
+    private static final Splitter SEGMENT_SPLITTER = Splitter.on('/').omitEmptyStrings();
+    private static final String ANY_METHOD = "*";
+
+    private final Node root;
+
+    private RequestMatcher(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles comma separated patterns.
+     *
+     * @param patterns the patterns, e. g. {@code GET /healthcheck,/ping,/static/**}
+     * @return the matcher
+     * @throws IllegalArgumentException if a pattern is malformed
+     */
+    static RequestMatcher of(String patterns) {
+        final Node root = new Node();
+        for (String pattern : PATTERN_SPLITTER.split(patterns)) {
+            final int space = pattern.indexOf(' ');
+            final String method = space < 0 ? ANY_METHOD : pattern.substring(0, space).toUpperCase(Locale.ENGLISH);
+            final String path = space < 0 ? pattern : pattern.substring(space + 1).trim();
+            if (!path.startsWith("/")) {
+                throw new IllegalArgumentException("Path pattern must start with '/': " + pattern);
+            }
+            Node node = root;
+            final List<String> segments = SEGMENT_SPLITTER.splitToList(path);
+            for (int i = 0; i < segments.size(); i++) {
+                final String segment = segments.get(i);
+                if ("**".equals(segment)) {
+                    if (i != segments.size() - 1) {
+                        throw new IllegalArgumentException("'**' must be the last segment: " + pattern);
+                    }
+                    node.subtreeMethods.add(method);
+                    node = null;
+                    break;
+                }
+                if (segment.indexOf('*') >= 0 && !"*".equals(segment)) {
+                    throw new IllegalArgumentException("'*' must be a whole segment: " + pattern);
+                }
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+            if (node != null) {
+                node.methods.add(method);
+            }
+        }
+        return new RequestMatcher(root);
+    }
+
+    /**
+     * Checks whether a request matches any of the patterns.
+     *
+     * @param method the request method
+     * @param path   the request path
+     * @return whether the request matches
+     */
+    boolean matches(String method, String path) {
+        return matches(root, method, path, 0);
+    }
+
+    private static boolean matches(Node node, String method, String path, int start) {
+        if (node.subtreeMethods.contains(method) || node.subtreeMethods.contains(ANY_METHOD)) {
+            return true;
+        }
+        // Skip slashes
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        if (start >= path.length()) {
+            return node.methods.contains(method) || node.methods.contains(ANY_METHOD);
+        }
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        final Node child = node.children.get(path.substring(start, end));
+        if (child != null && matches(child, method, path, end)) {
+            return true;
+        }
+        final Node wildcard = node.children.get("*");
+        return wildcard != null && wildcard != child && matches(wildcard, method, path, end);
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        // Methods of patterns ending at this node
+        private final Set<String> methods = new HashSet<>();
+        // Methods of patterns ending with ** at this node
+        private final Set<String> subtreeMethods = new HashSet<>();
+    }
+}
@@ -0,0 +1,209 @@
+package net.gini.dropwizard.gelf.filters;
+
+import com.google.common.base.Splitter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Decides which requests are logged by {@link GelfLoggingFilter}.
+ * <p>
+ * If slow or error requests are configured, other requests aren't logged at all. A request is logged with the rate of
+ * its status class if one is configured, otherwise with the rate of the longest configured prefix of its path,
+ * otherwise with the default rate.
+ * </p>
+ */
+final class RequestSampler {
+
+    /**
+     * A sampler logging every request.
+     */
+    static final RequestSampler ALL = new RequestSampler(1.0d, new double[0], new String[0], new double[0],
+            Long.MAX_VALUE, null);
+
+    private static final int MAXIMUM_STATUS = 599;
+
+    private static final Splitter LIST_SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
+    private static final Splitter.MapSplitter RATES_SPLITTER = Splitter.on(',')
+            .omitEmptyStrings()
+            .trimResults()
+            .withKeyValueSeparator(Splitter.on('=').trimResults());
+
+    private final double defaultRate;
+    // Indexed by status / 100, NaN if not configured
+    private final double[] statusRates;
+    // Sorted by descending length, so the first matching prefix is the longest one
+    private final String[] pathPrefixes;
+    private final double[] pathRates;
+    // Long.MAX_VALUE if not configured
+    private final long slowRequestNanos;
+    // Indexed by status, null if not configured
+    private final boolean[] errorStatuses;
+    private final boolean selective;
+
+    private RequestSampler(double defaultRate, double[] statusRates, String[] pathPrefixes, double[] pathRates,
+                           long slowRequestNanos, boolean[] errorStatuses) {
+        this.defaultRate = defaultRate;
+        this.statusRates = statusRates;
+        this.pathPrefixes = pathPrefixes;
+        this.pathRates = pathRates;
+        this.slowRequestNanos = slowRequestNanos;
+        this.errorStatuses = errorStatuses;
+        this.selective = slowRequestNanos != Long.MAX_VALUE || errorStatuses != null;
+    }
+
+    /**
+     * Creates a sampler from the filter's init parameters:
+     * <ul>
+     * <li>{@code sampleRate}: the default rate, {@code 1} if not set</li>
+     * <li>{@code statusSampleRates}: comma separated rates by status class, e. g. {@code 5xx=1,2xx=0.01}</li>
+     * <li>{@code pathSampleRates}: comma separated rates by path prefix, e. g. {@code /health=0,/api=0.1}</li>
+     * <li>{@code slowRequestMillis}: only log requests taking at least this long or with an error status</li>
+     * <li>{@code errorStatuses}: comma separated statuses or status classes, e. g. {@code 429,5xx}, only log requests
+     * with one of them or taking at least {@code slowRequestMillis}</li>
+     * </ul>
+     *
+     * @param initParameters the init parameters by name, returning {@code null} for parameters which aren't set
+     * @return the sampler
+     * @throws IllegalArgumentException if a parameter is malformed or a rate is not between 0 and 1
+     */
+    static RequestSampler of(Function<String, String> initParameters) {
+        final String sampleRate = initParameters.apply("sampleRate");
+        final double defaultRate = sampleRate == null ? 1.0d : parseRate(sampleRate.trim());
+
+        final double[] statusRates = new double[6];
+        Arrays.fill(statusRates, Double.NaN);
+        final String statusSampleRates = initParameters.apply("statusSampleRates");
+        if (statusSampleRates != null) {
+            for (Map.Entry<String, String> entry : RATES_SPLITTER.split(statusSampleRates).entrySet()) {
+                statusRates[parseStatusClass(entry.getKey())] = parseRate(entry.getValue());
+            }
+        }
+
+        final String pathSampleRates = initParameters.apply("pathSampleRates");
+        final Map<String, String> pathRateValues = pathSampleRates == null
+                ? Collections.<String, String>emptyMap()
+                : RATES_SPLITTER.split(pathSampleRates);
+        final String[] pathPrefixes = pathRateValues.keySet().toArray(new String[0]);
+        Arrays.sort(pathPrefixes, Comparator.comparingInt(String::length).reversed());
+        final double[] pathRates = new double[pathPrefixes.length];
+        for (int i = 0; i < pathPrefixes.length; i++) {
+            if (!pathPrefixes[i].startsWith("/")) {
+                throw new IllegalArgumentException("Path prefix must start with '/': " + pathPrefixes[i]);
+            }
+            pathRates[i] = parseRate(pathRateValues.get(pathPrefixes[i]));
+        }
+
+        final String slowRequestMillis = initParameters.apply("slowRequestMillis");
+        final long slowRequestNanos = slowRequestMillis == null
+                ? Long.MAX_VALUE
+                : TimeUnit.MILLISECONDS.toNanos(parseMillis(slowRequestMillis.trim()));
+
+        final String errorStatusValues = initParameters.apply("errorStatuses");
+        boolean[] errorStatuses = null;
+        if (errorStatusValues != null) {
+            errorStatuses = new boolean[MAXIMUM_STATUS + 1];
+            for (String status : LIST_SPLITTER.split(errorStatusValues)) {
+                if (status.length() == 3 && status.substring(1).equalsIgnoreCase("xx")) {
+                    final int statusClass = parseStatusClass(status);
+                    Arrays.fill(errorStatuses, statusClass * 100, statusClass * 100 + 100, true);
+                } else {
+                    errorStatuses[parseStatus(status)] = true;
+                }
+            }
+        }
+
+        return new RequestSampler(defaultRate, statusRates, pathPrefixes, pathRates, slowRequestNanos,
+                errorStatuses);
+    }
+
+    private static double parseRate(String value) {
+        final double rate;
+        try {
+            rate = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid sample rate: " + value, e);
+        }
+        if (!(rate >= 0.0d && rate <= 1.0d)) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + value);
+        }
+        return rate;
+    }
+
+    private static long parseMillis(String value) {
+        final long millis;
+        try {
+            millis = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid slow request time: " + value, e);
+        }
+        if (millis < 0) {
+            throw new IllegalArgumentException("Slow request time must not be negative: " + value);
+        }
+        return millis;
+    }
+
+    private static int parseStatus(String value) {
+        final int status;
+        try {
+            status = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid status, expected e. g. 429 or 5xx: " + value, e);
+        }
+        if (status < 100 || status > MAXIMUM_STATUS) {
+            throw new IllegalArgumentException("Invalid status, expected 100 to 599: " + value);
+        }
+        return status;
+    }
+
+    private static int parseStatusClass(String value) {
+        if (value.length() != 3 || value.charAt(0) < '1' || value.charAt(0) > '5'
+                || !value.substring(1).equalsIgnoreCase("xx")) {
+            throw new IllegalArgumentException("Invalid status class, expected 1xx to 5xx: " + value);
+        }
+        return value.charAt(0) - '0';
+    }
+
+    /**
+     * Returns the rate a request is logged with.
+     *
+     * @param path          the request URI
+     * @param status        the response status
+     * @param responseNanos the time it took to handle the request in nanoseconds
+     * @return the rate between 0 and 1
+     */
+    double rate(String path, int status, long responseNanos) {
+        if (selective && responseNanos < slowRequestNanos && !isErrorStatus(status)) {
+            return 0.0d;
+        }
+        final int statusClass = status / 100;
+        if (statusClass >= 0 && statusClass < statusRates.length && !Double.isNaN(statusRates[statusClass])) {
+            return statusRates[statusClass];
+        }
+        for (int i = 0; i < pathPrefixes.length; i++) {
+            if (path.startsWith(pathPrefixes[i])) {
+                return pathRates[i];
+            }
+        }
+        return defaultRate;
+    }
+
+    private boolean isErrorStatus(int status) {
+        return errorStatuses != null && status >= 0 && status <= MAXIMUM_STATUS && errorStatuses[status];
+    }
+
+    /**
+     * Decides whether a request logged with the given rate is logged.
+     *
+     * @param rate the rate returned by {@link #rate(String, int, long)}
+     * @return {@code true} if the request should be logged
+     */
+    static boolean sample(double rate) {
+        return rate >= 1.0d || rate > 0.0d && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+}
@@ -0,0 +1,120 @@
+package net.gini.dropwizard.gelf.filters;
+
+import com.google.common.net.HttpHeaders;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.Serializable;
+import java.security.Principal;
+
+/**
+ * The data about a request logged by {@link GelfLoggingFilter}, read from the request at once.
+ * <p>
+ * Asynchronous requests are logged once they complete, possibly after the container started recycling the request
+ * object, so the data is read when the request is dispatched. Only the snapshot is kept until the request completes,
+ * not the request itself.
+ * </p>
+ */
+final class RequestSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String method;
+    private final String requestUri;
+    private final String route;
+    private final String protocol;
+    private final String userAgent;
+    private final String clientAddress;
+    private final String authType;
+    private final String principal;
+    private final int contentLength;
+    private final String contentType;
+    private final String characterEncoding;
+
+    private RequestSnapshot(String method, String requestUri, String route, String protocol, String userAgent,
+                            String clientAddress, String authType, String principal, int contentLength,
+                            String contentType, String characterEncoding) {
+        this.method = method;
+        this.requestUri = requestUri;
+        this.route = route;
+        this.protocol = protocol;
+        this.userAgent = userAgent;
+        this.clientAddress = clientAddress;
+        this.authType = authType;
+        this.principal = principal;
+        this.contentLength = contentLength;
+        this.contentType = contentType;
+        this.characterEncoding = characterEncoding;
+    }
+
+    /**
+     * Reads the data about a request.
+     *
+     * @param request the request
+     * @param route   the route template of the request or {@code null} if it isn't known
+     * @return the snapshot
+     */
+    static RequestSnapshot of(HttpServletRequest request, String route) {
+        final String forwardedFor = request.getHeader(HttpHeaders.X_FORWARDED_FOR);
+        final String authType = request.getAuthType();
+        final Principal userPrincipal = authType != null ? request.getUserPrincipal() : null;
+        return new RequestSnapshot(
+                request.getMethod(),
+                request.getRequestURI(),
+                route,
+                request.getProtocol(),
+                request.getHeader(HttpHeaders.USER_AGENT),
+                forwardedFor != null ? forwardedFor : request.getRemoteAddr(),
+                authType,
+                userPrincipal != null ? userPrincipal.getName() : null,
+                request.getContentLength(),
+                request.getContentType(),
+                request.getCharacterEncoding());
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    String getRequestUri() {
+        return requestUri;
+    }
+
+    String getRoute() {
+        return route;
+    }
+
+    String getProtocol() {
+        return protocol;
+    }
+
+    String getUserAgent() {
+        return userAgent;
+    }
+
+    /**
+     * @return the {@code X-Forwarded-For} header or the remote address
+     */
+    String getClientAddress() {
+        return clientAddress;
+    }
+
+    String getAuthType() {
+        return authType;
+    }
+
+    String getPrincipal() {
+        return principal;
+    }
+
+    int getContentLength() {
+        return contentLength;
+    }
+
+    String getContentType() {
+        return contentType;
+    }
+
+    String getCharacterEncoding() {
+        return characterEncoding;
+    }
+}
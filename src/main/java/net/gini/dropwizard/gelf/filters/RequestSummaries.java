@@ -0,0 +1,108 @@
+package net.gini.dropwizard.gelf.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Aggregates the response times and lengths of requests by method, route and status, so {@link GelfLoggingFilter} can
+ * log one summary per route and status every interval instead of one message per request. Requests without a known
+ * route template are aggregated by their URI.
+ * <p>
+ * Requests of routes beyond the maximum number of routes per interval are aggregated into the route
+ * {@value #OTHER_ROUTE}.
+ * </p>
+ */
+final class RequestSummaries {
+
+    static final String OTHER_ROUTE = "*";
+
+    private final int maximumRoutes;
+    private final AtomicReference<ConcurrentMap<Key, LatencyHistogram>> histograms =
+            new AtomicReference<>(new ConcurrentHashMap<>());
+
+    /**
+     * @param maximumRoutes the maximum number of distinct method, route and status combinations per interval
+     */
+    RequestSummaries(int maximumRoutes) {
+        this.maximumRoutes = maximumRoutes;
+    }
+
+    /**
+     * Records a request in the current interval.
+     *
+     * @param method the request method
+     * @param route  the route template of the request or {@code null} if it isn't known
+     * @param uri    the request URI
+     * @param status the response status
+     * @param nanos  the response time in nanoseconds
+     * @param bytes  the response length in bytes
+     */
+    void record(String method, String route, String uri, int status, long nanos, long bytes) {
+        final ConcurrentMap<Key, LatencyHistogram> current = histograms.get();
+        Key key = route != null ? new Key(method, route, true, status) : new Key(method, uri, false, status);
+        LatencyHistogram histogram = current.get(key);
+        if (histogram == null) {
+            if (current.size() >= maximumRoutes) {
+                key = new Key(method, OTHER_ROUTE, false, status);
+            }
+            histogram = current.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        histogram.record(nanos, bytes);
+    }
+
+    /**
+     * Ends the current interval and returns the summaries of its requests. A request recorded by a thread racing
+     * with the end of the interval may be missing from the summaries.
+     *
+     * @param intervalSeconds the length of the interval, added to the summaries
+     * @return the summaries, one for every method, route and status
+     */
+    List<RequestSummaryMarker> drain(long intervalSeconds) {
+        final ConcurrentMap<Key, LatencyHistogram> previous = histograms.getAndSet(new ConcurrentHashMap<>());
+        final List<RequestSummaryMarker> summaries = new ArrayList<>(previous.size());
+        for (Map.Entry<Key, LatencyHistogram> entry : previous.entrySet()) {
+            final Key key = entry.getKey();
+            summaries.add(new RequestSummaryMarker(key.method, key.route, key.template, key.status, intervalSeconds,
+                    entry.getValue().snapshot()));
+        }
+        return summaries;
+    }
+
+    private static final class Key {
+
+        private final String method;
+        private final String route;
+        private final boolean template;
+        private final int status;
+
+        private Key(String method, String route, boolean template, int status) {
+            this.method = method;
+            this.route = route;
+            this.template = template;
+            this.status = status;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return status == that.status && template == that.template && Objects.equals(method, that.method)
+                    && Objects.equals(route, that.route);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(method, route, template, status);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package net.gini.dropwizard.gelf.filters;
+
+import net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys;
+import net.gini.dropwizard.gelf.logging.FieldMarker;
+
+import java.util.function.BiConsumer;
+
+/**
+ * The summary of the requests to a route with a status logged by {@link GelfLoggingFilter}, as {@link FieldMarker} of
+ * the summary log event.
+ */
+final class RequestSummaryMarker extends AbstractFieldMarker {
+
+    static final String NAME = "RequestSummary";
+
+    private static final long serialVersionUID = 1L;
+
+    private final String method;
+    private final String route;
+    private final boolean template;
+    private final int status;
+    private final long intervalSeconds;
+    private final long count;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+    private final long bytes;
+
+    RequestSummaryMarker(String method, String route, boolean template, int status, long intervalSeconds,
+                         LatencyHistogram.Snapshot snapshot) {
+        super(NAME);
+        this.method = method;
+        this.route = route;
+        this.template = template;
+        this.status = status;
+        this.intervalSeconds = intervalSeconds;
+        this.count = snapshot.getCount();
+        this.p50Nanos = snapshot.getValue(0.5d);
+        this.p90Nanos = snapshot.getValue(0.9d);
+        this.p99Nanos = snapshot.getValue(0.99d);
+        this.maxNanos = snapshot.getMax();
+        this.bytes = snapshot.getBytes();
+    }
+
+    String getMessage() {
+        return count + " requests \"" + method + ' ' + route + "\" " + status + " within " + intervalSeconds + " s";
+    }
+
+    @Override
+    public void forEachField(BiConsumer<String, String> consumer) {
+        accept(consumer, AdditionalKeys.HTTP_METHOD, method);
+        accept(consumer, template ? AdditionalKeys.REQ_ROUTE : AdditionalKeys.REQ_URI, route);
+        consumer.accept(AdditionalKeys.RESP_STATUS, String.valueOf(status));
+        consumer.accept(AdditionalKeys.SUMMARY_INTERVAL, String.valueOf(intervalSeconds));
+        consumer.accept(AdditionalKeys.REQ_COUNT, String.valueOf(count));
+        consumer.accept(AdditionalKeys.RESP_TIME_P50, String.valueOf(p50Nanos));
+        consumer.accept(AdditionalKeys.RESP_TIME_P90, String.valueOf(p90Nanos));
+        consumer.accept(AdditionalKeys.RESP_TIME_P99, String.valueOf(p99Nanos));
+        consumer.accept(AdditionalKeys.RESP_TIME_MAX, String.valueOf(maxNanos));
+        consumer.accept(AdditionalKeys.RESP_LENGTH_TOTAL, String.valueOf(bytes));
+    }
+}
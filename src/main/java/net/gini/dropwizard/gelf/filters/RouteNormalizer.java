@@ -0,0 +1,129 @@
+package net.gini.dropwizard.gelf.filters;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maps requests to their route templates, e. g. {@code /users/42} to {@code /users/{id}}, so request logs and
+ * summaries have a bounded number of distinct routes.
+ * <p>
+ * The route set by {@link RouteTemplateFilter} takes precedence. Otherwise the request URI is matched against the
+ * configured templates in order, which use the JAX-RS syntax: {@code {name}} matches a path segment,
+ * {@code {name: regex}} the given regular expression. Results aren't cached by URI, which would rarely hit for URIs
+ * with IDs in them, the precompiled patterns of the few templates are cheaper to match than to churn a cache.
+ * </p>
+ */
+final class RouteNormalizer {
+
+    static final String ROUTE_ATTRIBUTE = GelfLoggingFilter.class.getName() + ".route";
+
+    static final RouteNormalizer ATTRIBUTE_ONLY = new RouteNormalizer(new String[0], new Pattern[0]);
+
+    // {name} or {name: regex}, the regex may contain quantifiers such as {1,3}
+    private static final Pattern VARIABLE =
+            Pattern.compile("\\{\\s*\\w[\\w.-]*\\s*(?::\\s*((?:[^{}]|\\{[^{}]*})*?)\\s*)?}");
+    private final String[] templates;
+    private final Pattern[] patterns;
+
+    private RouteNormalizer(String[] templates, Pattern[] patterns) {
+        this.templates = templates;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Creates a normalizer from comma separated route templates.
+     *
+     * @param routeTemplates the templates, e. g. {@code /users/{id},/files/{path: .+}}, may be {@code null}
+     * @return the normalizer
+     * @throws IllegalArgumentException if a template is malformed
+     */
+    static RouteNormalizer of(String routeTemplates) {
+        if (routeTemplates == null || routeTemplates.trim().isEmpty()) {
+            return ATTRIBUTE_ONLY;
+        }
+        final List<String> templates = split(routeTemplates);
+        final Pattern[] patterns = new Pattern[templates.size()];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = compile(templates.get(i));
+        }
+        return new RouteNormalizer(templates.toArray(new String[0]), patterns);
+    }
+
+    /**
+     * Returns the route template of a request.
+     *
+     * @param request the request
+     * @return the route template or {@code null} if none matches
+     */
+    String route(HttpServletRequest request) {
+        final Object route = request.getAttribute(ROUTE_ATTRIBUTE);
+        if (route instanceof String) {
+            return (String) route;
+        }
+        if (patterns.length == 0) {
+            return null;
+        }
+        final String uri = request.getRequestURI();
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].matcher(uri).matches()) {
+                return templates[i];
+            }
+        }
+        return null;
+    }
+
+    // Regular expressions may contain commas within braces
+    private static List<String> split(String routeTemplates) {
+        final List<String> templates = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i <= routeTemplates.length(); i++) {
+            final char c = i < routeTemplates.length() ? routeTemplates.charAt(i) : ',';
+            if (i == routeTemplates.length() && depth != 0) {
+                throw new IllegalArgumentException("Unbalanced braces in route templates: " + routeTemplates);
+            }
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                final String template = routeTemplates.substring(start, i).trim();
+                if (!template.isEmpty()) {
+                    templates.add(template);
+                }
+                start = i + 1;
+            }
+        }
+        return templates;
+    }
+
+    private static Pattern compile(String template) {
+        if (!template.startsWith("/")) {
+            throw new IllegalArgumentException("Route template must start with '/': " + template);
+        }
+        final StringBuilder regex = new StringBuilder();
+        final Matcher matcher = VARIABLE.matcher(template);
+        int end = 0;
+        while (matcher.find()) {
+            regex.append(literal(template, template.substring(end, matcher.start())));
+            regex.append("(?:").append(matcher.group(1) == null ? "[^/]+" : matcher.group(1)).append(')');
+            end = matcher.end();
+        }
+        regex.append(literal(template, template.substring(end))).append("/?");
+        try {
+            return Pattern.compile(regex.toString());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid route template: " + template, e);
+        }
+    }
+
+    private static String literal(String template, String literal) {
+        if (literal.indexOf('{') >= 0 || literal.indexOf('}') >= 0) {
+            throw new IllegalArgumentException("Invalid route template: " + template);
+        }
+        return Pattern.quote(literal);
+    }
+}
@@ -0,0 +1,43 @@
+package net.gini.dropwizard.gelf.filters;
+
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.UriInfo;
+import java.util.List;
+
+/**
+ * A Jersey {@link ContainerRequestFilter} which passes the route template of the matched resource method, e. g.
+ * {@code /users/{id}}, to {@link GelfLoggingFilter}, which logs it as {@code requestRoute}.
+ * <p>
+ * Register it with Jersey: {@code environment.jersey().register(new RouteTemplateFilter())}.
+ * </p>
+ */
+public class RouteTemplateFilter implements ContainerRequestFilter {
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        final UriInfo uriInfo = requestContext.getUriInfo();
+        if (!(uriInfo instanceof ExtendedUriInfo)) {
+            return;
+        }
+        final List<UriTemplate> templates = ((ExtendedUriInfo) uriInfo).getMatchedTemplates();
+        if (templates.isEmpty()) {
+            return;
+        }
+        // Matched templates are ordered from the resource method to the root resource
+        final StringBuilder route = new StringBuilder();
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            final String template = templates.get(i).getTemplate();
+            for (String segment : template.split("/")) {
+                if (!segment.isEmpty()) {
+                    route.append('/').append(segment);
+                }
+            }
+        }
+        // Jersey passes request properties on as servlet request attributes
+        requestContext.setProperty(RouteNormalizer.ROUTE_ATTRIBUTE, route.length() == 0 ? "/" : route.toString());
+    }
+}
@@ -0,0 +1,27 @@
+package net.gini.dropwizard.gelf.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * {@link AsyncAppender} counting the events it discards because its queue is filled beyond the discarding threshold.
+ * Events discarded with {@code neverBlock} aren't visible to subclasses and aren't counted.
+ */
+class CountingAsyncAppender extends AsyncAppender {
+
+    private final LevelCounters discarded = new LevelCounters();
+
+    @Override
+    protected boolean isDiscardable(ILoggingEvent event) {
+        final boolean discardable = super.isDiscardable(event);
+        if (discardable) {
+            discarded.increment(event.getLevel());
+        }
+        return discardable;
+    }
+
+    long getDroppedCount(Level level) {
+        return discarded.get(level);
+    }
+}
@@ -0,0 +1,134 @@
+package net.gini.dropwizard.gelf.logging;
+
+import biz.paluch.logging.gelf.intern.ErrorReporter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Encodes logging events on a pool of threads and hands the encoded messages to a single sender thread in the order
+ * the events have been submitted.
+ * <p>
+ * Every submitted event takes a slot in a bounded queue of pending messages until the sender thread takes it, so
+ * submitting blocks while the sender falls behind. The encoded message is copied out of the per-thread buffer of the
+ * encoding thread, the sending function is only ever called by the sender thread.
+ * </p>
+ */
+final class EncodingPipeline implements AutoCloseable {
+
+    static final int PENDING_PER_THREAD = 64;
+
+    private static final long POLL_MILLIS = 100L;
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000L;
+
+    private final Function<ILoggingEvent, ByteBuffer> encoder;
+    private final Consumer<ByteBuffer> sender;
+    private final ErrorReporter errorReporter;
+    private final ForkJoinPool pool;
+    private final BlockingQueue<CompletableFuture<ByteBuffer>> pending;
+    private final Thread senderThread;
+
+    private volatile boolean closed;
+
+    /**
+     * @param threads       the number of encoding threads
+     * @param encoder       the function encoding an event into a buffer which may be reused by the encoding thread,
+     *                      or returning {@code null} if the event is skipped
+     * @param sender        the function sending an encoded message
+     * @param errorReporter the error reporter notified about failures
+     */
+    EncodingPipeline(int threads, Function<ILoggingEvent, ByteBuffer> encoder, Consumer<ByteBuffer> sender,
+                     ErrorReporter errorReporter) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.encoder = encoder;
+        this.sender = sender;
+        this.errorReporter = errorReporter;
+        this.pending = new ArrayBlockingQueue<>(threads * PENDING_PER_THREAD);
+        this.pool = new ForkJoinPool(threads, pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("gelf-encoder-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, true);
+        this.senderThread = new Thread(this::send, "gelf-sender");
+        this.senderThread.setDaemon(true);
+        this.senderThread.start();
+    }
+
+    /**
+     * Submits an event for encoding, waiting for a free slot if too many messages are pending.
+     *
+     * @param event the event, prepared for deferred processing
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void submit(ILoggingEvent event) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Encoding pipeline is closed");
+        }
+        pending.put(CompletableFuture.supplyAsync(() -> copy(encoder.apply(event)), pool));
+    }
+
+    /**
+     * Returns the number of events which have been submitted but not sent yet.
+     */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    private static ByteBuffer copy(ByteBuffer message) {
+        if (message == null) {
+            return null;
+        }
+        final ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+        copy.put(message).flip();
+        return copy;
+    }
+
+    private void send() {
+        try {
+            while (!closed || !pending.isEmpty()) {
+                final CompletableFuture<ByteBuffer> next = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    continue;
+                }
+                try {
+                    final ByteBuffer message = next.join();
+                    if (message != null) {
+                        sender.accept(message);
+                    }
+                } catch (CompletionException e) {
+                    errorReporter.reportError("Could not encode GELF message: " + e.getCause(), e);
+                } catch (RuntimeException e) {
+                    errorReporter.reportError("Could not send GELF message: " + e.getMessage(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends the pending messages and stops the threads.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            senderThread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,43 @@
+package net.gini.dropwizard.gelf.logging;
+
+import biz.paluch.logging.gelf.GelfMessageAssembler;
+import biz.paluch.logging.gelf.intern.GelfMessage;
+import biz.paluch.logging.gelf.logback.GelfLogbackAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import org.slf4j.Marker;
+
+/**
+ * {@link GelfLogbackAppender} adding the fields of a {@link FieldMarker} to the GELF message of an event.
+ * <p>
+ * With a {@link StackTraceCache}, stack traces are added from the cache instead of by logstash-gelf, whose stack-trace
+ * extraction has to be disabled then.
+ * </p>
+ */
+class EnrichingGelfLogbackAppender extends GelfLogbackAppender {
+
+    private final StackTraceCache stackTraces;
+
+    /**
+     * @param stackTraces the cache of stack traces, or {@code null}
+     */
+    EnrichingGelfLogbackAppender(StackTraceCache stackTraces) {
+        this.stackTraces = stackTraces;
+    }
+
+    @Override
+    protected GelfMessage createGelfMessage(ILoggingEvent event) {
+        final GelfMessage message = super.createGelfMessage(event);
+        final IThrowableProxy throwableProxy = event.getThrowableProxy();
+        if (stackTraces != null && throwableProxy instanceof ThrowableProxy) {
+            message.addField(GelfMessageAssembler.FIELD_STACK_TRACE,
+                    stackTraces.get(((ThrowableProxy) throwableProxy).getThrowable()));
+        }
+        final Marker marker = event.getMarker();
+        if (marker instanceof FieldMarker) {
+            ((FieldMarker) marker).forEachField(message::addField);
+        }
+        return message;
+    }
+}
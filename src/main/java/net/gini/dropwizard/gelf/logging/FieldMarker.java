@@ -0,0 +1,23 @@
+package net.gini.dropwizard.gelf.logging;
+
+import org.slf4j.Marker;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link Marker} carrying additional fields of a single logging event.
+ * <p>
+ * The appenders built by {@link GelfAppenderFactory} add the fields to the GELF message of the event, taking
+ * precedence over MDC, additional and default fields of the same name. Unlike MDC entries, the fields don't have to be
+ * put into and removed from the MDC of the logging thread and don't show up in other logging events.
+ * </p>
+ */
+public interface FieldMarker extends Marker {
+
+    /**
+     * Passes the fields to the given consumer.
+     *
+     * @param consumer the consumer of the names and values, values are never {@code null}
+     */
+    void forEachField(BiConsumer<String, String> consumer);
+}
@@ -7,6 +7,9 @@ import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.helpers.NOPAppender;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 import com.google.common.base.Joiner;
@@ -17,17 +20,138 @@ import io.dropwizard.logging.async.AsyncAppenderFactory;
 import io.dropwizard.logging.filter.LevelFilterFactory;
 import io.dropwizard.logging.layout.LayoutFactory;
 import io.dropwizard.validation.PortRange;
-import org.hibernate.validator.constraints.NotEmpty;
-
+import io.dropwizard.validation.ValidationMethod;
+import net.gini.dropwizard.gelf.transport.Balancing;
+import net.gini.dropwizard.gelf.transport.Compression;
+import net.gini.dropwizard.gelf.transport.GelfEndpoint;
+import net.gini.dropwizard.gelf.transport.GelfTransports;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @JsonTypeName("gelf")
 public class GelfAppenderFactory extends AbstractAppenderFactory<ILoggingEvent> {
 
+    /**
+     * The way logging events are turned into GELF messages.
+     */
+    public enum Encoder {
+        /**
+         * Build a {@link GelfMessage} for every event and serialize it with logstash-gelf.
+         */
+        GELF_MESSAGE,
+        /**
+         * Write the GELF JSON of every event straight into a reusable per-thread buffer.
+         */
+        STREAMING
+    }
+
+    /**
+     * The queue handing logging events to the thread sending them.
+     */
+    public enum AsyncQueue {
+        /**
+         * Use the blocking queue of the {@link ch.qos.logback.classic.AsyncAppender} built by Dropwizard.
+         */
+        BLOCKING_QUEUE,
+        /**
+         * Use a pre-allocated lock-free ring buffer with a configurable {@link OverflowPolicy}.
+         */
+        RING_BUFFER
+    }
+
+    /**
+     * What happens to a logging event while the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until there is room for the event.
+         */
+        BLOCK,
+        /**
+         * Drop the event, unless the oldest queued event has a lower level which is dropped instead.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the oldest queued event, unless it has a higher level than the event which is dropped instead.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the event if its level is below the overflow level, otherwise wait until there is room for it.
+         */
+        DROP_BELOW_LEVEL
+    }
+
+    /**
+     * The property of logging events choosing the lane they are sent by, see {@link #setSenderThreads(int)}. Events
+     * with the same key keep their order.
+     */
+    public enum PartitionKey {
+        /**
+         * Partition events by the name of the thread logging them.
+         */
+        THREAD {
+            @Override
+            int hash(ILoggingEvent event) {
+                return Objects.hashCode(event.getThreadName());
+            }
+        },
+        /**
+         * Partition events by the name of their logger.
+         */
+        LOGGER {
+            @Override
+            int hash(ILoggingEvent event) {
+                return Objects.hashCode(event.getLoggerName());
+            }
+        };
+
+        abstract int hash(ILoggingEvent event);
+    }
+
+    /**
+     * A GELF-compatible server messages are distributed to, see {@link #setEndpoints(List)}.
+     */
+    public static class Endpoint {
+
+        @JsonProperty
+        @NotEmpty
+        private String host = "localhost";
+
+        @JsonProperty
+        @PortRange
+        private int port = 12201;
+
+        public String getHost() {
+            return host;
+        }
+
+        public void setHost(String host) {
+            this.host = host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+    }
+
     @JsonProperty
     private boolean enabled = true;
 
@@ -42,6 +166,23 @@ public class GelfAppenderFactory extends AbstractAppenderFactory<ILoggingEvent>
     @PortRange
     private int port = 12201;
 
+    @JsonProperty
+    @Valid
+    @NotNull
+    private List<Endpoint> endpoints = ImmutableList.of();
+
+    @JsonProperty
+    @NotNull
+    private Balancing balancing = Balancing.ROUND_ROBIN;
+
+    @JsonProperty
+    @Min(1)
+    private int circuitBreakerFailures = 3;
+
+    @JsonProperty
+    @Min(1)
+    private long circuitBreakerMillis = 10_000L;
+
     @JsonProperty
     private Optional<String> originHost = Optional.empty();
 
@@ -84,6 +225,95 @@ public class GelfAppenderFactory extends AbstractAppenderFactory<ILoggingEvent>
     @NotNull
     private String timestampPattern = "yyyy-MM-dd HH:mm:ss,SSSS";
 
+    @JsonProperty
+    @NotNull
+    private Encoder encoder = Encoder.GELF_MESSAGE;
+
+    @JsonProperty
+    @Min(0)
+    private int batchBytes = 0;
+
+    @JsonProperty
+    @Min(1)
+    private long lingerMillis = 10L;
+
+    @JsonProperty
+    @NotNull
+    private Compression compression = Compression.GZIP;
+
+    @JsonProperty
+    @Min(-1)
+    @Max(9)
+    private int compressionLevel = -1;
+
+    @JsonProperty
+    @Min(0)
+    private int compressionThreshold = 0;
+
+    @JsonProperty
+    @NotNull
+    private AsyncQueue asyncQueue = AsyncQueue.BLOCKING_QUEUE;
+
+    @JsonProperty
+    @NotNull
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    @JsonProperty
+    @NotNull
+    private String overflowLevel = "WARN";
+
+    @JsonProperty
+    private boolean metrics = false;
+
+    @JsonProperty
+    @Min(0)
+    private int repeatLimit = 0;
+
+    @JsonProperty
+    @Min(1)
+    private long repeatWindowMillis = 10_000L;
+
+    @JsonProperty
+    @Min(1)
+    private int repeatFingerprints = 1024;
+
+    @JsonProperty
+    @Min(0)
+    private int stackTraceCacheSize = 0;
+
+    @JsonProperty
+    @Min(1)
+    private int senderThreads = 1;
+
+    @JsonProperty
+    @Min(0)
+    private int encodingThreads = 0;
+
+    @JsonProperty
+    @NotNull
+    private PartitionKey partitionKey = PartitionKey.THREAD;
+
+    @JsonProperty
+    private Optional<String> spillDirectory = Optional.empty();
+
+    @JsonProperty
+    @Min(1)
+    private long spillMaxBytes = 64L * 1024L * 1024L;
+
+    @JsonProperty
+    @Min(1024)
+    private int spillSegmentBytes = 4 * 1024 * 1024;
+
+    @JsonProperty
+    @Min(1)
+    private long spillMaxAgeMillis = 3_600_000L;
+
+    @JsonProperty
+    @Min(1)
+    private int spillReplayRate = 1000;
+
+    private Supplier<MetricRegistry> metricRegistry = SharedMetricRegistries::tryGetDefault;
+
     public Optional<String> getFacility() {
         return facility;
     }
@@ -108,6 +338,43 @@ public class GelfAppenderFactory extends AbstractAppenderFactory<ILoggingEvent>
         this.port = port;
     }
 
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Sets the servers messages are distributed to instead of {@link #getHost()} and {@link #getPort()}.
+     *
+     * @param endpoints the servers, an empty list sends messages to host and port
+     */
+    public void setEndpoints(List<Endpoint> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    public Balancing getBalancing() {
+        return balancing;
+    }
+
+    public void setBalancing(Balancing balancing) {
+        this.balancing = balancing;
+    }
+
+    public int getCircuitBreakerFailures() {
+        return circuitBreakerFailures;
+    }
+
+    public void setCircuitBreakerFailures(int circuitBreakerFailures) {
+        this.circuitBreakerFailures = circuitBreakerFailures;
+    }
+
+    public long getCircuitBreakerMillis() {
+        return circuitBreakerMillis;
+    }
+
+    public void setCircuitBreakerMillis(long circuitBreakerMillis) {
+        this.circuitBreakerMillis = circuitBreakerMillis;
+    }
+
     public Optional<String> getOriginHost() {
         return originHost;
     }
@@ -212,6 +479,332 @@ public class GelfAppenderFactory extends AbstractAppenderFactory<ILoggingEvent>
         this.timestampPattern = timestampPattern;
     }
 
+    public Encoder getEncoder() {
+        return encoder;
+    }
+
+    public void setEncoder(Encoder encoder) {
+        this.encoder = encoder;
+    }
+
+    public int getBatchBytes() {
+        return batchBytes;
+    }
+
+    public void setBatchBytes(int batchBytes) {
+        this.batchBytes = batchBytes;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    public void setLingerMillis(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public AsyncQueue getAsyncQueue() {
+        return asyncQueue;
+    }
+
+    public void setAsyncQueue(AsyncQueue asyncQueue) {
+        this.asyncQueue = asyncQueue;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public String getOverflowLevel() {
+        return overflowLevel;
+    }
+
+    public void setOverflowLevel(String overflowLevel) {
+        this.overflowLevel = overflowLevel;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getRepeatLimit() {
+        return repeatLimit;
+    }
+
+    public void setRepeatLimit(int repeatLimit) {
+        this.repeatLimit = repeatLimit;
+    }
+
+    public long getRepeatWindowMillis() {
+        return repeatWindowMillis;
+    }
+
+    public void setRepeatWindowMillis(long repeatWindowMillis) {
+        this.repeatWindowMillis = repeatWindowMillis;
+    }
+
+    public int getRepeatFingerprints() {
+        return repeatFingerprints;
+    }
+
+    public void setRepeatFingerprints(int repeatFingerprints) {
+        this.repeatFingerprints = repeatFingerprints;
+    }
+
+    public int getStackTraceCacheSize() {
+        return stackTraceCacheSize;
+    }
+
+    public void setStackTraceCacheSize(int stackTraceCacheSize) {
+        this.stackTraceCacheSize = stackTraceCacheSize;
+    }
+
+    public int getSenderThreads() {
+        return senderThreads;
+    }
+
+    public void setSenderThreads(int senderThreads) {
+        this.senderThreads = senderThreads;
+    }
+
+    public int getEncodingThreads() {
+        return encodingThreads;
+    }
+
+    public void setEncodingThreads(int encodingThreads) {
+        this.encodingThreads = encodingThreads;
+    }
+
+    public PartitionKey getPartitionKey() {
+        return partitionKey;
+    }
+
+    public void setPartitionKey(PartitionKey partitionKey) {
+        this.partitionKey = partitionKey;
+    }
+
+    public Optional<String> getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(Optional<String> spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public long getSpillMaxBytes() {
+        return spillMaxBytes;
+    }
+
+    public void setSpillMaxBytes(long spillMaxBytes) {
+        this.spillMaxBytes = spillMaxBytes;
+    }
+
+    public int getSpillSegmentBytes() {
+        return spillSegmentBytes;
+    }
+
+    public void setSpillSegmentBytes(int spillSegmentBytes) {
+        this.spillSegmentBytes = spillSegmentBytes;
+    }
+
+    public long getSpillMaxAgeMillis() {
+        return spillMaxAgeMillis;
+    }
+
+    public void setSpillMaxAgeMillis(long spillMaxAgeMillis) {
+        this.spillMaxAgeMillis = spillMaxAgeMillis;
+    }
+
+    public int getSpillReplayRate() {
+        return spillReplayRate;
+    }
+
+    public void setSpillReplayRate(int spillReplayRate) {
+        this.spillReplayRate = spillReplayRate;
+    }
+
+    void setMetricRegistry(Supplier<MetricRegistry> metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "encoder STREAMING only supports the host schemes udp:, tcp: and unix:")
+    public boolean isStreamingHostSupported() {
+        return encoder != Encoder.STREAMING || areHostsSupported();
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "encoder STREAMING does not support mdcProfiling")
+    public boolean isStreamingMdcProfilingDisabled() {
+        return encoder != Encoder.STREAMING || !mdcProfiling;
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "encodingThreads requires encoder STREAMING")
+    public boolean isEncodingThreadsEncoderSupported() {
+        return encodingThreads == 0 || encoder == Encoder.STREAMING;
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "batchBytes requires a tcp: or unix: host")
+    public boolean isBatchingHostSupported() {
+        return batchBytes == 0 || (areHostsSupported() && hosts().allMatch(GelfTransports::isStream));
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "compression, compressionLevel and compressionThreshold require a udp: host")
+    public boolean isCompressionHostSupported() {
+        return !isCompressionConfigured() || (areHostsSupported() && hosts().noneMatch(GelfTransports::isStream));
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "unix: hosts require a socket path and Java 16 or later")
+    public boolean isUnixHostSupported() {
+        return hosts().noneMatch(GelfTransports::isUnix) || areHostsSupported();
+    }
+
+    private boolean isCompressionConfigured() {
+        return compression != Compression.GZIP || compressionLevel != -1 || compressionThreshold != 0;
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "asyncQueue RING_BUFFER does not support messageRate")
+    public boolean isRingBufferMessageRateUnset() {
+        return asyncQueue != AsyncQueue.RING_BUFFER || getMessageRate() == null;
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "overflowLevel must be one of TRACE, DEBUG, INFO, WARN, ERROR, ALL or OFF")
+    public boolean isOverflowLevelValid() {
+        // Level.toLevel() falls back to the default level for unknown names
+        return overflowLevel == null || Level.toLevel(overflowLevel, null) != null;
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "metrics only support the host schemes udp:, tcp: and unix:")
+    public boolean isMetricsHostSupported() {
+        return !metrics || areHostsSupported();
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "spillDirectory only supports the host schemes udp:, tcp: and unix:")
+    public boolean isSpillHostSupported() {
+        return !spillDirectory.isPresent() || areHostsSupported();
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "spillMaxBytes must not be less than spillSegmentBytes")
+    public boolean isSpillMaxBytesValid() {
+        return spillMaxBytes >= spillSegmentBytes;
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "endpoints only support the host schemes udp:, tcp: and unix:")
+    public boolean isEndpointsHostSupported() {
+        return endpoints.isEmpty() || areHostsSupported();
+    }
+
+    /**
+     * The host specifications messages are sent to, either those of the endpoints or the host.
+     */
+    private Stream<String> hosts() {
+        return endpoints.isEmpty() ? Stream.of(host) : endpoints.stream().map(Endpoint::getHost);
+    }
+
+    private boolean areHostsSupported() {
+        return hosts().allMatch(GelfTransports::supports);
+    }
+
+    private boolean isStackTraceCacheEnabled() {
+        return extractStackTrace && stackTraceCacheSize > 0;
+    }
+
+    /**
+     * Whether messages have to be sent with a {@link net.gini.dropwizard.gelf.transport.GelfTransport} because a
+     * transport feature is configured or a host is used which logstash-gelf doesn't offer.
+     */
+    private boolean requiresTransport() {
+        return batchBytes > 0 || isCompressionConfigured() || metrics || spillDirectory.isPresent()
+                || !endpoints.isEmpty() || hosts().anyMatch(GelfTransports::isUnix);
+    }
+
+    /**
+     * The configured MDC fields, plus the field of the summaries of suppressed repeated events if enabled.
+     */
+    Collection<String> effectiveMdcFields() {
+        if (repeatLimit == 0 || mdcFields.contains(RepeatSuppressingAppender.SUPPRESSED_COUNT)) {
+            return mdcFields;
+        }
+        return ImmutableList.<String>builder()
+                .addAll(mdcFields)
+                .add(RepeatSuppressingAppender.SUPPRESSED_COUNT)
+                .build();
+    }
+
+    GelfTransports.Builder transportBuilder() {
+        return transportBuilder(-1);
+    }
+
+    /**
+     * Returns the builder of the transport of a lane. Every lane spills to a directory of its own.
+     *
+     * @param lane the index of the lane, or {@code -1} without lanes
+     */
+    private GelfTransports.Builder transportBuilder(int lane) {
+        final Optional<Path> spillPath = spillDirectory.map(Paths::get)
+                .map(directory -> lane < 0 ? directory : directory.resolve("lane-" + lane));
+        return GelfTransports.builder(host, port)
+                .maximumMessageSize(maximumMessageSize)
+                .batchBytes(batchBytes)
+                .lingerMillis(lingerMillis)
+                .compression(compression)
+                .compressionLevel(compressionLevel)
+                .compressionThreshold(compressionThreshold)
+                .endpoints(endpoints.stream()
+                        .map(endpoint -> new GelfEndpoint(endpoint.getHost(), endpoint.getPort()))
+                        .collect(Collectors.toList()))
+                .balancing(balancing)
+                .circuitBreakerFailures(circuitBreakerFailures)
+                .circuitBreakerMillis(circuitBreakerMillis)
+                .spillDirectory(spillPath.orElse(null))
+                .spillMaxBytes(spillMaxBytes)
+                .spillSegmentBytes(spillSegmentBytes)
+                .spillMaxAgeMillis(spillMaxAgeMillis)
+                .spillReplayRate(spillReplayRate);
+    }
+
     @Override
     public Appender<ILoggingEvent> build(LoggerContext context,
                                          String applicationName,
@@ -224,22 +817,74 @@ public class GelfAppenderFactory extends AbstractAppenderFactory<ILoggingEvent>
             return appender;
         }
 
-        final GelfLogbackAppender appender = new GelfLogbackAppender();
+        final GelfMetrics gelfMetrics = metrics ? new GelfMetrics(metricRegistry) : null;
+        final StackTraceCache stackTraces = isStackTraceCacheEnabled()
+                ? new StackTraceCache(stackTraceCacheSize, filterStackTrace)
+                : null;
+        if (gelfMetrics != null && stackTraces != null) {
+            gelfMetrics.stackTraceCache(stackTraces);
+        }
+
+        if (senderThreads == 1) {
+            final Appender<ILoggingEvent> appender = buildGelfAppender(context, applicationName, levelFilterFactory,
+                    gelfMetrics, stackTraces, -1);
+            return suppressRepeats(wrap(appender, context, asyncAppenderFactory, gelfMetrics), context, gelfMetrics);
+        }
+
+        final StripingAppender stripingAppender = new StripingAppender(partitionKey);
+        stripingAppender.setContext(context);
+        stripingAppender.setName("striping-dropwizard-gelf");
+        for (int lane = 0; lane < senderThreads; lane++) {
+            final Appender<ILoggingEvent> appender = buildGelfAppender(context, applicationName, levelFilterFactory,
+                    gelfMetrics, stackTraces, lane);
+            stripingAppender.addAppender(wrap(appender, context, asyncAppenderFactory, gelfMetrics));
+        }
+        stripingAppender.start();
+
+        return suppressRepeats(stripingAppender, context, gelfMetrics);
+    }
+
+    /**
+     * Builds the GELF appender of a lane, with a transport of its own.
+     *
+     * @param lane the index of the lane, or {@code -1} without lanes
+     */
+    private Appender<ILoggingEvent> buildGelfAppender(LoggerContext context, String applicationName,
+                                                      LevelFilterFactory<ILoggingEvent> levelFilterFactory,
+                                                      GelfMetrics gelfMetrics, StackTraceCache stackTraces,
+                                                      int lane) {
+        final String name = lane < 0 ? "dropwizard-gelf" : "dropwizard-gelf-" + lane;
+        if (encoder == Encoder.STREAMING) {
+            final StreamingGelfAppender appender = new StreamingGelfAppender(this, transportBuilder(lane),
+                    facility.orElse(applicationName), gelfMetrics, stackTraces);
+            appender.setContext(context);
+            appender.setName(name);
+            appender.addFilter(levelFilterFactory.build(threshold));
+            getFilterFactories().forEach(f -> appender.addFilter(f.build()));
+            appender.start();
+
+            return appender;
+        }
+
+        final GelfLogbackAppender appender = requiresTransport()
+                ? new TransportGelfLogbackAppender(transportBuilder(lane), gelfMetrics, stackTraces)
+                : new EnrichingGelfLogbackAppender(stackTraces);
 
         appender.setContext(context);
-        appender.setName("dropwizard-gelf");
+        appender.setName(name);
         appender.setFacility(facility.orElse(applicationName));
         appender.setGraylogHost(host);
         appender.setGraylogPort(port);
         appender.setVersion(GelfMessage.GELF_VERSION_1_1);
         appender.setAdditionalFields(buildFieldsSpec(additionalFields));
         appender.setAdditionalFieldTypes(buildFieldsSpec(additionalFieldTypes));
-        appender.setMdcFields(buildMdcFieldsSpec(mdcFields));
+        appender.setMdcFields(buildMdcFieldsSpec(effectiveMdcFields()));
         appender.setDynamicMdcFields(buildMdcFieldsSpec(dynamicMdcFields));
         appender.setIncludeFullMdc(includeFullMDC);
         appender.setIncludeLocation(includeLocation);
         appender.setMdcProfiling(mdcProfiling);
-        appender.setExtractStackTrace(Boolean.toString(extractStackTrace));
+        // Stack traces from the cache are added by the appender instead
+        appender.setExtractStackTrace(Boolean.toString(extractStackTrace && stackTraces == null));
         appender.setFilterStackTrace(filterStackTrace);
         appender.setMaximumMessageSize(maximumMessageSize);
         appender.setTimestampPattern(timestampPattern);
@@ -250,7 +895,51 @@ public class GelfAppenderFactory extends AbstractAppenderFactory<ILoggingEvent>
         getFilterFactories().forEach(f -> appender.addFilter(f.build()));
         appender.start();
 
-        return wrapAsync(appender, asyncAppenderFactory);
+        return appender;
+    }
+
+    private Appender<ILoggingEvent> suppressRepeats(Appender<ILoggingEvent> appender, LoggerContext context,
+                                                    GelfMetrics gelfMetrics) {
+        if (repeatLimit == 0) {
+            return appender;
+        }
+        final RepeatSuppressingAppender suppressingAppender =
+                new RepeatSuppressingAppender(repeatLimit, repeatWindowMillis, repeatFingerprints);
+        suppressingAppender.setContext(context);
+        suppressingAppender.setName("repeat-suppressing-" + appender.getName());
+        suppressingAppender.addAppender(appender);
+        suppressingAppender.start();
+        if (gelfMetrics != null) {
+            gelfMetrics.suppression(suppressingAppender::getSuppressedCount, suppressingAppender::getFingerprintCount);
+            gelfMetrics.register();
+        }
+        return suppressingAppender;
+    }
+
+    private Appender<ILoggingEvent> wrap(Appender<ILoggingEvent> appender, LoggerContext context,
+                                         AsyncAppenderFactory<ILoggingEvent> asyncAppenderFactory,
+                                         GelfMetrics gelfMetrics) {
+        if (asyncQueue == AsyncQueue.BLOCKING_QUEUE) {
+            if (gelfMetrics == null) {
+                return wrapAsync(appender, asyncAppenderFactory);
+            }
+            final CountingAsyncAppender asyncAppender = new CountingAsyncAppender();
+            gelfMetrics.queue(asyncAppender::getNumberOfElementsInQueue, asyncAppender::getDroppedCount);
+            gelfMetrics.register();
+            return wrapAsync(appender, () -> asyncAppender);
+        }
+
+        final RingBufferAsyncAppender asyncAppender = new RingBufferAsyncAppender(getQueueSize(), overflowPolicy,
+                Level.toLevel(overflowLevel, Level.WARN), isIncludeCallerData());
+        asyncAppender.setContext(context);
+        asyncAppender.setName("async-" + appender.getName());
+        asyncAppender.addAppender(appender);
+        asyncAppender.start();
+        if (gelfMetrics != null) {
+            gelfMetrics.queue(asyncAppender::getQueueSize, asyncAppender::getDroppedCount);
+            gelfMetrics.register();
+        }
+        return asyncAppender;
     }
 
     private String buildMdcFieldsSpec(@NotNull Collection<String> fields) {
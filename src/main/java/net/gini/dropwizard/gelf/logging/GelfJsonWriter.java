@@ -0,0 +1,290 @@
+package net.gini.dropwizard.gelf.logging;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A growable byte buffer writing UTF-8 encoded JSON tokens. Instances are meant to be reused for many messages by a
+ * single thread, so writing does not allocate unless the buffer has to grow.
+ * <p>
+ * Strings are escaped like logstash-gelf does: {@code "}, a backslash and the common control characters get their
+ * short escape sequence, all other characters below {@code 0x20} are written as unicode escape sequence and malformed
+ * surrogates are replaced by {@code ?}.
+ * </p>
+ */
+final class GelfJsonWriter {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE)
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private final int initialCapacity;
+    private final int maximumRetainedCapacity;
+    private final EscapingWriter escapingWriter = new EscapingWriter();
+
+    private byte[] bytes;
+    private ByteBuffer byteBuffer;
+    private int size;
+
+    GelfJsonWriter(int initialCapacity, int maximumRetainedCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.maximumRetainedCapacity = maximumRetainedCapacity;
+        this.bytes = new byte[initialCapacity];
+        this.byteBuffer = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Discards the content written so far. Buffers which grew beyond the maximum retained capacity for a single
+     * large message are released.
+     */
+    void reset() {
+        size = 0;
+        escapingWriter.pendingHighSurrogate = 0;
+        if (bytes.length > maximumRetainedCapacity) {
+            bytes = new byte[initialCapacity];
+            byteBuffer = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a view on the content written so far. The view is only valid until the next call to {@link #reset()}.
+     */
+    ByteBuffer toByteBuffer() {
+        byteBuffer.clear();
+        byteBuffer.limit(size);
+        return byteBuffer;
+    }
+
+    void writeByte(int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+    }
+
+    void writeBytes(byte[] b) {
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, bytes, size, b.length);
+        size += b.length;
+    }
+
+    void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(LONG_MIN_VALUE);
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            bytes[size++] = '-';
+            value = -value;
+        }
+        final int digits = digits(value);
+        int position = size + digits;
+        do {
+            bytes[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        size += digits;
+    }
+
+    /**
+     * Writes the given number of milliseconds as decimal number of seconds, e. g. {@code 1500000000123} as
+     * {@code 1500000000.123}.
+     */
+    void writeMillisAsSeconds(long millis) {
+        if (millis < 0) {
+            writeAscii(Double.toString(millis / 1000.0));
+            return;
+        }
+        writeLong(millis / 1000);
+        final int fraction = (int) (millis % 1000);
+        ensureCapacity(4);
+        bytes[size++] = '.';
+        bytes[size++] = (byte) ('0' + fraction / 100);
+        bytes[size++] = (byte) ('0' + fraction / 10 % 10);
+        bytes[size++] = (byte) ('0' + fraction % 10);
+    }
+
+    void writeAscii(CharSequence value) {
+        final int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            bytes[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    void writeQuoted(CharSequence value) {
+        writeByte('"');
+        writeEscaped(value, 0, value.length());
+        writeByte('"');
+    }
+
+    /**
+     * Writes the characters between {@code start} (inclusive) and {@code end} (exclusive) as the content of a JSON
+     * string, i. e. without the surrounding quotes.
+     */
+    void writeEscaped(CharSequence value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                ensureCapacity(1);
+                bytes[size++] = (byte) c;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+            } else {
+                writeChar(c);
+            }
+        }
+    }
+
+    /**
+     * Returns a {@link Writer} writing the escaped content of a JSON string into this buffer, e. g. for
+     * {@link Throwable#printStackTrace(java.io.PrintWriter)}.
+     */
+    Writer escapingWriter() {
+        return escapingWriter;
+    }
+
+    private void writeChar(char c) {
+        switch (c) {
+            case '"':
+                writeByte('\\');
+                writeByte('"');
+                break;
+            case '\\':
+                writeByte('\\');
+                writeByte('\\');
+                break;
+            case '\b':
+                writeByte('\\');
+                writeByte('b');
+                break;
+            case '\t':
+                writeByte('\\');
+                writeByte('t');
+                break;
+            case '\n':
+                writeByte('\\');
+                writeByte('n');
+                break;
+            case '\f':
+                writeByte('\\');
+                writeByte('f');
+                break;
+            case '\r':
+                writeByte('\\');
+                writeByte('r');
+                break;
+            default:
+                if (c < 0x20) {
+                    ensureCapacity(6);
+                    bytes[size++] = '\\';
+                    bytes[size++] = 'u';
+                    bytes[size++] = '0';
+                    bytes[size++] = '0';
+                    bytes[size++] = HEX[c >> 4];
+                    bytes[size++] = HEX[c & 0xF];
+                } else if (c < 0x80) {
+                    writeByte(c);
+                } else if (Character.isSurrogate(c)) {
+                    writeByte('?');
+                } else {
+                    writeCodePoint(c);
+                }
+        }
+    }
+
+    private void writeCodePoint(int codePoint) {
+        ensureCapacity(4);
+        if (codePoint < 0x800) {
+            bytes[size++] = (byte) (0xC0 | codePoint >> 6);
+            bytes[size++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (codePoint < 0x10000) {
+            bytes[size++] = (byte) (0xE0 | codePoint >> 12);
+            bytes[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            bytes[size++] = (byte) (0x80 | codePoint & 0x3F);
+        } else {
+            bytes[size++] = (byte) (0xF0 | codePoint >> 18);
+            bytes[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            bytes[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            bytes[size++] = (byte) (0x80 | codePoint & 0x3F);
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > bytes.length) {
+            final byte[] grown = new byte[Math.max(bytes.length * 2, size + additional)];
+            System.arraycopy(bytes, 0, grown, 0, size);
+            bytes = grown;
+            byteBuffer = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    private static int digits(long value) {
+        long limit = 10;
+        for (int digits = 1; digits < 19; digits++) {
+            if (value < limit) {
+                return digits;
+            }
+            limit *= 10;
+        }
+        return 19;
+    }
+
+    private final class EscapingWriter extends Writer {
+
+        private char pendingHighSurrogate;
+
+        @Override
+        public void write(int c) {
+            write((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                write(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String value, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                write(value.charAt(i));
+            }
+        }
+
+        private void write(char c) {
+            if (pendingHighSurrogate != 0) {
+                final char high = pendingHighSurrogate;
+                pendingHighSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    writeCodePoint(Character.toCodePoint(high, c));
+                    return;
+                }
+                writeByte('?');
+            }
+            if (Character.isHighSurrogate(c)) {
+                pendingHighSurrogate = c;
+            } else {
+                writeChar(c);
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (pendingHighSurrogate != 0) {
+                pendingHighSurrogate = 0;
+                writeByte('?');
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+}
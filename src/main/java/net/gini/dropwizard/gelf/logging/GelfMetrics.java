@@ -0,0 +1,206 @@
+package net.gini.dropwizard.gelf.logging;
+
+import ch.qos.logback.classic.Level;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import net.gini.dropwizard.gelf.transport.TransportListener;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Metrics of the GELF appender, from accepted logging events to the bytes sent by the transport.
+ * <p>
+ * Dropwizard configures logging before the {@link MetricRegistry} of the application is available as default
+ * {@link com.codahale.metrics.SharedMetricRegistries shared registry}, so the metrics are registered lazily once the
+ * registry supplier returns a registry. Metrics registered by a previously built appender are replaced.
+ * </p>
+ */
+final class GelfMetrics implements TransportListener {
+
+    static final String PREFIX = "net.gini.dropwizard.gelf";
+
+    private final Supplier<MetricRegistry> registrySupplier;
+    private final Map<String, Metric> metrics = new LinkedHashMap<>();
+    private final Meter[] accepted = new Meter[LevelCounters.LEVELS.length];
+    private final Timer encode = new Timer();
+    private final Meter bytes = new Meter();
+    private final Meter datagrams = new Meter();
+    private final Meter frames = new Meter();
+    private final Meter chunked = new Meter();
+    private final Meter errors = new Meter();
+    private final Counter reconnects = new Counter();
+    private final List<IntSupplier> queueSizes = new CopyOnWriteArrayList<>();
+    private final List<ToLongFunction<Level>> droppedCounts = new CopyOnWriteArrayList<>();
+    private final Meter spilled = new Meter();
+    private final Meter replayed = new Meter();
+    private final Meter spillDropped = new Meter();
+    private final Counter openCircuits = new Counter();
+
+    private volatile boolean registered;
+
+    GelfMetrics(Supplier<MetricRegistry> registrySupplier) {
+        this.registrySupplier = requireNonNull(registrySupplier);
+        for (int i = 0; i < accepted.length; i++) {
+            accepted[i] = new Meter();
+            metrics.put(name(PREFIX, "events", "accepted", levelName(LevelCounters.LEVELS[i])), accepted[i]);
+        }
+        metrics.put(name(PREFIX, "encode"), encode);
+        metrics.put(name(PREFIX, "bytes"), bytes);
+        metrics.put(name(PREFIX, "datagrams"), datagrams);
+        metrics.put(name(PREFIX, "frames"), frames);
+        metrics.put(name(PREFIX, "chunked"), chunked);
+        metrics.put(name(PREFIX, "errors"), errors);
+        metrics.put(name(PREFIX, "reconnects"), reconnects);
+        metrics.put(name(PREFIX, "spill", "spilled"), spilled);
+        metrics.put(name(PREFIX, "spill", "replayed"), replayed);
+        metrics.put(name(PREFIX, "spill", "dropped"), spillDropped);
+        metrics.put(name(PREFIX, "endpoints", "unavailable"), openCircuits);
+    }
+
+    /**
+     * Adds gauges of the asynchronous appender wrapping the GELF appender. The gauges of several asynchronous
+     * appenders, i. e. lanes, are summed up.
+     *
+     * @param queueSize the number of queued events
+     * @param dropped   the number of dropped events of a level
+     */
+    synchronized void queue(IntSupplier queueSize, ToLongFunction<Level> dropped) {
+        queueSizes.add(queueSize);
+        droppedCounts.add(dropped);
+        metrics.put(name(PREFIX, "queue", "size"),
+                (Gauge<Integer>) () -> queueSizes.stream().mapToInt(IntSupplier::getAsInt).sum());
+        for (Level level : LevelCounters.LEVELS) {
+            metrics.put(name(PREFIX, "events", "dropped", levelName(level)),
+                    (Gauge<Long>) () -> droppedCounts.stream().mapToLong(d -> d.applyAsLong(level)).sum());
+        }
+        registered = false;
+    }
+
+    /**
+     * Adds gauges of the appender suppressing repeated events in front of the GELF appender.
+     *
+     * @param suppressed   the number of suppressed events
+     * @param fingerprints the number of tracked distinct events
+     */
+    synchronized void suppression(LongSupplier suppressed, IntSupplier fingerprints) {
+        metrics.put(name(PREFIX, "events", "suppressed"), (Gauge<Long>) suppressed::getAsLong);
+        metrics.put(name(PREFIX, "suppression", "fingerprints"), (Gauge<Integer>) fingerprints::getAsInt);
+        registered = false;
+    }
+
+    /**
+     * Adds gauges of the cache of stack traces.
+     *
+     * @param stackTraces the cache of stack traces
+     */
+    synchronized void stackTraceCache(StackTraceCache stackTraces) {
+        metrics.put(name(PREFIX, "stacktraces", "size"), (Gauge<Long>) stackTraces::size);
+        metrics.put(name(PREFIX, "stacktraces", "hits"), (Gauge<Long>) stackTraces::hitCount);
+        metrics.put(name(PREFIX, "stacktraces", "misses"), (Gauge<Long>) stackTraces::missCount);
+        registered = false;
+    }
+
+    void accepted(Level level) {
+        accepted[LevelCounters.index(level)].mark();
+        if (!registered) {
+            register();
+        }
+    }
+
+    void encoded(long nanos) {
+        encode.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers the metrics if the registry is available.
+     *
+     * @return {@code true} if the metrics are registered
+     */
+    synchronized boolean register() {
+        if (registered) {
+            return true;
+        }
+        final MetricRegistry registry = registrySupplier.get();
+        if (registry == null) {
+            return false;
+        }
+        metrics.forEach((name, metric) -> {
+            registry.remove(name);
+            registry.register(name, metric);
+        });
+        registered = true;
+        return true;
+    }
+
+    @Override
+    public void datagramSent(int size) {
+        datagrams.mark();
+        bytes.mark(size);
+    }
+
+    @Override
+    public void messageChunked(int chunks) {
+        chunked.mark();
+    }
+
+    @Override
+    public void framesWritten(int count, int size) {
+        frames.mark(count);
+        bytes.mark(size);
+    }
+
+    @Override
+    public void sendFailed() {
+        errors.mark();
+    }
+
+    @Override
+    public void reconnected() {
+        reconnects.inc();
+    }
+
+    @Override
+    public void messageSpilled() {
+        spilled.mark();
+    }
+
+    @Override
+    public void messageReplayed() {
+        replayed.mark();
+    }
+
+    @Override
+    public void spillDropped() {
+        spillDropped.mark();
+    }
+
+    @Override
+    public void circuitOpened() {
+        openCircuits.inc();
+    }
+
+    @Override
+    public void circuitClosed() {
+        openCircuits.dec();
+    }
+
+    private static String levelName(Level level) {
+        return level.toString().toLowerCase(Locale.ENGLISH);
+    }
+}
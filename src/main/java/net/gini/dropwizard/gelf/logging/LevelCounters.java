@@ -0,0 +1,42 @@
+package net.gini.dropwizard.gelf.logging;
+
+import ch.qos.logback.classic.Level;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe counters of logging events per level.
+ */
+final class LevelCounters {
+
+    static final Level[] LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR};
+
+    private final LongAdder[] counters = new LongAdder[LEVELS.length];
+
+    LevelCounters() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    void increment(Level level) {
+        counters[index(level)].increment();
+    }
+
+    /**
+     * @param level the level
+     * @return the count of the given level, levels between the standard levels are counted as the next lower level
+     */
+    long get(Level level) {
+        return counters[index(level)].sum();
+    }
+
+    static int index(Level level) {
+        for (int i = LEVELS.length - 1; i > 0; i--) {
+            if (level.toInt() >= LEVELS[i].toInt()) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,274 @@
+package net.gini.dropwizard.gelf.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Appender forwarding only the first {@code limit} of repeated logging events within a window to its appenders.
+ * <p>
+ * Events are repeated if they have the same logger, level, message template and throwable type. Once a window of an
+ * event with suppressed repeats has passed, a summary event with the number of suppressed events in the
+ * {@value #SUPPRESSED_COUNT} MDC field is forwarded instead. At most {@code maximumFingerprints} distinct events are
+ * tracked, further events are forwarded until idle fingerprints have been removed.
+ * </p>
+ */
+class RepeatSuppressingAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    static final String SUPPRESSED_COUNT = "suppressedCount";
+
+    private static final StackTraceElement[] NO_CALLER_DATA = new StackTraceElement[0];
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private final int limit;
+    private final long windowMillis;
+    private final long windowNanos;
+    private final int maximumFingerprints;
+    private final Map<Fingerprint, Window> windows = new ConcurrentHashMap<>();
+    private final LongAdder suppressed = new LongAdder();
+
+    private ScheduledFuture<?> sweeper;
+
+    /**
+     * @param limit               the number of repeated events forwarded per window
+     * @param windowMillis        the length of a window in milliseconds
+     * @param maximumFingerprints the maximum number of distinct events tracked at the same time
+     */
+    RepeatSuppressingAppender(int limit, long windowMillis, int maximumFingerprints) {
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maximumFingerprints = maximumFingerprints;
+    }
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (limit < 1 || windowMillis < 1 || maximumFingerprints < 1) {
+            addError("Invalid repeat suppression [limit=" + limit + ", window=" + windowMillis
+                    + " ms, fingerprints=" + maximumFingerprints + "]");
+            return;
+        }
+        try {
+            sweeper = getContext().getScheduledExecutorService()
+                    .scheduleWithFixedDelay(this::sweep, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            addWarn("Could not schedule summaries of suppressed events, they are sent with the next repeat", e);
+        }
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        if (sweeper != null) {
+            sweeper.cancel(false);
+        }
+        windows.forEach((fingerprint, window) -> summarize(fingerprint, window.restart(System.nanoTime())));
+        windows.clear();
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        final Fingerprint fingerprint = new Fingerprint(event);
+        final long now = System.nanoTime();
+        Window window = windows.get(fingerprint);
+        if (window == null) {
+            if (windows.size() >= maximumFingerprints) {
+                appenders.appendLoopOnAppenders(event);
+                return;
+            }
+            window = windows.computeIfAbsent(fingerprint, key -> new Window(now));
+        }
+
+        if (now - window.start >= windowNanos) {
+            summarize(fingerprint, window.restartIfExpired(now, windowNanos));
+        }
+
+        if (window.forwarded.incrementAndGet() <= limit) {
+            appenders.appendLoopOnAppenders(event);
+        } else {
+            window.suppressed.incrementAndGet();
+            suppressed.increment();
+        }
+    }
+
+    /**
+     * Sends the summaries of expired windows and removes the fingerprints of events which haven't been repeated.
+     */
+    private void sweep() {
+        final long now = System.nanoTime();
+        windows.forEach((fingerprint, window) -> {
+            if (now - window.start < windowNanos) {
+                return;
+            }
+            if (window.forwarded.get() == 0) {
+                windows.remove(fingerprint, window);
+            } else {
+                summarize(fingerprint, window.restartIfExpired(now, windowNanos));
+            }
+        });
+    }
+
+    private void summarize(Fingerprint fingerprint, int count) {
+        if (count <= 0) {
+            return;
+        }
+        final LoggingEvent summary = new LoggingEvent();
+        summary.setLoggerName(fingerprint.loggerName);
+        summary.setLevel(fingerprint.level);
+        summary.setThreadName(Thread.currentThread().getName());
+        summary.setTimeStamp(System.currentTimeMillis());
+        summary.setMessage("Suppressed {} repeated messages within {} ms: {}");
+        summary.setArgumentArray(new Object[]{count, windowMillis, fingerprint.message});
+        summary.setMDCPropertyMap(Collections.singletonMap(SUPPRESSED_COUNT, String.valueOf(count)));
+        summary.setCallerData(NO_CALLER_DATA);
+        if (getContext() instanceof LoggerContext) {
+            summary.setLoggerContextRemoteView(((LoggerContext) getContext()).getLoggerContextRemoteView());
+        }
+        appenders.appendLoopOnAppenders(summary);
+    }
+
+    /**
+     * Returns the number of suppressed events.
+     *
+     * @return the number of events which have not been forwarded
+     */
+    long getSuppressedCount() {
+        return suppressed.sum();
+    }
+
+    int getFingerprintCount() {
+        return windows.size();
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+
+    /**
+     * What makes events repeats of each other.
+     */
+    private static final class Fingerprint {
+
+        private final String loggerName;
+        private final Level level;
+        private final String message;
+        private final String throwableClassName;
+        private final int hashCode;
+
+        private Fingerprint(ILoggingEvent event) {
+            final IThrowableProxy throwable = event.getThrowableProxy();
+            this.loggerName = event.getLoggerName();
+            this.level = event.getLevel();
+            this.message = event.getMessage();
+            this.throwableClassName = throwable == null ? null : throwable.getClassName();
+            this.hashCode = Objects.hash(loggerName, level.toInt(), message, throwableClassName);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            final Fingerprint that = (Fingerprint) o;
+            return hashCode == that.hashCode
+                    && level.toInt() == that.level.toInt()
+                    && Objects.equals(loggerName, that.loggerName)
+                    && Objects.equals(message, that.message)
+                    && Objects.equals(throwableClassName, that.throwableClassName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * The events of a fingerprint forwarded and suppressed in the current window.
+     */
+    private static final class Window {
+
+        private final AtomicInteger forwarded = new AtomicInteger();
+        private final AtomicInteger suppressed = new AtomicInteger();
+        private volatile long start;
+
+        private Window(long start) {
+            this.start = start;
+        }
+
+        /**
+         * Starts a new window if the current one has expired.
+         *
+         * @return the number of events suppressed in the expired window, {@code 0} if it hasn't expired
+         */
+        private synchronized int restartIfExpired(long now, long windowNanos) {
+            return now - start >= windowNanos ? restart(now) : 0;
+        }
+
+        private synchronized int restart(long now) {
+            start = now;
+            forwarded.set(0);
+            return suppressed.getAndSet(0);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package net.gini.dropwizard.gelf.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * A bounded, lock-free queue on a pre-allocated ring of slots, based on Dmitry Vyukov's bounded MPMC queue.
+ * <p>
+ * Every slot carries a sequence number telling producers and consumers whether the slot is free for the lap they are
+ * in, so claiming a slot is a single compare-and-set on the tail or head counter. Besides the consumer, producers may
+ * remove the oldest element to make room with {@link #pollIf(Predicate)}.
+ * </p>
+ *
+ * @param <E> the type of the elements
+ */
+final class RingBuffer<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity the minimum capacity, rounded up to the next power of two
+     */
+    RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid ring buffer capacity: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element if there is a free slot.
+     *
+     * @param element the element to add
+     * @return {@code true} if the element has been added, {@code false} if the ring buffer is full
+     */
+    boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element.
+     *
+     * @return the oldest element, or {@code null} if the ring buffer is empty
+     */
+    E poll() {
+        return pollIf(null);
+    }
+
+    /**
+     * Removes the oldest element if it matches the given condition.
+     *
+     * @param condition the condition the oldest element has to match, {@code null} to match any element
+     * @return the oldest element, or {@code null} if the ring buffer is empty or the oldest element doesn't match
+     */
+    E pollIf(Predicate<? super E> condition) {
+        long position = head.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                final E element = elements.get(index);
+                if (condition != null && !condition.test(element)) {
+                    return null;
+                }
+                if (head.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, null);
+                    sequences.lazySet(index, position + capacity);
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    int size() {
+        final long size = tail.get() - head.get();
+        return size < 0 ? 0 : (int) Math.min(size, capacity);
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
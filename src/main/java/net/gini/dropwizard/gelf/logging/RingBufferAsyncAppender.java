@@ -0,0 +1,237 @@
+package net.gini.dropwizard.gelf.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Asynchronous appender handing logging events to a worker thread through a pre-allocated {@link RingBuffer}.
+ * <p>
+ * Unlike {@link ch.qos.logback.classic.AsyncAppender}, logging threads don't contend on a lock to enqueue events.
+ * What happens to an event while the ring buffer is full is decided by the {@link GelfAppenderFactory.OverflowPolicy}.
+ * A queued event is only dropped to make room for an event with at least the same level, so errors aren't dropped
+ * to make room for debug messages.
+ * </p>
+ */
+class RingBufferAsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    // Producers unpark the idle worker, the timeout is only a safety net
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int MAXIMUM_FLUSH_MILLIS = 1000;
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private final int queueSize;
+    private final GelfAppenderFactory.OverflowPolicy overflowPolicy;
+    private final Level overflowLevel;
+    private final boolean includeCallerData;
+    private final LevelCounters dropped = new LevelCounters();
+
+    private RingBuffer<ILoggingEvent> buffer;
+    private Thread worker;
+    private volatile boolean running;
+    private volatile boolean workerWaiting;
+
+    RingBufferAsyncAppender(int queueSize, GelfAppenderFactory.OverflowPolicy overflowPolicy, Level overflowLevel,
+                            boolean includeCallerData) {
+        this.queueSize = queueSize;
+        this.overflowPolicy = requireNonNull(overflowPolicy);
+        this.overflowLevel = requireNonNull(overflowLevel);
+        this.includeCallerData = includeCallerData;
+    }
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (queueSize < 1) {
+            addError("Invalid queue size [" + queueSize + "]");
+            return;
+        }
+        buffer = new RingBuffer<>(queueSize);
+        running = true;
+        worker = new Thread(this::work, "GelfAsyncAppender-Worker-" + getName());
+        worker.setDaemon(true);
+        worker.start();
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(MAXIMUM_FLUSH_MILLIS);
+            if (worker.isAlive()) {
+                addWarn("Max queue flush timeout (" + MAXIMUM_FLUSH_MILLIS + " ms) exceeded. Approximately "
+                        + buffer.size() + " queued events were possibly discarded.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            addError("Failed to join worker thread. " + buffer.size() + " queued events may be discarded.", e);
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        event.prepareForDeferredProcessing();
+        if (includeCallerData) {
+            event.getCallerData();
+        }
+
+        if (buffer.offer(event)) {
+            signalWorker();
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                block(event);
+                break;
+            case DROP_NEWEST:
+                evictOrDrop(event, false);
+                break;
+            case DROP_OLDEST:
+                evictOrDrop(event, true);
+                break;
+            case DROP_BELOW_LEVEL:
+                if (event.getLevel().isGreaterOrEqual(overflowLevel)) {
+                    block(event);
+                } else {
+                    drop(event);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown overflow policy: " + overflowPolicy);
+        }
+    }
+
+    private void block(ILoggingEvent event) {
+        while (!buffer.offer(event)) {
+            if (!running || Thread.currentThread().isInterrupted()) {
+                drop(event);
+                return;
+            }
+            signalWorker();
+            LockSupport.parkNanos(this, BLOCKED_PARK_NANOS);
+        }
+        signalWorker();
+    }
+
+    private void evictOrDrop(ILoggingEvent event, boolean evictSameLevel) {
+        final int level = event.getLevel().toInt();
+        do {
+            final ILoggingEvent oldest = buffer.pollIf(queued -> queued.getLevel().toInt() < level
+                    || evictSameLevel && queued.getLevel().toInt() == level);
+            if (oldest == null) {
+                if (!buffer.offer(event)) {
+                    drop(event);
+                    return;
+                }
+                break;
+            }
+            drop(oldest);
+        } while (!buffer.offer(event));
+        signalWorker();
+    }
+
+    private void drop(ILoggingEvent event) {
+        dropped.increment(event.getLevel());
+    }
+
+    private void signalWorker() {
+        if (workerWaiting) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private void work() {
+        while (running) {
+            final ILoggingEvent event = buffer.poll();
+            if (event != null) {
+                appenders.appendLoopOnAppenders(event);
+            } else {
+                // Checked again after announcing the wait, so an event offered meanwhile signals the worker
+                workerWaiting = true;
+                if (running && buffer.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                workerWaiting = false;
+            }
+        }
+
+        ILoggingEvent event;
+        while ((event = buffer.poll()) != null) {
+            appenders.appendLoopOnAppenders(event);
+        }
+    }
+
+    /**
+     * Returns the number of events dropped because the ring buffer was full.
+     *
+     * @param level the level of the dropped events, events of other levels are counted as the next lower level
+     * @return the number of dropped events of the given level
+     */
+    long getDroppedCount(Level level) {
+        return dropped.get(level);
+    }
+
+    int getQueueSize() {
+        return buffer == null ? 0 : buffer.size();
+    }
+
+    int getQueueCapacity() {
+        return buffer == null ? 0 : buffer.capacity();
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
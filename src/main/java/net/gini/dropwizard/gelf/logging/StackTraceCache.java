@@ -0,0 +1,127 @@
+package net.gini.dropwizard.gelf.logging;
+
+import biz.paluch.logging.StackTraceFilter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bounded cache of the stack-trace field of GELF messages, so a throwable which is logged again and again from the
+ * same code path is walked and filtered only once.
+ * <p>
+ * Throwables are looked up by their fingerprint: the string representations and stack frames of the throwable, its
+ * suppressed throwables and its causes, i. e. everything the stack trace is printed from. The least recently used
+ * stack traces are evicted once the cache is full.
+ * </p>
+ */
+final class StackTraceCache {
+
+    private final boolean filterStackTrace;
+    private final Cache<Fingerprint, String> stackTraces;
+
+    /**
+     * @param maximumSize      the maximum number of cached stack traces
+     * @param filterStackTrace whether stack traces are filtered with {@link StackTraceFilter}
+     */
+    StackTraceCache(int maximumSize, boolean filterStackTrace) {
+        this.filterStackTrace = filterStackTrace;
+        this.stackTraces = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the stack trace of the given throwable, from the cache if the same stack trace has been printed before.
+     *
+     * @param throwable the throwable
+     * @return the stack trace, filtered if configured
+     */
+    String get(Throwable throwable) {
+        final Fingerprint fingerprint = new Fingerprint(throwable);
+        String stackTrace = stackTraces.getIfPresent(fingerprint);
+        if (stackTrace == null) {
+            stackTrace = filterStackTrace
+                    ? StackTraceFilter.getFilteredStackTrace(throwable, 0)
+                    : printStackTrace(throwable);
+            stackTraces.put(fingerprint, stackTrace);
+        }
+        return stackTrace;
+    }
+
+    long size() {
+        return stackTraces.size();
+    }
+
+    long hitCount() {
+        return stackTraces.stats().hitCount();
+    }
+
+    long missCount() {
+        return stackTraces.stats().missCount();
+    }
+
+    private static String printStackTrace(Throwable throwable) {
+        final StringWriter writer = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    /**
+     * What a stack trace is printed from.
+     */
+    private static final class Fingerprint {
+
+        private final Object[] parts;
+        private final int hashCode;
+
+        private Fingerprint(Throwable throwable) {
+            final List<Object> parts = new ArrayList<>();
+            add(throwable, parts, Collections.newSetFromMap(new IdentityHashMap<>()));
+            this.parts = parts.toArray();
+            this.hashCode = Arrays.deepHashCode(this.parts);
+        }
+
+        private static void add(Throwable throwable, List<Object> parts, Set<Throwable> visited) {
+            parts.add(throwable.toString());
+            if (!visited.add(throwable)) {
+                // Printed as circular reference
+                parts.add(null);
+                return;
+            }
+            parts.add(throwable.getStackTrace());
+            for (Throwable suppressed : throwable.getSuppressed()) {
+                add(suppressed, parts, visited);
+            }
+            parts.add(null);
+            if (throwable.getCause() != null) {
+                add(throwable.getCause(), parts, visited);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            final Fingerprint that = (Fingerprint) o;
+            return hashCode == that.hashCode && Arrays.deepEquals(parts, that.parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package net.gini.dropwizard.gelf.logging;
+
+import biz.paluch.logging.RuntimeContainer;
+import biz.paluch.logging.gelf.intern.ErrorReporter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import net.gini.dropwizard.gelf.transport.GelfTransport;
+import net.gini.dropwizard.gelf.transport.GelfTransports;
+
+import java.nio.ByteBuffer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Appender sending logging events encoded by {@link StreamingGelfEncoder} with a {@link GelfTransport}.
+ * <p>
+ * Unlike {@link biz.paluch.logging.gelf.logback.GelfLogbackAppender}, events are appended without holding a lock,
+ * each thread encodes into its own buffer. With {@link GelfAppenderFactory#getEncodingThreads() encoding threads},
+ * events are encoded by an {@link EncodingPipeline} instead and sent by its sender thread.
+ * </p>
+ */
+class StreamingGelfAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements ErrorReporter {
+
+    private final GelfAppenderFactory configuration;
+    private final GelfTransports.Builder transportBuilder;
+    private final String facility;
+    private final GelfMetrics metrics;
+    private final StackTraceCache stackTraces;
+
+    private StreamingGelfEncoder encoder;
+    private GelfTransport transport;
+    private EncodingPipeline pipeline;
+
+    /**
+     * @param configuration    the configuration of the appender
+     * @param transportBuilder the builder of the transport to send messages with
+     * @param facility         the facility of the GELF messages
+     * @param metrics          the metrics to record, or {@code null}
+     * @param stackTraces      the cache of stack traces, or {@code null}
+     */
+    StreamingGelfAppender(GelfAppenderFactory configuration, GelfTransports.Builder transportBuilder, String facility,
+                          GelfMetrics metrics, StackTraceCache stackTraces) {
+        this.configuration = requireNonNull(configuration);
+        this.transportBuilder = requireNonNull(transportBuilder);
+        this.facility = facility;
+        this.metrics = metrics;
+        this.stackTraces = stackTraces;
+    }
+
+    @Override
+    public void start() {
+        RuntimeContainer.initialize(this);
+        encoder = new StreamingGelfEncoder(configuration, configuration.getOriginHost()
+                .orElse(RuntimeContainer.FQDN_HOSTNAME), facility, stackTraces);
+        transportBuilder.errorReporter(this);
+        if (metrics != null) {
+            transportBuilder.listener(metrics);
+        }
+        transport = transportBuilder.build();
+        if (configuration.getEncodingThreads() > 0) {
+            final GelfTransport pipelineTransport = transport;
+            pipeline = new EncodingPipeline(configuration.getEncodingThreads(), this::encode,
+                    pipelineTransport::send, this);
+        }
+        super.start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        try {
+            if (metrics != null) {
+                metrics.accepted(event.getLevel());
+            }
+            if (pipeline != null) {
+                pipeline.submit(event);
+                return;
+            }
+            final ByteBuffer message = encode(event);
+            if (message != null) {
+                transport.send(message);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reportError("Interrupted while waiting to encode GELF message", e);
+        } catch (RuntimeException e) {
+            reportError("Could not send GELF message", e);
+        }
+    }
+
+    private ByteBuffer encode(ILoggingEvent event) {
+        if (metrics == null) {
+            return encoder.encode(event);
+        }
+        final long start = System.nanoTime();
+        final ByteBuffer message = encoder.encode(event);
+        metrics.encoded(System.nanoTime() - start);
+        return message;
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (pipeline != null) {
+            pipeline.close();
+        }
+        if (transport != null) {
+            transport.close();
+        }
+    }
+
+    @Override
+    public void reportError(String message, Exception e) {
+        addError(message, e);
+    }
+}
@@ -0,0 +1,561 @@
+package net.gini.dropwizard.gelf.logging;
+
+import biz.paluch.logging.StackTraceFilter;
+import biz.paluch.logging.gelf.GelfUtil;
+import biz.paluch.logging.gelf.intern.GelfMessage;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Marker;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.FieldPosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Encodes logging events as GELF 1.1 JSON straight into a reusable per-thread byte buffer.
+ * <p>
+ * The encoder produces the same fields as {@link biz.paluch.logging.gelf.logback.GelfLogbackAppender} configured by
+ * {@link GelfAppenderFactory}, but without building a {@link GelfMessage} with its maps and intermediate strings
+ * first. Where logstash-gelf would overwrite a field with a value from a later source (e. g. a static field by the
+ * full MDC), the sources are visited in reverse order and only the first value of each field is written.
+ * </p>
+ */
+final class StreamingGelfEncoder {
+
+    static final int MAXIMUM_SHORT_MESSAGE_LENGTH = 250;
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int MAXIMUM_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final String FIELD_TIME = "Time";
+    private static final String FIELD_SEVERITY = "Severity";
+    private static final String FIELD_THREAD = "Thread";
+    private static final String FIELD_SOURCE_CLASS_NAME = "SourceClassName";
+    private static final String FIELD_SOURCE_METHOD_NAME = "SourceMethodName";
+    private static final String FIELD_SOURCE_LINE_NUMBER = "SourceLineNumber";
+    private static final String FIELD_SOURCE_SIMPLE_CLASS_NAME = "SourceSimpleClassName";
+    private static final String FIELD_LOGGER_NAME = "LoggerName";
+    private static final String FIELD_MARKER = "Marker";
+    private static final String FIELD_STACK_TRACE = "StackTrace";
+
+    private static final Pattern LONG_PATTERN =
+            Pattern.compile("^(0x[0-9a-fA-F]+)|[+\\-]?0|[+\\-]?[1-9][0-9]{0,18}$");
+    private static final Pattern DOUBLE_PATTERN = Pattern.compile("^[+\\-]?(([0-9]*\\.[0-9]+([eE][+-]?[0-9]+)?)"
+            + "|([1-9][0-9]{0,18}([eE][+-]?[0-9]+)?)|(0x[0-9a-fA-F]+\\.[0-9a-fA-F]+[pP][+\\-]?[0-9]+))$");
+
+    private static final byte[] SHORT_MESSAGE = ascii(",\"short_message\":\"");
+    private static final byte[] FULL_MESSAGE = ascii(",\"full_message\":\"");
+    private static final byte[] TIMESTAMP = ascii(",\"timestamp\":");
+    private static final byte[] LEVEL = ascii(",\"level\":");
+    private static final byte[] NAN = ascii("\"NaN\"");
+    private static final byte[] INFINITE = ascii("\"Infinite\"");
+    private static final byte[] NEGATIVE_INFINITE = ascii("\"-Infinite\"");
+
+    enum ValueType {
+        STRING, LONG, DOUBLE
+    }
+
+    private final byte[] header;
+    private final byte[] facility;
+    private final ImmutableMap<String, String> additionalFields;
+    private final ImmutableMap<String, String> additionalFieldTypes;
+    private final String[] mdcFields;
+    private final Pattern[] dynamicMdcFields;
+    private final boolean includeFullMDC;
+    private final boolean includeLocation;
+    private final boolean extractStackTrace;
+    private final boolean filterStackTrace;
+    private final String timestampPattern;
+    private final StackTraceCache stackTraces;
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+    StreamingGelfEncoder(GelfAppenderFactory configuration, String originHost, String facility) {
+        this(configuration, originHost, facility, null);
+    }
+
+    /**
+     * @param configuration the configuration of the appender
+     * @param originHost    the host of the GELF messages
+     * @param facility      the facility of the GELF messages
+     * @param stackTraces   the cache of stack traces, or {@code null}
+     */
+    StreamingGelfEncoder(GelfAppenderFactory configuration, String originHost, String facility,
+                         StackTraceCache stackTraces) {
+        final GelfJsonWriter json = new GelfJsonWriter(INITIAL_BUFFER_SIZE, INITIAL_BUFFER_SIZE);
+        if (!GelfMessage.isEmpty(originHost)) {
+            json.writeBytes(ascii("{\"host\":"));
+            json.writeQuoted(originHost);
+            json.writeBytes(ascii(",\"version\":\"" + GelfMessage.GELF_VERSION_1_1 + "\""));
+            this.header = copy(json);
+        } else {
+            this.header = null;
+        }
+
+        json.reset();
+        if (!GelfMessage.isEmpty(facility)) {
+            json.writeBytes(ascii(",\"facility\":"));
+            json.writeQuoted(facility);
+        }
+        this.facility = copy(json);
+
+        this.additionalFields = configuration.getAdditionalFields();
+        this.additionalFieldTypes = configuration.getAdditionalFieldTypes();
+        this.mdcFields = ImmutableList.copyOf(configuration.effectiveMdcFields()).reverse().toArray(new String[0]);
+        this.dynamicMdcFields = ImmutableList.copyOf(configuration.getDynamicMdcFields()).reverse().stream()
+                .map(Pattern::compile)
+                .toArray(Pattern[]::new);
+        this.includeFullMDC = configuration.isIncludeFullMDC();
+        this.includeLocation = configuration.isIncludeLocation();
+        this.extractStackTrace = configuration.isExtractStackTrace();
+        this.filterStackTrace = configuration.isFilterStackTrace();
+        this.timestampPattern = configuration.getTimestampPattern();
+        this.stackTraces = stackTraces;
+    }
+
+    /**
+     * Encodes the given event as GELF JSON message.
+     *
+     * @param event the logging event
+     * @return a buffer with the JSON message which stays valid until the next call on the same thread, or
+     * {@code null} if the event does not result in a valid GELF message (no message and no throwable).
+     */
+    ByteBuffer encode(ILoggingEvent event) {
+        if (header == null) {
+            return null;
+        }
+
+        final Throwable throwable = getThrowable(event);
+        String message = event.getFormattedMessage();
+        if (GelfMessage.isEmpty(message) && throwable != null) {
+            message = throwable.toString();
+        }
+        if (GelfMessage.isEmpty(message)) {
+            return null;
+        }
+
+        final State state = this.state.get();
+        final GelfJsonWriter json = state.json;
+        json.reset();
+
+        json.writeBytes(header);
+        final int shortMessageEnd = message.length() > MAXIMUM_SHORT_MESSAGE_LENGTH
+                ? MAXIMUM_SHORT_MESSAGE_LENGTH - 1 : message.length();
+        if (!isBlank(message, shortMessageEnd)) {
+            json.writeBytes(SHORT_MESSAGE);
+            json.writeEscaped(message, 0, shortMessageEnd);
+            json.writeByte('"');
+        }
+        json.writeBytes(FULL_MESSAGE);
+        json.writeEscaped(message, 0, message.length());
+        json.writeByte('"');
+        if (event.getTimeStamp() != 0L) {
+            json.writeBytes(TIMESTAMP);
+            json.writeMillisAsSeconds(event.getTimeStamp());
+        }
+        json.writeBytes(LEVEL);
+        json.writeLong(syslogLevel(event.getLevel()));
+        json.writeBytes(facility);
+
+        writeAdditionalFields(state, event, throwable);
+        state.releaseClaims();
+
+        json.writeByte('}');
+        return json.toByteBuffer();
+    }
+
+    private void writeAdditionalFields(State state, ILoggingEvent event, Throwable throwable) {
+        final Marker marker = event.getMarker();
+        if (marker instanceof FieldMarker) {
+            ((FieldMarker) marker).forEachField(state.fieldWriter);
+        }
+
+        final Map<String, String> mdc = event.getMDCPropertyMap();
+
+        if (includeFullMDC) {
+            for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    writeField(state, entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        if (extractStackTrace && throwable != null) {
+            writeStackTrace(state, throwable);
+        }
+
+        for (int i = 0; i < dynamicMdcFields.length && !mdc.isEmpty(); i++) {
+            final Matcher matcher = state.matchers[i];
+            for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                if (entry.getValue() != null && matcher.reset(entry.getKey()).matches()) {
+                    writeField(state, entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        for (String mdcField : mdcFields) {
+            final String value = mdc.get(mdcField);
+            if (value != null) {
+                writeField(state, mdcField, value);
+            }
+        }
+
+        for (Map.Entry<String, String> entry : additionalFields.entrySet()) {
+            if (entry.getValue() != null) {
+                writeField(state, entry.getKey(), entry.getValue());
+            }
+        }
+
+        writeDefaultFields(state, event);
+    }
+
+    private void writeDefaultFields(State state, ILoggingEvent event) {
+        final Marker marker = event.getMarker();
+        if (marker != null) {
+            final String markerName = marker.toString();
+            if (!markerName.isEmpty()) {
+                writeField(state, FIELD_MARKER, markerName);
+            }
+        }
+        if (event.getLoggerName() != null) {
+            writeField(state, FIELD_LOGGER_NAME, event.getLoggerName());
+        }
+
+        if (includeLocation) {
+            final StackTraceElement[] callerData = event.getCallerData();
+            if (callerData != null && callerData.length > 0) {
+                final StackTraceElement caller = callerData[0];
+                if (caller.getClassName() != null) {
+                    writeField(state, FIELD_SOURCE_SIMPLE_CLASS_NAME,
+                            GelfUtil.getSimpleClassName(caller.getClassName()));
+                }
+                writeField(state, FIELD_SOURCE_LINE_NUMBER, caller.getLineNumber());
+                if (caller.getMethodName() != null) {
+                    writeField(state, FIELD_SOURCE_METHOD_NAME, caller.getMethodName());
+                }
+                if (caller.getClassName() != null) {
+                    writeField(state, FIELD_SOURCE_CLASS_NAME, caller.getClassName());
+                }
+            }
+        }
+
+        if (event.getThreadName() != null) {
+            writeField(state, FIELD_THREAD, event.getThreadName());
+        }
+        writeField(state, FIELD_SEVERITY, event.getLevel().toString());
+        writeField(state, FIELD_TIME, state.formatTime(event.getTimeStamp()));
+    }
+
+    private void writeStackTrace(State state, Throwable throwable) {
+        final String type = fieldType(FIELD_STACK_TRACE);
+        if (stackTraces != null) {
+            writeField(state, FIELD_STACK_TRACE, stackTraces.get(throwable));
+        } else if (filterStackTrace || !GelfMessage.FIELD_TYPE_DEFAULT.equalsIgnoreCase(type)
+                && !GelfMessage.FIELD_TYPE_STRING.equalsIgnoreCase(type)) {
+            final String stackTrace = filterStackTrace
+                    ? StackTraceFilter.getFilteredStackTrace(throwable, 0)
+                    : printStackTrace(throwable);
+            writeField(state, FIELD_STACK_TRACE, stackTrace);
+        } else if (state.claim(FIELD_STACK_TRACE)) {
+            // A stack trace starts with the class name of the throwable, so it is never discovered as number
+            writeName(state.json, FIELD_STACK_TRACE);
+            state.json.writeByte('"');
+            throwable.printStackTrace(state.stackTraceWriter);
+            state.stackTraceWriter.flush();
+            state.json.writeByte('"');
+        }
+    }
+
+    private void writeField(State state, String name, int value) {
+        if (!state.claim(name)) {
+            return;
+        }
+        final String type = fieldType(name);
+        final GelfJsonWriter json = state.json;
+        if (GelfMessage.FIELD_TYPE_DEFAULT.equalsIgnoreCase(type)
+                || GelfMessage.FIELD_TYPE_LONG.equals(type)
+                || GelfMessage.FIELD_TYPE_LONG2.equalsIgnoreCase(type)) {
+            writeName(json, name);
+            json.writeLong(value);
+        } else if (GelfMessage.FIELD_TYPE_STRING.equalsIgnoreCase(type)) {
+            writeName(json, name);
+            json.writeByte('"');
+            json.writeLong(value);
+            json.writeByte('"');
+        } else if (GelfMessage.FIELD_TYPE_DOUBLE2.equalsIgnoreCase(type)) {
+            writeName(json, name);
+            writeDouble(json, value);
+        }
+    }
+
+    private void writeField(State state, String name, CharSequence value) {
+        if (!state.claim(name) || GelfMessage.ID_NAME.equals(name)) {
+            return;
+        }
+        final String type = fieldType(name);
+        final GelfJsonWriter json = state.json;
+        if (GelfMessage.FIELD_TYPE_DEFAULT.equalsIgnoreCase(type)) {
+            switch (discover(value)) {
+                case LONG:
+                    final long longValue;
+                    try {
+                        longValue = Long.parseLong(value.toString());
+                    } catch (NumberFormatException e) {
+                        writeString(json, name, value);
+                        return;
+                    }
+                    writeName(json, name);
+                    json.writeLong(longValue);
+                    return;
+                case DOUBLE:
+                    final double doubleValue;
+                    try {
+                        doubleValue = Double.parseDouble(value.toString());
+                    } catch (NumberFormatException e) {
+                        writeString(json, name, value);
+                        return;
+                    }
+                    writeName(json, name);
+                    writeDouble(json, doubleValue);
+                    return;
+                default:
+                    writeString(json, name, value);
+                    return;
+            }
+        }
+
+        if (GelfMessage.FIELD_TYPE_DOUBLE2.equalsIgnoreCase(type)) {
+            try {
+                final double doubleValue = Double.parseDouble(value.toString());
+                writeName(json, name);
+                writeDouble(json, doubleValue);
+            } catch (NumberFormatException e) {
+                if (GelfMessage.FIELD_TYPE_DOUBLE.equals(type)) {
+                    writeName(json, name);
+                    writeDouble(json, 0.0);
+                }
+            }
+        } else if (GelfMessage.FIELD_TYPE_LONG2.equalsIgnoreCase(type)) {
+            try {
+                final long longValue = (long) Double.parseDouble(value.toString());
+                writeName(json, name);
+                json.writeLong(longValue);
+            } catch (NumberFormatException e) {
+                if (GelfMessage.FIELD_TYPE_LONG.equals(type)) {
+                    writeName(json, name);
+                    json.writeLong(0L);
+                }
+            }
+        } else if (GelfMessage.FIELD_TYPE_STRING.equalsIgnoreCase(type)) {
+            writeString(json, name, value);
+        }
+    }
+
+    private String fieldType(String name) {
+        final String type = additionalFieldTypes.get(name);
+        return type == null ? GelfMessage.FIELD_TYPE_DEFAULT : type;
+    }
+
+    private static void writeString(GelfJsonWriter json, String name, CharSequence value) {
+        if (!isBlank(value, value.length())) {
+            writeName(json, name);
+            json.writeQuoted(value);
+        }
+    }
+
+    private static void writeName(GelfJsonWriter json, String name) {
+        json.writeByte(',');
+        json.writeByte('"');
+        json.writeByte('_');
+        json.writeEscaped(name, 0, name.length());
+        json.writeByte('"');
+        json.writeByte(':');
+    }
+
+    private static void writeDouble(GelfJsonWriter json, double value) {
+        if (Double.isNaN(value)) {
+            json.writeBytes(NAN);
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            json.writeBytes(NEGATIVE_INFINITE);
+        } else if (Double.isInfinite(value)) {
+            json.writeBytes(INFINITE);
+        } else {
+            json.writeAscii(Double.toString(value));
+        }
+    }
+
+    /**
+     * Discovers the type of a field value the same way logstash-gelf does for the field type {@code discover}.
+     */
+    static ValueType discover(CharSequence value) {
+        final int length = value.length();
+        if (length == 0 || length > 32) {
+            return ValueType.STRING;
+        }
+
+        final char first = value.charAt(0);
+        if (first < '0' || first > '9') {
+            if (contentEquals(value, "NaN") || contentEquals(value, "Infinity")
+                    || contentEquals(value, "+Infinity") || contentEquals(value, "-Infinity")) {
+                return ValueType.DOUBLE;
+            }
+            if (first != '-' && first != '+') {
+                return ValueType.STRING;
+            }
+        }
+
+        boolean onlyDigits = true;
+        for (int i = 0; i < Math.min(length, 20); i++) {
+            final char c = value.charAt(i);
+            onlyDigits &= c >= '0' && c <= '9';
+            if (!onlyDigits && !isNumberCharacter(c)) {
+                return ValueType.STRING;
+            }
+        }
+
+        if (onlyDigits) {
+            return length == 1 || length <= 19 && first != '0' ? ValueType.LONG : ValueType.STRING;
+        }
+        if (LONG_PATTERN.matcher(value).matches()) {
+            return ValueType.LONG;
+        }
+        if (DOUBLE_PATTERN.matcher(value).matches()) {
+            return ValueType.DOUBLE;
+        }
+        return ValueType.STRING;
+    }
+
+    private static boolean isNumberCharacter(char c) {
+        return c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F'
+                || c == '+' || c == '-' || c == '.' || c == 'x' || c == 'X' || c == 'p' || c == 'P';
+    }
+
+    private static boolean contentEquals(CharSequence value, String expected) {
+        if (value.length() != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (value.charAt(i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBlank(CharSequence value, int end) {
+        for (int i = 0; i < end; i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int syslogLevel(Level level) {
+        final int value = level.toInt();
+        if (value <= Level.DEBUG_INT) {
+            return 7;
+        } else if (value <= Level.INFO_INT) {
+            return 6;
+        } else if (value <= Level.WARN_INT) {
+            return 4;
+        } else if (value <= Level.ERROR_INT) {
+            return 3;
+        }
+        return 7;
+    }
+
+    private static Throwable getThrowable(ILoggingEvent event) {
+        final IThrowableProxy throwableProxy = event.getThrowableProxy();
+        return throwableProxy instanceof ThrowableProxy ? ((ThrowableProxy) throwableProxy).getThrowable() : null;
+    }
+
+    private static String printStackTrace(Throwable throwable) {
+        final StringWriter writer = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] copy(GelfJsonWriter json) {
+        final ByteBuffer buffer = json.toByteBuffer();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Per-thread state of the encoder.
+     */
+    private final class State {
+
+        private final GelfJsonWriter json = new GelfJsonWriter(INITIAL_BUFFER_SIZE, MAXIMUM_RETAINED_BUFFER_SIZE);
+        private final PrintWriter stackTraceWriter = new PrintWriter(json.escapingWriter());
+        private final BiConsumer<String, String> fieldWriter = (name, value) -> writeField(this, name, value);
+        private final Matcher[] matchers;
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat(timestampPattern);
+        private final Date date = new Date();
+        private final StringBuffer formattedTime = new StringBuffer(32);
+        private final FieldPosition fieldPosition = new FieldPosition(0);
+        private long formattedMillis = Long.MIN_VALUE;
+
+        // Names of the fields already written, the first value of a field wins
+        private String[] names = new String[32];
+        private int[] hashes = new int[32];
+        private int claimed;
+
+        private State() {
+            matchers = new Matcher[dynamicMdcFields.length];
+            for (int i = 0; i < matchers.length; i++) {
+                matchers[i] = dynamicMdcFields[i].matcher("");
+            }
+        }
+
+        boolean claim(String name) {
+            final int hash = name.hashCode();
+            for (int i = 0; i < claimed; i++) {
+                if (hashes[i] == hash && names[i].equals(name)) {
+                    return false;
+                }
+            }
+            if (claimed == names.length) {
+                names = Arrays.copyOf(names, claimed * 2);
+                hashes = Arrays.copyOf(hashes, claimed * 2);
+            }
+            names[claimed] = name;
+            hashes[claimed] = hash;
+            claimed++;
+            return true;
+        }
+
+        void releaseClaims() {
+            Arrays.fill(names, 0, claimed, null);
+            claimed = 0;
+        }
+
+        CharSequence formatTime(long millis) {
+            if (millis != formattedMillis) {
+                date.setTime(millis);
+                formattedTime.setLength(0);
+                dateFormat.format(date, formattedTime, fieldPosition);
+                formattedMillis = millis;
+            }
+            return formattedTime;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.gini.dropwizard.gelf.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Appender forwarding every logging event to exactly one of its appenders, the lanes, chosen by the hash of the
+ * partition key of the event.
+ * <p>
+ * Every lane is an independent asynchronous appender with a GELF appender and transport of its own, so events are
+ * encoded and sent by as many threads over as many connections as there are lanes. Events with the same partition key
+ * always take the same lane and keep their order.
+ * </p>
+ */
+class StripingAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    private static final Appender<ILoggingEvent>[] NO_LANES = newLanes(0);
+
+    private final GelfAppenderFactory.PartitionKey partitionKey;
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+
+    private volatile Appender<ILoggingEvent>[] lanes = NO_LANES;
+
+    /**
+     * @param partitionKey the property of events lanes are chosen by
+     */
+    StripingAppender(GelfAppenderFactory.PartitionKey partitionKey) {
+        this.partitionKey = requireNonNull(partitionKey);
+    }
+
+    @Override
+    public void start() {
+        if (lanes.length == 0) {
+            addError("No lanes attached to striping appender [" + getName() + "]");
+            return;
+        }
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        final Appender<ILoggingEvent>[] currentLanes = lanes;
+        final int hash = partitionKey.hash(event);
+        currentLanes[Math.floorMod(hash ^ (hash >>> 16), currentLanes.length)].doAppend(event);
+    }
+
+    /**
+     * Returns the number of lanes.
+     */
+    int getLaneCount() {
+        return lanes.length;
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        appenders.addAppender(newAppender);
+        updateLanes();
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+        updateLanes();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        final boolean detached = appenders.detachAppender(appender);
+        updateLanes();
+        return detached;
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        final boolean detached = appenders.detachAppender(name);
+        updateLanes();
+        return detached;
+    }
+
+    private synchronized void updateLanes() {
+        final List<Appender<ILoggingEvent>> attached = new ArrayList<>();
+        appenders.iteratorForAppenders().forEachRemaining(attached::add);
+        lanes = attached.isEmpty() ? NO_LANES : attached.toArray(newLanes(attached.size()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Appender<ILoggingEvent>[] newLanes(int length) {
+        return (Appender<ILoggingEvent>[]) new Appender<?>[length];
+    }
+}
@@ -0,0 +1,94 @@
+package net.gini.dropwizard.gelf.logging;
+
+import biz.paluch.logging.gelf.intern.GelfMessage;
+import biz.paluch.logging.gelf.intern.GelfSender;
+import biz.paluch.logging.gelf.logback.GelfLogbackAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import net.gini.dropwizard.gelf.transport.GelfTransport;
+import net.gini.dropwizard.gelf.transport.GelfTransports;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link GelfLogbackAppender} sending its messages with a {@link GelfTransport} instead of a logstash-gelf sender, for
+ * transport features logstash-gelf doesn't offer.
+ */
+class TransportGelfLogbackAppender extends EnrichingGelfLogbackAppender {
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private final GelfTransports.Builder transportBuilder;
+    private final GelfMetrics metrics;
+
+    // Guarded by this, appending is synchronized by AppenderBase
+    private long appendStartNanos;
+
+    /**
+     * @param transportBuilder the builder of the transport to send messages with
+     * @param metrics          the metrics to record, or {@code null}
+     * @param stackTraces      the cache of stack traces, or {@code null}
+     */
+    TransportGelfLogbackAppender(GelfTransports.Builder transportBuilder, GelfMetrics metrics,
+                                 StackTraceCache stackTraces) {
+        super(stackTraces);
+        this.transportBuilder = requireNonNull(transportBuilder);
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (metrics != null) {
+            metrics.accepted(event.getLevel());
+            appendStartNanos = System.nanoTime();
+        }
+        super.append(event);
+    }
+
+    @Override
+    protected GelfSender createGelfSender() {
+        if (metrics != null) {
+            transportBuilder.listener(metrics);
+        }
+        return new TransportGelfSender(transportBuilder.errorReporter(this).build());
+    }
+
+    /**
+     * {@link GelfSender} serializing {@link GelfMessage GELF messages} into a reusable buffer and handing them to a
+     * {@link GelfTransport}.
+     */
+    private final class TransportGelfSender implements GelfSender {
+
+        private final GelfTransport transport;
+        private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        private TransportGelfSender(GelfTransport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public boolean sendMessage(GelfMessage message) {
+            while (true) {
+                buffer.clear();
+                try {
+                    message.toJson(buffer, "_");
+                    break;
+                } catch (BufferOverflowException e) {
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                }
+            }
+            buffer.flip();
+            if (metrics != null) {
+                metrics.encoded(System.nanoTime() - appendStartNanos);
+            }
+            return transport.send(buffer);
+        }
+
+        @Override
+        public void close() {
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package net.gini.dropwizard.gelf.transport;
+
+/**
+ * How GELF messages are distributed across several endpoints.
+ */
+public enum Balancing {
+    /**
+     * Hand messages to the available endpoints in turn.
+     */
+    ROUND_ROBIN,
+    /**
+     * Hand every message to the available endpoint with the fewest messages waiting to be sent.
+     */
+    LEAST_OUTSTANDING
+}
@@ -0,0 +1,140 @@
+package net.gini.dropwizard.gelf.transport;
+
+import biz.paluch.logging.gelf.intern.ErrorReporter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link GelfTransport} gathering null byte delimited GELF messages in a batch buffer which is written to a TCP or
+ * Unix domain socket connection once it holds {@code batchBytes} bytes or {@code lingerMillis} passed, whichever comes
+ * first.
+ * <p>
+ * There are two batch buffers: while one of them is written to the connection, messages are appended to the other
+ * one. A message which does not fit into the current batch anymore is written together with the batch in a single
+ * gathering write without being copied.
+ * </p>
+ * <p>
+ * Writing holds {@code writeLock}, which is always acquired before the monitor of the transport guarding the batch
+ * being filled, and never while holding it, so appending to a batch never waits for a write.
+ * </p>
+ */
+final class BatchingTcpGelfTransport implements GelfTransport {
+
+    private final TcpConnection connection;
+    private final TransportListener listener;
+    private final ScheduledExecutorService flusher;
+    private final Object writeLock = new Object();
+
+    // Guarded by this
+    private ByteBuffer filling;
+    private int fillingFrames;
+
+    // Guarded by writeLock
+    private ByteBuffer flushing;
+    private final ByteBuffer delimiter = ByteBuffer.allocate(1);
+    private final ByteBuffer[] frames = new ByteBuffer[3];
+
+    BatchingTcpGelfTransport(final String host, final int port, final int batchBytes, final long lingerMillis,
+                             final ErrorReporter errorReporter, final TransportListener listener) {
+        this(new TcpConnection(host, port, errorReporter, listener), batchBytes, lingerMillis, listener);
+    }
+
+    BatchingTcpGelfTransport(final TcpConnection connection, final int batchBytes, final long lingerMillis,
+                             final TransportListener listener) {
+        this.connection = connection;
+        this.listener = listener;
+        this.filling = ByteBuffer.allocate(batchBytes);
+        this.flushing = ByteBuffer.allocate(batchBytes);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("gelf-tcp-flusher-%d")
+                .setDaemon(true)
+                .build());
+        this.flusher.scheduleWithFixedDelay(this::flush, lingerMillis, lingerMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean send(final ByteBuffer message) {
+        final boolean oversized;
+        synchronized (this) {
+            oversized = message.remaining() >= filling.remaining();
+            if (!oversized) {
+                filling.put(message).put((byte) 0);
+                fillingFrames++;
+                if (filling.hasRemaining()) {
+                    return true;
+                }
+            }
+        }
+        // The batch is full or the message doesn't fit into it, write it without holding the monitor
+        return flush(oversized ? message : null);
+    }
+
+    /**
+     * Writes the current batch to the connection.
+     *
+     * @return {@code true} if the batch has been written, {@code false} otherwise
+     */
+    boolean flush() {
+        return flush(null);
+    }
+
+    private boolean flush(ByteBuffer message) {
+        synchronized (writeLock) {
+            int batchFrames;
+            synchronized (this) {
+                final ByteBuffer batch = filling;
+                filling = flushing;
+                flushing = batch;
+                batchFrames = fillingFrames;
+                fillingFrames = 0;
+            }
+
+            flushing.flip();
+            try {
+                final int length;
+                int bytes = flushing.remaining();
+                frames[0] = flushing;
+                if (message == null) {
+                    if (bytes == 0) {
+                        return true;
+                    }
+                    length = 1;
+                } else {
+                    delimiter.clear();
+                    frames[1] = message;
+                    frames[2] = delimiter;
+                    length = 3;
+                    batchFrames++;
+                    bytes += message.remaining() + 1;
+                }
+
+                if (connection.write(frames, length)) {
+                    listener.framesWritten(batchFrames, bytes);
+                    return true;
+                }
+                return false;
+            } finally {
+                flushing.clear();
+                frames[1] = null;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(TcpConnection.CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (writeLock) {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package net.gini.dropwizard.gelf.transport;
+
+/**
+ * Compression of GELF messages sent as UDP datagrams. GELF messages sent over TCP are never compressed.
+ */
+public enum Compression {
+    /**
+     * Send messages uncompressed.
+     */
+    NONE,
+    /**
+     * Compress messages with GZIP.
+     */
+    GZIP,
+    /**
+     * Compress messages with ZLIB.
+     */
+    ZLIB
+}
@@ -0,0 +1,118 @@
+package net.gini.dropwizard.gelf.transport;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses GELF messages with a reusable {@link Deflater} and output buffer. Instances are meant to be used by a
+ * single thread, but may be closed by another one, which releases the native memory of the deflater.
+ */
+final class Compressor implements AutoCloseable {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int MAXIMUM_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final Compression compression;
+    private final int threshold;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+
+    private byte[] input = new byte[0];
+    private byte[] output = new byte[INITIAL_BUFFER_SIZE];
+    private boolean closed;
+
+    /**
+     * @param compression the compression to apply
+     * @param level       the compression level from 0 to 9, or -1 for the default level
+     * @param threshold   the minimum size of messages in bytes to compress, smaller messages are left as they are
+     */
+    Compressor(Compression compression, int level, int threshold) {
+        this.compression = compression;
+        this.threshold = threshold;
+        this.deflater = compression == Compression.NONE ? null : new Deflater(level, compression == Compression.GZIP);
+    }
+
+    /**
+     * Compresses the remaining content of the given message.
+     *
+     * @param message the message, its position is advanced to its limit if the message is compressed
+     * @return the compressed message, valid until the next call, or the message itself if it isn't compressed,
+     * which includes every message once the compressor has been closed
+     */
+    synchronized ByteBuffer compress(ByteBuffer message) {
+        final int length = message.remaining();
+        if (deflater == null || closed || length < threshold) {
+            return message;
+        }
+
+        final byte[] bytes;
+        final int offset;
+        if (message.hasArray()) {
+            bytes = message.array();
+            offset = message.arrayOffset() + message.position();
+            message.position(message.limit());
+        } else {
+            if (input.length < length) {
+                input = new byte[length];
+            }
+            message.get(input, 0, length);
+            bytes = input;
+            offset = 0;
+        }
+
+        if (output.length > MAXIMUM_RETAINED_BUFFER_SIZE) {
+            output = new byte[INITIAL_BUFFER_SIZE];
+        }
+
+        int size = 0;
+        if (compression == Compression.GZIP) {
+            System.arraycopy(GZIP_HEADER, 0, output, 0, GZIP_HEADER.length);
+            size = GZIP_HEADER.length;
+            crc.reset();
+            crc.update(bytes, offset, length);
+        }
+
+        deflater.reset();
+        deflater.setInput(bytes, offset, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (size == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            size += deflater.deflate(output, size, output.length - size);
+        }
+
+        if (compression == Compression.GZIP) {
+            if (output.length - size < GZIP_TRAILER_SIZE) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            size = writeIntLittleEndian((int) crc.getValue(), size);
+            size = writeIntLittleEndian(length, size);
+        }
+
+        return ByteBuffer.wrap(output, 0, size);
+    }
+
+    /**
+     * Releases the native memory of the deflater.
+     */
+    @Override
+    public synchronized void close() {
+        if (deflater != null && !closed) {
+            deflater.end();
+        }
+        closed = true;
+    }
+
+    private int writeIntLittleEndian(int value, int offset) {
+        output[offset] = (byte) value;
+        output[offset + 1] = (byte) (value >> 8);
+        output[offset + 2] = (byte) (value >> 16);
+        output[offset + 3] = (byte) (value >> 24);
+        return offset + 4;
+    }
+}
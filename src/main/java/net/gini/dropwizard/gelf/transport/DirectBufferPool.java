@@ -0,0 +1,60 @@
+package net.gini.dropwizard.gelf.transport;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of direct {@link ByteBuffer ByteBuffers}.
+ * <p>
+ * Writing a heap buffer to a channel copies it into a temporary direct buffer first, pooled direct buffers can be
+ * written as they are. Buffers larger than the maximum retained capacity and buffers exceeding the pool size are left
+ * to the garbage collector.
+ * </p>
+ */
+final class DirectBufferPool {
+
+    private final int initialCapacity;
+    private final int maximumRetainedCapacity;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    DirectBufferPool(int size, int initialCapacity, int maximumRetainedCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.maximumRetainedCapacity = maximumRetainedCapacity;
+        this.buffers = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * Takes a cleared buffer with at least the given capacity from the pool, or allocates a new one.
+     *
+     * @param capacity the minimum capacity in bytes
+     * @return a cleared direct buffer
+     */
+    ByteBuffer acquire(int capacity) {
+        final ByteBuffer buffer = buffers.poll();
+        if (buffer != null && buffer.capacity() >= capacity) {
+            return buffer;
+        }
+        int newCapacity = Math.max(initialCapacity, buffer == null ? 0 : buffer.capacity());
+        while (newCapacity < capacity && newCapacity > 0) {
+            newCapacity <<= 1;
+        }
+        return ByteBuffer.allocateDirect(newCapacity < capacity ? capacity : newCapacity);
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire(int)} to the pool.
+     *
+     * @param buffer the buffer, must not be used by the caller anymore
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() <= maximumRetainedCapacity) {
+            buffer.clear();
+            buffers.offer(buffer);
+        }
+    }
+
+    int size() {
+        return buffers.size();
+    }
+}
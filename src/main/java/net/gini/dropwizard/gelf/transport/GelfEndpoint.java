@@ -0,0 +1,53 @@
+package net.gini.dropwizard.gelf.transport;
+
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A GELF-compatible server messages can be sent to.
+ */
+public final class GelfEndpoint {
+
+    private final String host;
+    private final int port;
+
+    /**
+     * @param host the host specification, e. g. {@code tcp:graylog.example.com}
+     * @param port the port of the GELF-compatible server
+     */
+    public GelfEndpoint(final String host, final int port) {
+        this.host = requireNonNull(host);
+        this.port = port;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GelfEndpoint)) {
+            return false;
+        }
+        final GelfEndpoint that = (GelfEndpoint) o;
+        return port == that.port && host.equals(that.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, port);
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
@@ -0,0 +1,29 @@
+package net.gini.dropwizard.gelf.transport;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * A transport delivering encoded GELF messages to a GELF-compatible server.
+ * <p>
+ * Implementations take care of the transport specific framing, e. g. chunking for UDP or the null byte delimiter for
+ * TCP, and must be safe for concurrent use.
+ * </p>
+ */
+public interface GelfTransport extends Closeable {
+
+    /**
+     * Sends a single GELF message.
+     *
+     * @param message the uncompressed GELF JSON document between the buffer's position and limit. The buffer is
+     *                only read during the call and must not be retained by the transport.
+     * @return {@code true} if the message has been sent, {@code false} otherwise
+     */
+    boolean send(ByteBuffer message);
+
+    /**
+     * Closes the transport and releases all resources held by it.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,409 @@
+package net.gini.dropwizard.gelf.transport;
+
+import biz.paluch.logging.gelf.intern.ErrorReporter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Factory for the {@link GelfTransport} implementations shipped with Dropwizard GELF.
+ * <p>
+ * The host specification follows the one of logstash-gelf: {@code udp:hostname}, {@code tcp:hostname} or just
+ * {@code hostname} for UDP. Query parameters are not supported. In addition, {@code unix:/path/to/socket} sends
+ * messages over a Unix domain stream socket with the framing of TCP if the Java runtime supports Unix domain sockets
+ * (Java 16 and later), the port is ignored then.
+ * </p>
+ */
+public final class GelfTransports {
+
+    static final String UDP_SCHEME = "udp:";
+    static final String TCP_SCHEME = "tcp:";
+    static final String UNIX_SCHEME = "unix:";
+
+    static final long SPILL_RETRY_MILLIS = 1000L;
+
+    private static final Pattern SCHEME = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.\\-]*:.*");
+
+    private GelfTransports() {
+    }
+
+    /**
+     * Checks whether the given host specification can be served by one of the transports in this package.
+     *
+     * @param host the host specification, e. g. {@code udp:graylog.example.com}
+     * @return {@code true} if {@link #builder(String, int)} can create a transport for the host
+     */
+    public static boolean supports(final String host) {
+        if (host == null || host.isEmpty() || host.indexOf('?') >= 0) {
+            return false;
+        }
+        final String lowerCaseHost = host.toLowerCase(Locale.ENGLISH);
+        if (lowerCaseHost.startsWith(UNIX_SCHEME)) {
+            return host.length() > UNIX_SCHEME.length() && UnixDomainSockets.isSupported();
+        }
+        return lowerCaseHost.startsWith(UDP_SCHEME)
+                || lowerCaseHost.startsWith(TCP_SCHEME)
+                || !SCHEME.matcher(host).matches();
+    }
+
+    /**
+     * Checks whether the given host specification refers to a TCP transport.
+     *
+     * @param host the host specification, e. g. {@code tcp:graylog.example.com}
+     * @return {@code true} if messages to the host are sent over TCP
+     */
+    public static boolean isTcp(final String host) {
+        return host != null && host.toLowerCase(Locale.ENGLISH).startsWith(TCP_SCHEME);
+    }
+
+    /**
+     * Checks whether the given host specification refers to a Unix domain socket.
+     *
+     * @param host the host specification, e. g. {@code unix:/var/run/gelf.sock}
+     * @return {@code true} if messages to the host are sent over a Unix domain socket
+     */
+    public static boolean isUnix(final String host) {
+        return host != null && host.toLowerCase(Locale.ENGLISH).startsWith(UNIX_SCHEME);
+    }
+
+    /**
+     * Checks whether the given host specification refers to a stream transport, i. e. TCP or a Unix domain socket.
+     * Messages to such hosts are delimited by null bytes and can be batched, but are never compressed.
+     *
+     * @param host the host specification, e. g. {@code tcp:graylog.example.com}
+     * @return {@code true} if messages to the host are sent over a stream connection
+     */
+    public static boolean isStream(final String host) {
+        return isTcp(host) || isUnix(host);
+    }
+
+    /**
+     * Returns a builder for a transport to the given host and port.
+     *
+     * @param host the host specification, e. g. {@code udp:graylog.example.com}
+     * @param port the port of the GELF-compatible server
+     * @return builder object for building the transport
+     */
+    public static Builder builder(final String host, final int port) {
+        if (!supports(host)) {
+            throw new IllegalArgumentException("Unsupported GELF host specification: " + host);
+        }
+        return new Builder(host, port);
+    }
+
+    public static final class Builder {
+
+        private final String host;
+        private final int port;
+        private int maximumMessageSize = 8192;
+        private int batchBytes = 0;
+        private long lingerMillis = 10L;
+        private Compression compression = Compression.GZIP;
+        private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        private int compressionThreshold = 0;
+        private ErrorReporter errorReporter = (message, e) -> {
+        };
+        private TransportListener listener = TransportListener.NOOP;
+        private Path spillDirectory;
+        private long spillMaxBytes = 64L * 1024L * 1024L;
+        private int spillSegmentBytes = 4 * 1024 * 1024;
+        private long spillMaxAgeMillis = 3_600_000L;
+        private int spillReplayRate = 1000;
+        private List<GelfEndpoint> endpoints = Collections.emptyList();
+        private Balancing balancing = Balancing.ROUND_ROBIN;
+        private int circuitBreakerFailures = 3;
+        private long circuitBreakerMillis = 10_000L;
+
+        Builder(final String host, final int port) {
+            this.host = requireNonNull(host);
+            this.port = port;
+        }
+
+        /**
+         * Sets the maximum size of a single UDP datagram payload. Larger messages are sent as GELF chunks.
+         *
+         * @param maximumMessageSize the maximum message size in bytes
+         * @return {@link Builder} instance
+         */
+        public Builder maximumMessageSize(final int maximumMessageSize) {
+            this.maximumMessageSize = maximumMessageSize;
+            return this;
+        }
+
+        /**
+         * Sets the compression of UDP datagrams.
+         *
+         * @param compression the compression
+         * @return {@link Builder} instance
+         */
+        public Builder compression(final Compression compression) {
+            this.compression = requireNonNull(compression);
+            return this;
+        }
+
+        /**
+         * Sets the compression level of UDP datagrams.
+         *
+         * @param compressionLevel the compression level from 0 to 9, or -1 for the default level
+         * @return {@link Builder} instance
+         */
+        public Builder compressionLevel(final int compressionLevel) {
+            if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+            }
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        /**
+         * Sets the minimum size of messages sent as UDP datagrams to compress. Smaller messages are sent uncompressed.
+         *
+         * @param compressionThreshold the minimum message size in bytes
+         * @return {@link Builder} instance
+         */
+        public Builder compressionThreshold(final int compressionThreshold) {
+            if (compressionThreshold < 0) {
+                throw new IllegalArgumentException("compressionThreshold must not be negative: "
+                        + compressionThreshold);
+            }
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the size of the buffer in which TCP and Unix domain socket messages are batched before being written to
+         * the connection. A value of {@code 0} disables batching, every message is written on its own.
+         *
+         * @param batchBytes the batch size in bytes
+         * @return {@link Builder} instance
+         */
+        public Builder batchBytes(final int batchBytes) {
+            if (batchBytes < 0) {
+                throw new IllegalArgumentException("batchBytes must not be negative: " + batchBytes);
+            }
+            this.batchBytes = batchBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time batched stream messages are held back before the batch is written to the connection.
+         *
+         * @param lingerMillis the maximum delay in milliseconds
+         * @return {@link Builder} instance
+         */
+        public Builder lingerMillis(final long lingerMillis) {
+            if (lingerMillis <= 0) {
+                throw new IllegalArgumentException("lingerMillis must be positive: " + lingerMillis);
+            }
+            this.lingerMillis = lingerMillis;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ErrorReporter} which is notified about errors while sending messages.
+         *
+         * @param errorReporter the error reporter
+         * @return {@link Builder} instance
+         */
+        public Builder errorReporter(final ErrorReporter errorReporter) {
+            this.errorReporter = requireNonNull(errorReporter);
+            return this;
+        }
+
+        /**
+         * Sets the {@link TransportListener} which is notified about sent messages and errors.
+         *
+         * @param listener the listener
+         * @return {@link Builder} instance
+         */
+        public Builder listener(final TransportListener listener) {
+            this.listener = requireNonNull(listener);
+            return this;
+        }
+
+        /**
+         * Sets the directory of the memory-mapped segment files messages are spilled to while they can't be sent, to
+         * be replayed once sending succeeds again. {@code null} disables spilling.
+         *
+         * @param spillDirectory the directory, created if it doesn't exist
+         * @return {@link Builder} instance
+         */
+        public Builder spillDirectory(final Path spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of all spill segment files. Messages are dropped while the segments are full.
+         *
+         * @param spillMaxBytes the maximum size in bytes
+         * @return {@link Builder} instance
+         */
+        public Builder spillMaxBytes(final long spillMaxBytes) {
+            if (spillMaxBytes <= 0L) {
+                throw new IllegalArgumentException("spillMaxBytes must be positive: " + spillMaxBytes);
+            }
+            this.spillMaxBytes = spillMaxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the size of a single spill segment file, which limits the size of a spilled message as well.
+         *
+         * @param spillSegmentBytes the segment size in bytes
+         * @return {@link Builder} instance
+         */
+        public Builder spillSegmentBytes(final int spillSegmentBytes) {
+            if (spillSegmentBytes <= SpillBuffer.HEADER_BYTES + SpillBuffer.RECORD_HEADER_BYTES) {
+                throw new IllegalArgumentException("spillSegmentBytes is too small: " + spillSegmentBytes);
+            }
+            this.spillSegmentBytes = spillSegmentBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum age of spilled messages. Older messages are discarded instead of being replayed.
+         *
+         * @param spillMaxAgeMillis the maximum age in milliseconds
+         * @return {@link Builder} instance
+         */
+        public Builder spillMaxAgeMillis(final long spillMaxAgeMillis) {
+            if (spillMaxAgeMillis <= 0L) {
+                throw new IllegalArgumentException("spillMaxAgeMillis must be positive: " + spillMaxAgeMillis);
+            }
+            this.spillMaxAgeMillis = spillMaxAgeMillis;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of spilled messages replayed per second.
+         *
+         * @param spillReplayRate the maximum rate
+         * @return {@link Builder} instance
+         */
+        public Builder spillReplayRate(final int spillReplayRate) {
+            if (spillReplayRate <= 0) {
+                throw new IllegalArgumentException("spillReplayRate must be positive: " + spillReplayRate);
+            }
+            this.spillReplayRate = spillReplayRate;
+            return this;
+        }
+
+        /**
+         * Sets the endpoints messages are distributed across instead of the host and port of this builder. Every
+         * endpoint gets a transport of its own with the settings of this builder.
+         *
+         * @param endpoints the endpoints, an empty list sends messages to the host and port of this builder
+         * @return {@link Builder} instance
+         */
+        public Builder endpoints(final List<GelfEndpoint> endpoints) {
+            for (GelfEndpoint endpoint : endpoints) {
+                if (!supports(endpoint.getHost())) {
+                    throw new IllegalArgumentException("Unsupported GELF host specification: " + endpoint.getHost());
+                }
+            }
+            this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+            return this;
+        }
+
+        /**
+         * Sets how messages are distributed across the endpoints.
+         *
+         * @param balancing the balancing
+         * @return {@link Builder} instance
+         */
+        public Builder balancing(final Balancing balancing) {
+            this.balancing = requireNonNull(balancing);
+            return this;
+        }
+
+        /**
+         * Sets the number of consecutive failures after which no messages are sent to an endpoint for
+         * {@link #circuitBreakerMillis(long)}.
+         *
+         * @param circuitBreakerFailures the number of failures
+         * @return {@link Builder} instance
+         */
+        public Builder circuitBreakerFailures(final int circuitBreakerFailures) {
+            if (circuitBreakerFailures <= 0) {
+                throw new IllegalArgumentException("circuitBreakerFailures must be positive: "
+                        + circuitBreakerFailures);
+            }
+            this.circuitBreakerFailures = circuitBreakerFailures;
+            return this;
+        }
+
+        /**
+         * Sets the time no messages are sent to an endpoint after it failed, before it is tried again.
+         *
+         * @param circuitBreakerMillis the time in milliseconds
+         * @return {@link Builder} instance
+         */
+        public Builder circuitBreakerMillis(final long circuitBreakerMillis) {
+            if (circuitBreakerMillis <= 0L) {
+                throw new IllegalArgumentException("circuitBreakerMillis must be positive: " + circuitBreakerMillis);
+            }
+            this.circuitBreakerMillis = circuitBreakerMillis;
+            return this;
+        }
+
+        /**
+         * Builds the transport. If the spill directory can't be used, the error is reported and the transport is built
+         * without spilling.
+         *
+         * @return the transport
+         */
+        public GelfTransport build() {
+            final GelfTransport transport = endpoints.isEmpty()
+                    ? buildTransport(host, port)
+                    : new LoadBalancingGelfTransport(endpoints, e -> buildTransport(e.getHost(), e.getPort()),
+                    balancing, circuitBreakerFailures, circuitBreakerMillis, errorReporter, listener);
+            if (spillDirectory == null) {
+                return transport;
+            }
+            try {
+                final SpillBuffer spillBuffer = new SpillBuffer(spillDirectory, spillMaxBytes, spillSegmentBytes,
+                        spillMaxAgeMillis, System::currentTimeMillis, errorReporter, listener);
+                return new SpillingGelfTransport(transport, spillBuffer, spillReplayRate, SPILL_RETRY_MILLIS,
+                        errorReporter, listener);
+            } catch (IOException | IllegalArgumentException e) {
+                errorReporter.reportError("Could not use GELF spill directory " + spillDirectory + ": "
+                        + e.getMessage(), e);
+                return transport;
+            }
+        }
+
+        private GelfTransport buildTransport(final String host, final int port) {
+            final String lowerCaseHost = host.toLowerCase(Locale.ENGLISH);
+            if (lowerCaseHost.startsWith(UNIX_SCHEME)) {
+                final TcpConnection connection = TcpConnection.unix(host.substring(UNIX_SCHEME.length()),
+                        errorReporter, listener);
+                if (batchBytes > 0) {
+                    return new BatchingTcpGelfTransport(connection, batchBytes, lingerMillis, listener);
+                }
+                return new TcpGelfTransport(connection, listener);
+            } else if (lowerCaseHost.startsWith(TCP_SCHEME)) {
+                final String tcpHost = host.substring(TCP_SCHEME.length());
+                if (batchBytes > 0) {
+                    return new BatchingTcpGelfTransport(tcpHost, port, batchBytes, lingerMillis, errorReporter,
+                            listener);
+                }
+                return new TcpGelfTransport(tcpHost, port, errorReporter, listener);
+            } else if (lowerCaseHost.startsWith(UDP_SCHEME)) {
+                return new UdpGelfTransport(host.substring(UDP_SCHEME.length()), port, maximumMessageSize,
+                        compression, compressionLevel, compressionThreshold, errorReporter, listener);
+            } else {
+                return new UdpGelfTransport(host, port, maximumMessageSize,
+                        compression, compressionLevel, compressionThreshold, errorReporter, listener);
+            }
+        }
+    }
+}
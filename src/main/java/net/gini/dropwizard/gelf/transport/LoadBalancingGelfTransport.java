@@ -0,0 +1,279 @@
+package net.gini.dropwizard.gelf.transport;
+
+import biz.paluch.logging.gelf.intern.ErrorReporter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A {@link GelfTransport} distributing messages across the transports of several endpoints.
+ * <p>
+ * Every endpoint has a bounded queue and a sender thread of its own, so the calling thread only copies the message
+ * into the queue of the endpoint chosen by the {@link Balancing} and never waits for a slow or dead endpoint. An
+ * endpoint whose queue is full is skipped. A message which couldn't be sent is handed to an endpoint which hasn't
+ * tried it yet, and dropped once every endpoint failed to send it.
+ * </p>
+ * <p>
+ * Every endpoint has a circuit breaker: after {@code circuitBreakerFailures} consecutive failures, the endpoint isn't
+ * chosen anymore and its queued messages are handed to other endpoints. Once {@code circuitBreakerMillis} passed, a
+ * single message is queued for the endpoint as a probe, which decides whether the circuit is closed or opened again.
+ * </p>
+ * <p>
+ * The transport of every endpoint is closed by the sender thread of the endpoint once it stopped, so it is never used
+ * after it has been closed.
+ * </p>
+ */
+final class LoadBalancingGelfTransport implements GelfTransport {
+
+    static final int QUEUE_SIZE = 1024;
+
+    private static final long POLL_MILLIS = 100L;
+
+    private final Endpoint[] endpoints;
+    private final Balancing balancing;
+    private final int circuitBreakerFailures;
+    private final long circuitBreakerNanos;
+    private final ErrorReporter errorReporter;
+    private final TransportListener listener;
+    private final ExecutorService senders;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * @param endpoints              the endpoints
+     * @param transports             the factory of the transport of an endpoint
+     * @param balancing              the way messages are distributed
+     * @param circuitBreakerFailures the number of consecutive failures opening the circuit of an endpoint
+     * @param circuitBreakerMillis   the time the circuit of an endpoint stays open
+     * @param errorReporter          the error reporter
+     * @param listener               the listener
+     */
+    LoadBalancingGelfTransport(final List<GelfEndpoint> endpoints,
+                               final Function<GelfEndpoint, GelfTransport> transports, final Balancing balancing,
+                               final int circuitBreakerFailures, final long circuitBreakerMillis,
+                               final ErrorReporter errorReporter, final TransportListener listener) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("endpoints must not be empty");
+        }
+        this.balancing = balancing;
+        this.circuitBreakerFailures = circuitBreakerFailures;
+        this.circuitBreakerNanos = TimeUnit.MILLISECONDS.toNanos(circuitBreakerMillis);
+        this.errorReporter = errorReporter;
+        this.listener = listener;
+        this.endpoints = new Endpoint[endpoints.size()];
+        for (int i = 0; i < this.endpoints.length; i++) {
+            this.endpoints[i] = new Endpoint(i, endpoints.get(i), transports.apply(endpoints.get(i)));
+        }
+        this.senders = Executors.newFixedThreadPool(this.endpoints.length, new ThreadFactoryBuilder()
+                .setNameFormat("gelf-endpoint-sender-%d")
+                .setDaemon(true)
+                .build());
+        for (Endpoint endpoint : this.endpoints) {
+            senders.execute(endpoint::run);
+        }
+    }
+
+    /**
+     * Queues the message for one of the available endpoints.
+     *
+     * @return {@code true} if the message has been queued, {@code false} if no endpoint is available or all queues
+     * are full
+     */
+    @Override
+    public boolean send(final ByteBuffer message) {
+        final byte[] bytes = new byte[message.remaining()];
+        message.get(bytes);
+        return dispatch(new Pending(bytes));
+    }
+
+    private boolean dispatch(final Pending pending) {
+        final int length = endpoints.length;
+        final int start = Math.floorMod(next.getAndIncrement(), length);
+        if (balancing == Balancing.LEAST_OUTSTANDING) {
+            Endpoint least = null;
+            for (int i = 0; i < length; i++) {
+                final Endpoint endpoint = endpoints[(start + i) % length];
+                if (!pending.hasTried(endpoint) && endpoint.isAvailable()
+                        && (least == null || endpoint.outstanding.get() < least.outstanding.get())) {
+                    least = endpoint;
+                }
+            }
+            if (least != null && least.offer(pending)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            final Endpoint endpoint = endpoints[(start + i) % length];
+            if (!pending.hasTried(endpoint) && endpoint.isAvailable() && endpoint.offer(pending)) {
+                return true;
+            }
+        }
+        errorReporter.reportError(pending.tried == null
+                ? "Could not send GELF message, no endpoint is available"
+                : "Could not send GELF message, no other endpoint is available", null);
+        listener.sendFailed();
+        return false;
+    }
+
+    /**
+     * Checks whether the endpoint at the given index can be chosen for messages.
+     */
+    boolean isAvailable(int index) {
+        return endpoints[index].isAvailable();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        senders.shutdown();
+        try {
+            if (!senders.awaitTermination(2L * TcpConnection.CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                // Stop draining the queues, e.g. to a dead endpoint, the sender threads close their transports
+                senders.shutdownNow();
+                senders.awaitTermination(TcpConnection.WRITE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            senders.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A queued message and the endpoints which failed to send it.
+     */
+    private static final class Pending {
+
+        private final byte[] message;
+        // Only accessed by the sender thread currently holding the message
+        private BitSet tried;
+        private boolean probe;
+
+        private Pending(byte[] message) {
+            this.message = message;
+        }
+
+        private boolean hasTried(Endpoint endpoint) {
+            return tried != null && tried.get(endpoint.index);
+        }
+
+        private void failedBy(Endpoint endpoint) {
+            if (tried == null) {
+                tried = new BitSet();
+            }
+            tried.set(endpoint.index);
+        }
+    }
+
+    private final class Endpoint {
+
+        private final int index;
+        private final GelfEndpoint address;
+        private final GelfTransport transport;
+        private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicBoolean probing = new AtomicBoolean();
+
+        private volatile boolean open;
+        private volatile long openUntilNanos;
+        // Accessed by the sender thread only
+        private int failures;
+
+        private Endpoint(int index, GelfEndpoint address, GelfTransport transport) {
+            this.index = index;
+            this.address = address;
+            this.transport = transport;
+        }
+
+        private boolean isAvailable() {
+            return !open || (System.nanoTime() - openUntilNanos >= 0L && !probing.get());
+        }
+
+        private boolean offer(Pending pending) {
+            final boolean probe = open;
+            // Only a single message probes an endpoint whose circuit is open
+            if (probe && !probing.compareAndSet(false, true)) {
+                return false;
+            }
+            pending.probe = probe;
+            outstanding.incrementAndGet();
+            if (queue.offer(pending)) {
+                return true;
+            }
+            outstanding.decrementAndGet();
+            if (probe) {
+                probing.set(false);
+            }
+            return false;
+        }
+
+        private void run() {
+            try {
+                while (!closed || !queue.isEmpty()) {
+                    final Pending pending = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (pending != null) {
+                        try {
+                            send(pending);
+                        } catch (RuntimeException e) {
+                            errorReporter.reportError("Could not send GELF message to " + address + ": "
+                                    + e.getMessage(), e);
+                        } finally {
+                            outstanding.decrementAndGet();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                transport.close();
+            }
+        }
+
+        private void send(Pending pending) {
+            final boolean probe = pending.probe;
+            pending.probe = false;
+            if (open && !probe) {
+                // Queued before the circuit has been opened
+                dispatch(pending);
+                return;
+            }
+            if (transport.send(ByteBuffer.wrap(pending.message))) {
+                failures = 0;
+                if (open) {
+                    open = false;
+                    listener.circuitClosed();
+                }
+                if (probe) {
+                    probing.set(false);
+                }
+                return;
+            }
+            failures++;
+            if (open || failures >= circuitBreakerFailures) {
+                openUntilNanos = System.nanoTime() + circuitBreakerNanos;
+                if (!open) {
+                    open = true;
+                    errorReporter.reportError("Stopped sending GELF messages to " + address + " for "
+                            + TimeUnit.NANOSECONDS.toMillis(circuitBreakerNanos) + " ms after " + failures
+                            + " failures", null);
+                    listener.circuitOpened();
+                }
+            }
+            if (probe) {
+                probing.set(false);
+            }
+            pending.failedBy(this);
+            dispatch(pending);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package net.gini.dropwizard.gelf.transport;
+
+import biz.paluch.logging.gelf.intern.ErrorReporter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * Bounded FIFO of GELF messages in memory-mapped segment files of a directory, holding messages which couldn't be sent
+ * until they are replayed.
+ * <p>
+ * A segment file starts with a header of {@value #HEADER_BYTES} bytes: magic number, version, segment size, a CRC32 of
+ * these fields and the offset of the first record which hasn't been replayed yet. Records consist of their payload
+ * length, a CRC32 of timestamp and payload, the timestamp in milliseconds and the payload. The length is written last,
+ * so a record is only visible once it is complete, and records with a wrong CRC, e.g. torn by a crash of the machine,
+ * end the segment when it is recovered. Segments left behind by a previous process are recovered on construction and
+ * replayed before new messages.
+ * </p>
+ * <p>
+ * Instances are thread-safe, but {@link #peek()} and {@link #commit()} must be called by a single consumer.
+ * </p>
+ */
+final class SpillBuffer implements Closeable {
+
+    static final long MAGIC = 0x47454C465350494CL; // GELFSPIL
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_HEADER_BYTES = 16;
+
+    private static final int HEADER_CRC_OFFSET = 16;
+    private static final int READ_POSITION_OFFSET = 20;
+    private static final String PREFIX = "spill-";
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+    private final long maximumBytes;
+    private final int segmentBytes;
+    private final long maximumAgeMillis;
+    private final LongSupplier clock;
+    private final ErrorReporter errorReporter;
+    private final TransportListener listener;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private long nextSequence;
+    private long pending;
+    private int peekedLength = -1;
+
+    /**
+     * @param directory        the directory of the segment files, created if it doesn't exist
+     * @param maximumBytes     the maximum size of all segment files
+     * @param segmentBytes     the size of a segment file
+     * @param maximumAgeMillis the maximum age of a message in milliseconds, older messages are discarded instead of
+     *                         being replayed
+     * @param clock            the clock returning the current time in milliseconds
+     * @param errorReporter    the error reporter notified about I/O errors
+     * @param listener         the listener notified about messages dropped because of their age
+     * @throws IOException if the directory can't be created or read
+     */
+    SpillBuffer(Path directory, long maximumBytes, int segmentBytes, long maximumAgeMillis, LongSupplier clock,
+                ErrorReporter errorReporter, TransportListener listener) throws IOException {
+        if (segmentBytes <= HEADER_BYTES + RECORD_HEADER_BYTES) {
+            throw new IllegalArgumentException("segmentBytes is too small: " + segmentBytes);
+        }
+        if (maximumBytes < segmentBytes) {
+            throw new IllegalArgumentException("maximumBytes must not be less than segmentBytes: " + maximumBytes);
+        }
+        if (maximumAgeMillis <= 0L) {
+            throw new IllegalArgumentException("maximumAgeMillis must be positive: " + maximumAgeMillis);
+        }
+        this.directory = directory;
+        this.maximumBytes = maximumBytes;
+        this.segmentBytes = segmentBytes;
+        this.maximumAgeMillis = maximumAgeMillis;
+        this.clock = clock;
+        this.errorReporter = errorReporter;
+        this.listener = listener;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    /**
+     * Appends a message.
+     *
+     * @param message the message between the buffer's position and limit, the position is not changed
+     * @return {@code true} if the message has been appended, {@code false} if the buffer is full, the message
+     * doesn't fit into a segment or the segment file couldn't be written
+     */
+    synchronized boolean append(ByteBuffer message) {
+        final int length = message.remaining();
+        if (length == 0 || length > segmentBytes - HEADER_BYTES - RECORD_HEADER_BYTES) {
+            return false;
+        }
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.sealed || segment.writePosition + RECORD_HEADER_BYTES + length > segmentBytes) {
+            if (segment != null) {
+                segment.sealed = true;
+            }
+            if ((long) (segments.size() + 1) * segmentBytes > maximumBytes) {
+                return false;
+            }
+            segment = createSegment();
+            if (segment == null) {
+                return false;
+            }
+        }
+
+        final int position = segment.writePosition;
+        final long timestamp = clock.getAsLong();
+        final ByteBuffer buffer = segment.buffer;
+        try {
+            buffer.putLong(position + 8, timestamp);
+            final ByteBuffer payload = buffer.duplicate();
+            payload.position(position + RECORD_HEADER_BYTES);
+            payload.put(message.duplicate());
+            buffer.putInt(position + 4, checksum(buffer, position, length));
+            // Publish the record
+            buffer.putInt(position, length);
+        } catch (InternalError e) {
+            // Raised instead of SIGBUS if the file system can't back the mapped page after all
+            errorReporter.reportError("Could not write GELF spill segment " + segment.path + ": " + e.getMessage(),
+                    new IOException(e));
+            segment.sealed = true;
+            return false;
+        }
+        segment.writePosition = position + RECORD_HEADER_BYTES + length;
+        pending++;
+        return true;
+    }
+
+    /**
+     * Returns the oldest message which hasn't been replayed yet, discarding messages beyond the maximum age.
+     *
+     * @return a read-only view of the message, valid until {@link #commit()}, or {@code null} if there is none
+     */
+    synchronized ByteBuffer peek() {
+        peekedLength = -1;
+        final long oldest = clock.getAsLong() - maximumAgeMillis;
+        Segment segment;
+        while ((segment = segments.peekFirst()) != null) {
+            if (segment.readPosition < segment.writePosition) {
+                final int position = segment.readPosition;
+                final int length = segment.buffer.getInt(position);
+                if (segment.buffer.getLong(position + 8) < oldest) {
+                    advance(segment, length);
+                    listener.spillDropped();
+                    continue;
+                }
+                final ByteBuffer message = segment.buffer.asReadOnlyBuffer();
+                message.limit(position + RECORD_HEADER_BYTES + length).position(position + RECORD_HEADER_BYTES);
+                peekedLength = length;
+                return message.slice();
+            }
+            if (!segment.sealed) {
+                return null;
+            }
+            segments.removeFirst();
+            delete(segment);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the message returned by the last {@link #peek()}.
+     */
+    synchronized void commit() {
+        if (peekedLength < 0) {
+            throw new IllegalStateException("No message has been peeked");
+        }
+        advance(segments.getFirst(), peekedLength);
+        peekedLength = -1;
+    }
+
+    /**
+     * Returns the number of messages which haven't been replayed yet, including those which are about to expire.
+     */
+    synchronized long pending() {
+        return pending;
+    }
+
+    /**
+     * Returns the number of segment files.
+     */
+    synchronized int segments() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        segments.clear();
+    }
+
+    private void advance(Segment segment, int length) {
+        segment.readPosition += RECORD_HEADER_BYTES + length;
+        segment.buffer.putInt(READ_POSITION_OFFSET, segment.readPosition);
+        pending--;
+    }
+
+    private int checksum(ByteBuffer buffer, int position, int length) {
+        final ByteBuffer record = buffer.duplicate();
+        record.limit(position + RECORD_HEADER_BYTES + length).position(position + 8);
+        crc.reset();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private int headerChecksum(ByteBuffer buffer) {
+        final ByteBuffer header = buffer.duplicate();
+        header.limit(HEADER_CRC_OFFSET).position(0);
+        crc.reset();
+        crc.update(header);
+        return (int) crc.getValue();
+    }
+
+    private Segment createSegment() {
+        final long sequence = nextSequence++;
+        final Path path = directory.resolve(String.format("%s%016x%s", PREFIX, sequence, SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            preallocate(channel);
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            buffer.putLong(0, MAGIC);
+            buffer.putInt(8, VERSION);
+            buffer.putInt(12, segmentBytes);
+            buffer.putInt(HEADER_CRC_OFFSET, headerChecksum(buffer));
+            buffer.putInt(READ_POSITION_OFFSET, HEADER_BYTES);
+            final Segment segment = new Segment(path, buffer, HEADER_BYTES, HEADER_BYTES);
+            segments.addLast(segment);
+            return segment;
+        } catch (IOException e) {
+            errorReporter.reportError("Could not create GELF spill segment " + path + ": " + e.getMessage(), e);
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // The segment isn't used and is skipped by the recovery if it is incomplete
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writes zeros to the whole segment, so the file system allocates its blocks up front. Mapping a sparse file would
+     * defer a full disk to the first write into a page, where it surfaces as SIGBUS instead of an {@link IOException}.
+     */
+    private void preallocate(FileChannel channel) throws IOException {
+        final ByteBuffer zeros = ByteBuffer.allocate(Math.min(segmentBytes, 64 * 1024));
+        long position = 0L;
+        while (position < segmentBytes) {
+            zeros.clear().limit((int) Math.min(zeros.capacity(), segmentBytes - position));
+            position += channel.write(zeros, position);
+        }
+        channel.force(false);
+    }
+
+    private void recover() throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        Collections.sort(paths);
+        for (Path path : paths) {
+            final String name = path.getFileName().toString();
+            try {
+                final long sequence = Long.parseUnsignedLong(
+                        name.substring(PREFIX.length(), name.length() - SUFFIX.length()), 16);
+                nextSequence = Math.max(nextSequence, sequence + 1);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            final Segment segment = recover(path);
+            if (segment == null || segment.readPosition == segment.writePosition) {
+                if (segment != null) {
+                    delete(segment);
+                } else {
+                    Files.deleteIfExists(path);
+                }
+            } else {
+                segments.addLast(segment);
+            }
+        }
+    }
+
+    private Segment recover(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long size = channel.size();
+            if (size < HEADER_BYTES + RECORD_HEADER_BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            final int capacity = (int) size;
+            if (buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION || buffer.getInt(12) != capacity
+                    || buffer.getInt(HEADER_CRC_OFFSET) != headerChecksum(buffer)) {
+                return null;
+            }
+            final int readPosition = buffer.getInt(READ_POSITION_OFFSET);
+            if (readPosition < HEADER_BYTES || readPosition > capacity) {
+                return null;
+            }
+            int position = readPosition;
+            long records = 0L;
+            while (position + RECORD_HEADER_BYTES <= capacity) {
+                final int length = buffer.getInt(position);
+                if (length <= 0 || length > capacity - position - RECORD_HEADER_BYTES
+                        || buffer.getInt(position + 4) != checksum(buffer, position, length)) {
+                    break;
+                }
+                position += RECORD_HEADER_BYTES + length;
+                records++;
+            }
+            pending += records;
+            final Segment segment = new Segment(path, buffer, readPosition, position);
+            // Recovered segments are only replayed, new messages go to new segments
+            segment.sealed = true;
+            return segment;
+        } catch (IOException e) {
+            errorReporter.reportError("Could not recover GELF spill segment " + path + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private void delete(Segment segment) {
+        try {
+            // The mapping is released once the buffer is garbage collected
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            errorReporter.reportError("Could not delete GELF spill segment " + segment.path + ": " + e.getMessage(),
+                    e);
+        }
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int readPosition;
+        private int writePosition;
+        private boolean sealed;
+
+        private Segment(Path path, MappedByteBuffer buffer, int readPosition, int writePosition) {
+            this.path = path;
+            this.buffer = buffer;
+            this.readPosition = readPosition;
+            this.writePosition = writePosition;
+        }
+    }
+}
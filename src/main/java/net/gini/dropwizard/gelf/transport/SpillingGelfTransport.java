@@ -0,0 +1,136 @@
+package net.gini.dropwizard.gelf.transport;
+
+import biz.paluch.logging.gelf.intern.ErrorReporter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link GelfTransport} appending messages to a {@link SpillBuffer} on disk while the wrapped transport fails to
+ * send them, and replaying them at a limited rate once it is healthy again.
+ * <p>
+ * After a message couldn't be sent, further messages are spilled right away instead of waiting for the wrapped
+ * transport, e.g. for a connect timeout. Only the replay thread tries to send the oldest spilled message every
+ * {@code retryMillis} until it succeeds. From then on, new messages are sent with the wrapped transport again while
+ * the spilled ones are replayed in the background, so replayed messages may arrive after newer ones.
+ * </p>
+ */
+final class SpillingGelfTransport implements GelfTransport {
+
+    private static final long MINIMUM_PERIOD_MILLIS = 10L;
+
+    private final GelfTransport transport;
+    private final SpillBuffer spillBuffer;
+    private final long retryNanos;
+    private final int replayBatch;
+    private final ErrorReporter errorReporter;
+    private final TransportListener listener;
+    private final ScheduledExecutorService replayer;
+
+    private volatile boolean healthy = true;
+    private volatile long nextRetryNanos;
+
+    /**
+     * @param transport     the wrapped transport
+     * @param spillBuffer   the buffer of spilled messages, closed together with this transport
+     * @param replayRate    the maximum number of spilled messages replayed per second
+     * @param retryMillis   the time between attempts to replay a message while the wrapped transport fails
+     * @param errorReporter the error reporter
+     * @param listener      the listener notified about spilled and replayed messages and messages dropped because
+     *                      the spill buffer is full
+     */
+    SpillingGelfTransport(final GelfTransport transport, final SpillBuffer spillBuffer, final int replayRate,
+                          final long retryMillis, final ErrorReporter errorReporter,
+                          final TransportListener listener) {
+        if (replayRate <= 0) {
+            throw new IllegalArgumentException("replayRate must be positive: " + replayRate);
+        }
+        this.transport = transport;
+        this.spillBuffer = spillBuffer;
+        this.retryNanos = TimeUnit.MILLISECONDS.toNanos(retryMillis);
+        this.errorReporter = errorReporter;
+        this.listener = listener;
+        final long periodMillis = Math.max(MINIMUM_PERIOD_MILLIS, 1000L / replayRate);
+        this.replayBatch = (int) Math.max(1L, replayRate * periodMillis / 1000L);
+        this.replayer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("gelf-spill-replayer-%d")
+                .setDaemon(true)
+                .build());
+        this.replayer.scheduleWithFixedDelay(this::replay, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the message with the wrapped transport, or spills it if the wrapped transport fails.
+     *
+     * @return {@code true} if the message has been sent or spilled, {@code false} if it has been dropped because the
+     * spill buffer is full
+     */
+    @Override
+    public boolean send(final ByteBuffer message) {
+        final int position = message.position();
+        if (healthy) {
+            if (transport.send(message)) {
+                return true;
+            }
+            nextRetryNanos = System.nanoTime() + retryNanos;
+            healthy = false;
+            message.position(position);
+        }
+        if (spillBuffer.append(message)) {
+            listener.messageSpilled();
+            return true;
+        }
+        errorReporter.reportError("Could not spill GELF message, the spill buffer is full", null);
+        listener.spillDropped();
+        return false;
+    }
+
+    /**
+     * Replays up to one batch of spilled messages.
+     */
+    void replay() {
+        try {
+            if (!healthy && System.nanoTime() - nextRetryNanos < 0L) {
+                return;
+            }
+            for (int i = 0; i < replayBatch; i++) {
+                final ByteBuffer message = spillBuffer.peek();
+                if (message == null) {
+                    // Nothing left to probe the wrapped transport with, the next message is sent by the caller again
+                    healthy = true;
+                    return;
+                }
+                if (!transport.send(message)) {
+                    nextRetryNanos = System.nanoTime() + retryNanos;
+                    healthy = false;
+                    return;
+                }
+                spillBuffer.commit();
+                listener.messageReplayed();
+                healthy = true;
+            }
+        } catch (RuntimeException e) {
+            errorReporter.reportError("Could not replay spilled GELF messages: " + e.getMessage(), e);
+        }
+    }
+
+    boolean isHealthy() {
+        return healthy;
+    }
+
+    @Override
+    public void close() {
+        replayer.shutdown();
+        try {
+            replayer.awaitTermination(TcpConnection.CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        transport.close();
+        // Messages which haven't been replayed yet are recovered by the next transport using the directory
+        spillBuffer.close();
+    }
+}
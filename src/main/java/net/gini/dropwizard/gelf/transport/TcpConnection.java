@@ -0,0 +1,187 @@
+package net.gini.dropwizard.gelf.transport;
+
+import biz.paluch.logging.gelf.intern.ErrorReporter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A lazily established TCP or Unix domain socket stream connection to a GELF-compatible server which is re-established
+ * on the next write after an error. Instances are not thread-safe, callers have to serialize access.
+ * <p>
+ * The channel is non-blocking once connected, and a write which can't be completed within the write timeout, e.g.
+ * because the server stopped reading, fails and closes the connection instead of blocking the caller indefinitely.
+ * </p>
+ */
+final class TcpConnection implements Closeable {
+
+    static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    static final long WRITE_TIMEOUT_MILLIS = 5000L;
+
+    private final String address;
+    private final Connector connector;
+    private final long writeTimeoutMillis;
+    private final ErrorReporter errorReporter;
+    private final TransportListener listener;
+
+    private SocketChannel channel;
+    private Selector selector;
+    private boolean connectedBefore;
+
+    TcpConnection(String host, int port, ErrorReporter errorReporter, TransportListener listener) {
+        this(host, port, WRITE_TIMEOUT_MILLIS, errorReporter, listener);
+    }
+
+    TcpConnection(String host, int port, long writeTimeoutMillis, ErrorReporter errorReporter,
+                  TransportListener listener) {
+        this(host + ":" + port, () -> {
+            final SocketChannel socketChannel = SocketChannel.open();
+            try {
+                socketChannel.socket().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            } catch (IOException e) {
+                socketChannel.close();
+                throw e;
+            }
+            return socketChannel;
+        }, writeTimeoutMillis, errorReporter, listener);
+    }
+
+    private TcpConnection(String address, Connector connector, long writeTimeoutMillis, ErrorReporter errorReporter,
+                          TransportListener listener) {
+        this.address = address;
+        this.connector = connector;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.errorReporter = errorReporter;
+        this.listener = listener;
+    }
+
+    /**
+     * Creates a connection to the Unix domain socket with the given path.
+     *
+     * @throws UnsupportedOperationException if the Java runtime doesn't support Unix domain sockets
+     */
+    static TcpConnection unix(String path, ErrorReporter errorReporter, TransportListener listener) {
+        final SocketAddress socketAddress = UnixDomainSockets.address(path);
+        return new TcpConnection(path, () -> SocketChannel.open(socketAddress), WRITE_TIMEOUT_MILLIS,
+                errorReporter, listener);
+    }
+
+    /**
+     * Writes the remaining content of the given buffers with a gathering write.
+     *
+     * @param buffers the buffers to write
+     * @param length  the number of buffers to write, starting with the first one
+     * @return {@code true} if all buffers have been written, {@code false} if writing failed and the error has been
+     * reported
+     */
+    boolean write(ByteBuffer[] buffers, int length) {
+        // Interruptible channels are closed if the thread is interrupted, e.g. while an async appender drains its
+        // queue on shutdown, so the interrupt status is restored after writing instead.
+        boolean interrupted = Thread.interrupted();
+        for (int i = 0; i < length; i++) {
+            buffers[i].mark();
+        }
+        try {
+            try {
+                interrupted |= writeFully(buffers, length);
+            } catch (ClosedByInterruptException e) {
+                // Interrupted while writing, retry once with a new connection
+                interrupted |= Thread.interrupted();
+                close();
+                for (int i = 0; i < length; i++) {
+                    buffers[i].reset();
+                }
+                interrupted |= writeFully(buffers, length);
+            }
+            return true;
+        } catch (IOException e) {
+            errorReporter.reportError("Could not send GELF message to " + address + ": " + e.getMessage(), e);
+            listener.sendFailed();
+            close();
+            return false;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes the buffers, waiting for the channel to become writable until the write timeout elapsed.
+     *
+     * @return {@code true} if the thread has been interrupted while waiting, with the interrupt status cleared
+     */
+    private boolean writeFully(ByteBuffer[] buffers, int length) throws IOException {
+        final SocketChannel socketChannel = connect();
+        final ByteBuffer last = buffers[length - 1];
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        boolean interrupted = false;
+        socketChannel.write(buffers, 0, length);
+        while (last.hasRemaining()) {
+            final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0L) {
+                throw new IOException("Timed out after " + writeTimeoutMillis + " ms");
+            }
+            selector.select(remainingMillis);
+            selector.selectedKeys().clear();
+            // The selector returns immediately while the interrupt status is set
+            interrupted |= Thread.interrupted();
+            socketChannel.write(buffers, 0, length);
+        }
+        return interrupted;
+    }
+
+    private SocketChannel connect() throws IOException {
+        if (channel == null || !channel.isConnected()) {
+            close();
+            final SocketChannel socketChannel = connector.connect();
+            try {
+                socketChannel.configureBlocking(false);
+                selector = Selector.open();
+                socketChannel.register(selector, SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                socketChannel.close();
+                throw e;
+            }
+            channel = socketChannel;
+            if (connectedBefore) {
+                listener.reconnected();
+            }
+            connectedBefore = true;
+        }
+        return channel;
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore, the channel is discarded anyway
+            }
+            channel = null;
+        }
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Ignore, the selector is discarded anyway
+            }
+            selector = null;
+        }
+    }
+
+    private interface Connector {
+
+        SocketChannel connect() throws IOException;
+    }
+}
@@ -0,0 +1,52 @@
+package net.gini.dropwizard.gelf.transport;
+
+import biz.paluch.logging.gelf.intern.ErrorReporter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link GelfTransport} sending null byte delimited GELF messages over a TCP or Unix domain socket connection, one
+ * write per message.
+ * <p>
+ * The connection is established lazily and re-established after an error on the next message.
+ * </p>
+ */
+final class TcpGelfTransport implements GelfTransport {
+
+    private final TcpConnection connection;
+    private final TransportListener listener;
+    private final ByteBuffer delimiter = ByteBuffer.allocate(1);
+    private final ByteBuffer[] frame = new ByteBuffer[2];
+
+    TcpGelfTransport(final String host, final int port, final ErrorReporter errorReporter,
+                     final TransportListener listener) {
+        this(new TcpConnection(host, port, errorReporter, listener), listener);
+    }
+
+    TcpGelfTransport(final TcpConnection connection, final TransportListener listener) {
+        this.connection = connection;
+        this.listener = listener;
+    }
+
+    @Override
+    public synchronized boolean send(final ByteBuffer message) {
+        final int bytes = message.remaining() + 1;
+        delimiter.clear();
+        frame[0] = message;
+        frame[1] = delimiter;
+        try {
+            if (connection.write(frame, frame.length)) {
+                listener.framesWritten(1, bytes);
+                return true;
+            }
+            return false;
+        } finally {
+            frame[0] = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        connection.close();
+    }
+}
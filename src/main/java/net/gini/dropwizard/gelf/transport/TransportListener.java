@@ -0,0 +1,82 @@
+package net.gini.dropwizard.gelf.transport;
+
+/**
+ * Callback notified by a {@link GelfTransport} about what it sends, e.g. to record metrics. Implementations are called
+ * on the sending threads and must be thread-safe and cheap.
+ */
+public interface TransportListener {
+
+    /**
+     * A listener ignoring all notifications.
+     */
+    TransportListener NOOP = new TransportListener() {
+    };
+
+    /**
+     * Called after a UDP datagram has been sent.
+     *
+     * @param bytes the size of the datagram payload in bytes, including chunk headers
+     */
+    default void datagramSent(int bytes) {
+    }
+
+    /**
+     * Called before a message is sent as GELF chunks.
+     *
+     * @param chunks the number of chunks
+     */
+    default void messageChunked(int chunks) {
+    }
+
+    /**
+     * Called after null byte delimited TCP frames have been written.
+     *
+     * @param frames the number of frames, i. e. messages
+     * @param bytes  the number of bytes written, including delimiters
+     */
+    default void framesWritten(int frames, int bytes) {
+    }
+
+    /**
+     * Called after sending a message failed. Errors are reported to the {@link
+     * biz.paluch.logging.gelf.intern.ErrorReporter} as well.
+     */
+    default void sendFailed() {
+    }
+
+    /**
+     * Called after a connection or channel has been re-established after it had been closed because of an error.
+     */
+    default void reconnected() {
+    }
+
+    /**
+     * Called after a message has been written to the spill buffer because it couldn't be sent.
+     */
+    default void messageSpilled() {
+    }
+
+    /**
+     * Called after a spilled message has been sent.
+     */
+    default void messageReplayed() {
+    }
+
+    /**
+     * Called after a message has been dropped because the spill buffer was full or it expired before being replayed.
+     */
+    default void spillDropped() {
+    }
+
+    /**
+     * Called after the circuit breaker of an endpoint has been opened, i. e. messages aren't sent to it for a while.
+     */
+    default void circuitOpened() {
+    }
+
+    /**
+     * Called after the circuit breaker of an endpoint has been closed again because a message has been sent to it.
+     */
+    default void circuitClosed() {
+    }
+}
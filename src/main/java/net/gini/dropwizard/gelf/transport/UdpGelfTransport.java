@@ -0,0 +1,253 @@
+package net.gini.dropwizard.gelf.transport;
+
+import biz.paluch.logging.gelf.intern.ErrorReporter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@link GelfTransport} sending optionally compressed GELF messages as UDP datagrams. Messages exceeding the maximum
+ * message size are split into GELF chunks.
+ * <p>
+ * The message is compressed by a pooled {@link Compressor} and copied once into a pooled direct buffer. Every chunk
+ * is sent with a gathering write of a separate chunk header buffer and a slice of that payload buffer, so chunking
+ * doesn't copy the payload again. The pools are bounded, so compressors aren't tied to the lifetime of the logging
+ * threads, and the pooled compressors are closed with the transport.
+ * </p>
+ *
+ * @see <a href="https://docs.graylog.org/en/latest/pages/gelf.html#chunking">GELF chunking</a>
+ */
+final class UdpGelfTransport implements GelfTransport {
+
+    static final int MAX_CHUNKS = 128;
+    static final int CHUNK_HEADER_SIZE = 12;
+    private static final byte CHUNK_MAGIC_1 = 0x1e;
+    private static final byte CHUNK_MAGIC_2 = 0x0f;
+    private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+    private static final int MAXIMUM_RETAINED_PAYLOAD_SIZE = 256 * 1024;
+
+    private final String host;
+    private final int port;
+    private final int maximumMessageSize;
+    private final ErrorReporter errorReporter;
+    private final TransportListener listener;
+    private final Compression compression;
+    private final int compressionLevel;
+    private final int compressionThreshold;
+    private final BlockingQueue<Buffers> buffers = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final DirectBufferPool pool;
+
+    private volatile DatagramChannel channel;
+    private volatile boolean closed;
+    // Guarded by this
+    private boolean connectedBefore;
+
+    UdpGelfTransport(final String host, final int port, final int maximumMessageSize,
+                     final Compression compression, final int compressionLevel, final int compressionThreshold,
+                     final ErrorReporter errorReporter, final TransportListener listener) {
+        this.host = host;
+        this.port = port;
+        this.maximumMessageSize = maximumMessageSize;
+        this.errorReporter = errorReporter;
+        this.listener = listener;
+        this.compression = compression;
+        this.compressionLevel = compressionLevel;
+        this.compressionThreshold = compressionThreshold;
+        this.pool = new DirectBufferPool(POOL_SIZE, maximumMessageSize,
+                Math.max(maximumMessageSize, MAXIMUM_RETAINED_PAYLOAD_SIZE));
+    }
+
+    @Override
+    public boolean send(final ByteBuffer message) {
+        final Buffers sendBuffers = acquireBuffers();
+        // Interruptible channels are closed if the thread is interrupted, e.g. while an async appender drains its
+        // queue on shutdown, so the interrupt status is restored after sending instead.
+        sendBuffers.interrupted = Thread.interrupted();
+        sendBuffers.retried = false;
+        try {
+            return write(message, sendBuffers);
+        } catch (IOException e) {
+            errorReporter.reportError("Could not send GELF message to " + host + ":" + port + ": " + e.getMessage(), e);
+            listener.sendFailed();
+            closeChannel();
+            return false;
+        } finally {
+            final boolean interrupted = sendBuffers.interrupted;
+            releaseBuffers(sendBuffers);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean write(final ByteBuffer message, final Buffers sendBuffers) throws IOException {
+        final ByteBuffer compressed = sendBuffers.compressor.compress(message);
+        final int size = compressed.remaining();
+
+        final int chunks = (size + maximumMessageSize - 1) / maximumMessageSize;
+        if (chunks > MAX_CHUNKS) {
+            errorReporter.reportError("GELF message is too large to be sent in " + MAX_CHUNKS + " chunks: "
+                    + size + " bytes", null);
+            listener.sendFailed();
+            return false;
+        }
+
+        final ByteBuffer payload = pool.acquire(size);
+        try {
+            payload.put(compressed).flip();
+            if (size <= maximumMessageSize) {
+                writeDatagram(sendBuffers, null, payload, 0, size);
+                listener.datagramSent(size);
+                return true;
+            }
+
+            listener.messageChunked(chunks);
+            final long messageId = ThreadLocalRandom.current().nextLong();
+            final ByteBuffer header = sendBuffers.header;
+            sendBuffers.chunk[0] = header;
+            sendBuffers.chunk[1] = payload;
+            for (int sequence = 0; sequence < chunks; sequence++) {
+                header.clear();
+                header.put(CHUNK_MAGIC_1).put(CHUNK_MAGIC_2).putLong(messageId)
+                        .put((byte) sequence).put((byte) chunks)
+                        .flip();
+                final int offset = sequence * maximumMessageSize;
+                final int limit = Math.min(offset + maximumMessageSize, size);
+                writeDatagram(sendBuffers, header, payload, offset, limit);
+                listener.datagramSent(CHUNK_HEADER_SIZE + limit - offset);
+            }
+            return true;
+        } finally {
+            sendBuffers.chunk[1] = null;
+            pool.release(payload);
+        }
+    }
+
+    /**
+     * Writes a datagram, retrying it once per message with a new channel if the shared channel has been closed by an
+     * interrupt of this or another thread while writing. Only the failed datagram is written again, so the chunks
+     * sent before aren't duplicated.
+     */
+    private void writeDatagram(final Buffers sendBuffers, final ByteBuffer header, final ByteBuffer payload,
+                               final int offset, final int limit) throws IOException {
+        while (true) {
+            final DatagramChannel datagramChannel = connect();
+            payload.limit(limit).position(offset);
+            try {
+                if (header == null) {
+                    datagramChannel.write(payload);
+                } else {
+                    header.rewind();
+                    datagramChannel.write(sendBuffers.chunk);
+                }
+                return;
+            } catch (ClosedChannelException e) {
+                if (sendBuffers.retried) {
+                    throw e;
+                }
+                sendBuffers.retried = true;
+                sendBuffers.interrupted |= Thread.interrupted();
+                discardClosedChannel();
+            }
+        }
+    }
+
+    private Buffers acquireBuffers() {
+        final Buffers pooled = buffers.poll();
+        return pooled != null ? pooled
+                : new Buffers(new Compressor(compression, compressionLevel, compressionThreshold));
+    }
+
+    private void releaseBuffers(final Buffers released) {
+        if (closed || !buffers.offer(released)) {
+            released.compressor.close();
+        } else if (closed) {
+            // Closed concurrently, the buffers may have been offered after the pool has been drained
+            closeCompressors();
+        }
+    }
+
+    private DatagramChannel connect() throws IOException {
+        DatagramChannel datagramChannel = channel;
+        if (datagramChannel == null) {
+            synchronized (this) {
+                datagramChannel = channel;
+                if (datagramChannel == null) {
+                    datagramChannel = DatagramChannel.open();
+                    try {
+                        datagramChannel.connect(new InetSocketAddress(host, port));
+                    } catch (IOException | RuntimeException e) {
+                        datagramChannel.close();
+                        throw e;
+                    }
+                    channel = datagramChannel;
+                    if (connectedBefore) {
+                        listener.reconnected();
+                    }
+                    connectedBefore = true;
+                }
+            }
+        }
+        return datagramChannel;
+    }
+
+    private synchronized void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore, the channel is discarded anyway
+            }
+            channel = null;
+        }
+    }
+
+    private synchronized void discardClosedChannel() {
+        if (channel != null && !channel.isOpen()) {
+            channel = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeChannel();
+        closeCompressors();
+    }
+
+    private void closeCompressors() {
+        Buffers pooled;
+        while ((pooled = buffers.poll()) != null) {
+            pooled.compressor.close();
+        }
+    }
+
+    /**
+     * Returns the number of pooled compressors which haven't been closed yet.
+     */
+    int getCompressorCount() {
+        return buffers.size();
+    }
+
+    /**
+     * Pooled compressor, buffers for writing chunk headers and retry state of the message being sent.
+     */
+    private static final class Buffers {
+
+        private final Compressor compressor;
+        private final ByteBuffer header = ByteBuffer.allocateDirect(CHUNK_HEADER_SIZE);
+        private final ByteBuffer[] chunk = new ByteBuffer[2];
+        private boolean interrupted;
+        private boolean retried;
+
+        private Buffers(Compressor compressor) {
+            this.compressor = compressor;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.gini.dropwizard.gelf.transport;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.SocketAddress;
+
+/**
+ * Access to the addresses of Unix domain sockets, which are only supported by Java 16 and later. The class is looked
+ * up reflectively, so Dropwizard GELF still runs on older Java versions.
+ */
+final class UnixDomainSockets {
+
+    private static final Method ADDRESS_OF = findAddressOf();
+
+    private UnixDomainSockets() {
+    }
+
+    private static Method findAddressOf() {
+        try {
+            return Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the Java runtime supports Unix domain sockets.
+     */
+    static boolean isSupported() {
+        return ADDRESS_OF != null;
+    }
+
+    /**
+     * Returns the address of the Unix domain socket with the given path.
+     *
+     * @param path the path of the socket file
+     * @return the address, which {@link java.nio.channels.SocketChannel#open(SocketAddress)} connects to
+     * @throws UnsupportedOperationException if the Java runtime doesn't support Unix domain sockets
+     */
+    static SocketAddress address(String path) {
+        if (ADDRESS_OF == null) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later");
+        }
+        try {
+            return (SocketAddress) ADDRESS_OF.invoke(null, path);
+        } catch (InvocationTargetException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package net.gini.dropwizard.gelf.filters;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link CountingPrintWriter}.
+ */
+public class CountingPrintWriterTest {
+
+    private static final String TEXT = "Hello wörld! € 😀 \uD83D lone \uDE00 surrogates";
+
+    @Test
+    public void testCountsEncodedBytes() {
+        for (String charset : new String[]{"UTF-8", "ISO-8859-1", "US-ASCII", "UTF-16LE", "UTF-16", "Shift_JIS"}) {
+            assertCount(Charset.forName(charset));
+        }
+    }
+
+    @Test
+    public void testCountsSurrogatePairsSplitAcrossWrites() {
+        final StringWriter target = new StringWriter();
+        final CountingPrintWriter writer = new CountingPrintWriter(new PrintWriter(target), StandardCharsets.UTF_8);
+
+        for (char c : TEXT.toCharArray()) {
+            writer.write(c);
+        }
+        writer.flush();
+
+        assertThat(target.toString()).isEqualTo(TEXT);
+        assertThat(writer.getCount()).isEqualTo(TEXT.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void testRecordsFirstAndLastByteAndFirstFlush() {
+        final CountingPrintWriter writer =
+                new CountingPrintWriter(new PrintWriter(new StringWriter()), StandardCharsets.UTF_8);
+        assertThat(writer.getFirstByteNanos()).isEqualTo(CountingServletOutputStream.NONE);
+
+        writer.print("");
+        assertThat(writer.getFirstByteNanos()).isEqualTo(CountingServletOutputStream.NONE);
+        writer.print("lorem");
+        final long firstByte = writer.getFirstByteNanos();
+        writer.flush();
+        writer.print("ipsum");
+
+        assertThat(firstByte).isNotEqualTo(CountingServletOutputStream.NONE);
+        assertThat(writer.getFirstFlushNanos() - firstByte).isNotNegative();
+        assertThat(writer.getLastByteNanos() - writer.getFirstFlushNanos()).isNotNegative();
+    }
+
+    private static void assertCount(Charset charset) {
+        final StringWriter target = new StringWriter();
+        final CountingPrintWriter writer = new CountingPrintWriter(new PrintWriter(target), charset);
+
+        writer.print(TEXT);
+        writer.println();
+        writer.write(TEXT.toCharArray(), 1, 5);
+        writer.printf("%d", 42);
+        writer.flush();
+
+        assertThat(writer.getCount())
+                .as(charset.name())
+                .isEqualTo(target.toString().getBytes(charset).length);
+    }
+}
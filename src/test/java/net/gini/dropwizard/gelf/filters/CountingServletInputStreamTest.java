@@ -0,0 +1,100 @@
+package net.gini.dropwizard.gelf.filters;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link CountingServletInputStream} and {@link CountingReader}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CountingServletInputStreamTest {
+
+    private static final String BODY = "lorem ipsum wörld €\nline two\r\n";
+
+    @Mock
+    private ServletInputStream delegate;
+    private final RequestBodyCounter counter = new RequestBodyCounter();
+    private CountingServletInputStream inputStream;
+
+    @Before
+    public void setUp() {
+        inputStream = new CountingServletInputStream(delegate, counter);
+    }
+
+    @Test
+    public void testCountsReadBytes() throws IOException {
+        final ByteArrayInputStream body = new ByteArrayInputStream(BODY.getBytes(StandardCharsets.UTF_8));
+        when(delegate.read()).then(invocation -> body.read());
+        when(delegate.read(any(byte[].class), anyInt(), anyInt())).then(invocation -> body.read(
+                invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+        assertThat(counter.isRead()).isFalse();
+        assertThat(counter.getReadNanos()).isEqualTo(-1L);
+
+        assertThat(inputStream.read()).isEqualTo('l');
+        final byte[] buffer = new byte[8];
+        while (inputStream.read(buffer, 0, buffer.length) >= 0) {
+            // Read everything
+        }
+
+        assertThat(counter.isRead()).isTrue();
+        assertThat(counter.getCount()).isEqualTo(BODY.getBytes(StandardCharsets.UTF_8).length);
+        assertThat(counter.getReadNanos()).isNotNegative();
+        assertThat(counter.getBytesPerSecond()).isPositive();
+    }
+
+    @Test
+    public void testCountsBytesOfReadCharacters() throws IOException {
+        final BufferedReader reader = new BufferedReader(
+                new CountingReader(new StringReader(BODY), StandardCharsets.UTF_8, counter));
+
+        assertThat(reader.readLine()).isEqualTo("lorem ipsum wörld €");
+        assertThat(reader.readLine()).isEqualTo("line two");
+        assertThat(reader.readLine()).isNull();
+
+        assertThat(counter.getCount()).isEqualTo(BODY.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void testThatNonBlockingCallsDelegate() throws IOException {
+        final ReadListener readListener = new ReadListener() {
+
+            @Override
+            public void onDataAvailable() {
+            }
+
+            @Override
+            public void onAllDataRead() {
+            }
+
+            @Override
+            public void onError(final Throwable t) {
+            }
+        };
+        when(delegate.isReady()).thenReturn(true);
+        when(delegate.isFinished()).thenReturn(true);
+
+        inputStream.setReadListener(readListener);
+
+        verify(delegate).setReadListener(readListener);
+        assertThat(inputStream.isReady()).isTrue();
+        assertThat(inputStream.isFinished()).isTrue();
+    }
+}
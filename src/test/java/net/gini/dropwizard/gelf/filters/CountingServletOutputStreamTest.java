@@ -56,6 +56,29 @@ public class CountingServletOutputStreamTest {
         assertThat(outputStream.getCount()).isEqualTo(2 * data.length);
     }
 
+    @Test
+    public void testRecordsFirstAndLastByteAndFirstFlush() throws IOException {
+        assertThat(outputStream.getFirstByteNanos()).isEqualTo(CountingServletOutputStream.NONE);
+        assertThat(outputStream.getLastByteNanos()).isEqualTo(CountingServletOutputStream.NONE);
+        assertThat(outputStream.getFirstFlushNanos()).isEqualTo(CountingServletOutputStream.NONE);
+
+        final long before = System.nanoTime();
+        outputStream.write(new byte[0]);
+        assertThat(outputStream.getFirstByteNanos()).isEqualTo(CountingServletOutputStream.NONE);
+        outputStream.write(42);
+        final long firstByte = outputStream.getFirstByteNanos();
+        outputStream.flush();
+        final long firstFlush = outputStream.getFirstFlushNanos();
+        outputStream.write(new byte[]{1, 2, 3});
+        outputStream.flush();
+
+        assertThat(firstByte - before).isNotNegative();
+        assertThat(outputStream.getFirstByteNanos()).isEqualTo(firstByte);
+        assertThat(firstFlush - firstByte).isNotNegative();
+        assertThat(outputStream.getFirstFlushNanos()).isEqualTo(firstFlush);
+        assertThat(outputStream.getLastByteNanos() - firstFlush).isNotNegative();
+    }
+
     @Test
     public void testIsReadyDelegates() {
         when(outputStream.isReady()).thenReturn(true);
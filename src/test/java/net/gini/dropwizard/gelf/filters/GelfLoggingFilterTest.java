@@ -2,17 +2,24 @@ package net.gini.dropwizard.gelf.filters;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 
 import net.gini.dropwizard.gelf.testing.ExpectedLogEntry;
 
 import org.eclipse.jetty.http.HttpStatus;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.EnumSet;
 import java.util.Map;
@@ -23,26 +30,34 @@ import java.util.concurrent.TimeUnit;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.DispatcherType;
+import javax.servlet.FilterRegistration;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 
+import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
 import io.dropwizard.Application;
 import io.dropwizard.Configuration;
 import io.dropwizard.setup.Environment;
@@ -50,12 +65,26 @@ import io.dropwizard.testing.junit.DropwizardAppRule;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.OUTCOME;
 import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.PROTOCOL;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.REQ_BYTES_READ;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.REQ_COUNT;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.REQ_LENGTH;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.REQ_READ_TIME;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.REQ_ROUTE;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.REQ_THROUGHPUT;
 import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.REQ_URI;
 import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.RESP_CONTENT_TYPE;
 import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.RESP_LENGTH;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.RESP_LENGTH_TOTAL;
 import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.RESP_STATUS;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.RESP_STREAM_TIME;
 import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.RESP_TIME;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.RESP_TIME_MAX;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.RESP_TIME_P50;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.RESP_TIME_P99;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.RESP_TTFB;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.SAMPLE_RATE;
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -67,6 +96,7 @@ public class GelfLoggingFilterTest {
     private static final byte[] HELLO_WORLD_BYTES = HELLO_WORLD.getBytes(Charsets.UTF_8);
     private static final int LARGE_ITERATIONS = 1024;
     private static final long SLEEP_TIME_IN_MS = SECONDS.toMillis(1);
+    private static final long ASYNC_TIMEOUT_IN_MS = 200L;
 
     @ClassRule
     public static DropwizardAppRule<Configuration> APP = new DropwizardAppRule<>(TestApp.class);
@@ -107,6 +137,9 @@ public class GelfLoggingFilterTest {
         assertThat(response.readEntity(String.class)).isEqualTo(HELLO_WORLD);
         final ILoggingEvent logEntry = expectedLogEntry.getEntry();
         verifyResponseTimeLongerThan(logEntry, SLEEP_TIME_IN_MS, TimeUnit.MILLISECONDS);
+        final Map<String, String> mdc = logEntry.getMDCPropertyMap();
+        assertThat(Long.parseLong(mdc.get(RESP_TTFB))).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(SLEEP_TIME_IN_MS));
+        assertThat(Long.parseLong(mdc.get(RESP_STREAM_TIME))).isNotNegative();
     }
 
     @Test
@@ -119,6 +152,34 @@ public class GelfLoggingFilterTest {
         verifyLength(logEntry, LARGE_ITERATIONS * HELLO_WORLD_BYTES.length);
     }
 
+    @Test
+    public void testWriterResponseSize() throws InterruptedException {
+        expectedLogEntry.mdcKeyAndValue(REQ_URI, "/writer");
+        final Response response = target.path("/writer").request().get();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK_200);
+        assertThat(response.readEntity(String.class)).isEqualTo(Strings.repeat(HELLO_WORLD, LARGE_ITERATIONS));
+        final ILoggingEvent logEntry = expectedLogEntry.getEntry();
+        verifyLength(logEntry, LARGE_ITERATIONS * HELLO_WORLD_BYTES.length);
+    }
+
+    @Test
+    public void testRequestBodyIsCounted() throws InterruptedException {
+        expectedLogEntry.mdcKeyAndValue(REQ_URI, "/upload");
+        final byte[] body = Strings.repeat(HELLO_WORLD, LARGE_ITERATIONS).getBytes(StandardCharsets.UTF_8);
+        final Response response = target.path("/upload").request()
+                .property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED)
+                .post(Entity.entity(body, MediaType.APPLICATION_OCTET_STREAM));
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK_200);
+        assertThat(response.readEntity(String.class)).isEqualTo(String.valueOf(body.length));
+        final Map<String, String> mdc = expectedLogEntry.getEntry().getMDCPropertyMap();
+        assertThat(mdc.get(REQ_LENGTH)).isEqualTo("-1");
+        assertThat(mdc.get(REQ_BYTES_READ)).isEqualTo(String.valueOf(body.length));
+        assertThat(Long.parseLong(mdc.get(REQ_READ_TIME))).isNotNegative();
+        assertThat(Long.parseLong(mdc.get(REQ_THROUGHPUT))).isPositive();
+    }
+
     @Test
     public void testAsyncResponse() throws InterruptedException {
         expectedLogEntry.mdcKeyAndValue(REQ_URI, "/async");
@@ -131,10 +192,41 @@ public class GelfLoggingFilterTest {
         assertThat(mdc.get(PROTOCOL)).isEqualTo("HTTP/1.1");
         assertThat(mdc.get(RESP_STATUS)).isEqualTo("200");
         assertThat(mdc.get(RESP_CONTENT_TYPE)).isEqualTo(TEXT_PLAIN);
+        assertThat(mdc.get(OUTCOME)).isEqualTo("completed");
         verifyLength(logEntry, HELLO_WORLD_BYTES.length);
         verifyResponseTimeLongerThan(logEntry, SLEEP_TIME_IN_MS, TimeUnit.MILLISECONDS);
     }
 
+    @Test
+    public void testAsyncTimeoutIsLoggedOnce() throws InterruptedException {
+        final Logger logger = (Logger) LoggerFactory.getLogger(GelfLoggingFilter.class);
+        final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        try {
+            expectedLogEntry.mdcKeyAndValue(REQ_URI, "/async-timeout");
+            final Response response = target.path("/async-timeout").request().get();
+            response.close();
+            assertThat(response.getStatus()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR_500);
+
+            // The container sets the error status only after the listener has been notified about the timeout
+            final ILoggingEvent logEntry = expectedLogEntry.getEntry();
+            assertThat(logEntry.getFormattedMessage()).endsWith(" 500 0 (timeout)");
+            final Map<String, String> mdc = logEntry.getMDCPropertyMap();
+            assertThat(mdc.get(OUTCOME)).isEqualTo("timeout");
+            assertThat(mdc.get(RESP_STATUS)).isEqualTo("500");
+            verifyResponseTimeLongerThan(logEntry, ASYNC_TIMEOUT_IN_MS, TimeUnit.MILLISECONDS);
+
+            // Give the container time to call onComplete after onTimeout
+            Thread.sleep(ASYNC_TIMEOUT_IN_MS);
+            assertThat(appender.list.stream()
+                    .filter(event -> "/async-timeout".equals(event.getMDCPropertyMap().get(REQ_URI))))
+                    .hasSize(1);
+        } finally {
+            logger.detachAppender(appender);
+        }
+    }
+
     @Test
     public void testWriteListenerWorks() throws InterruptedException {
         expectedLogEntry.mdcKeyAndValue(REQ_URI, "/streaming-repeat/10000");
@@ -154,9 +246,70 @@ public class GelfLoggingFilterTest {
         final Map<String, String> mdc = logEntry.getMDCPropertyMap();
         assertThat(mdc.get(PROTOCOL)).isEqualTo("HTTP/1.1");
         assertThat(mdc.get(RESP_STATUS)).isEqualTo("200");
+        assertThat(mdc.get(REQ_ROUTE)).isEqualTo("/streaming-repeat/{count}");
+        assertThat(Long.parseLong(mdc.get(RESP_STREAM_TIME)))
+                .isLessThanOrEqualTo(Long.parseLong(mdc.get(RESP_TIME)) - Long.parseLong(mdc.get(RESP_TTFB)));
         verifyLength(logEntry, value.getBytes(StandardCharsets.UTF_8).length * count);
     }
 
+    @Test
+    public void testStatusClassRateOverridesPathRate() throws InterruptedException {
+        expectedLogEntry.mdcKeyAndValue(REQ_URI, "/unsampled/missing");
+        final Response response = target.path("/unsampled/missing").request().get();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_FOUND_404);
+        final ILoggingEvent logEntry = expectedLogEntry.getEntry();
+        assertThat(logEntry.getMDCPropertyMap()).doesNotContainKey(SAMPLE_RATE);
+    }
+
+    @Test
+    public void testFieldsAreAttachedAsMarker() throws InterruptedException {
+        expectedLogEntry.markerFieldAndValue(REQ_URI, "/marker/hello");
+        final Response response = target.path("/marker/hello").request().get();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK_200);
+        final ILoggingEvent logEntry = expectedLogEntry.getEntry();
+        assertThat(logEntry.getFormattedMessage())
+                .isEqualTo("127.0.0.1 - - \"GET /marker/hello HTTP/1.1\" 200 " + HELLO_WORLD_BYTES.length);
+        assertThat(logEntry.getMDCPropertyMap()).doesNotContainKey(REQ_URI);
+        final Map<String, String> fields = ExpectedLogEntry.markerFields(logEntry);
+        assertThat(fields.get(PROTOCOL)).isEqualTo("HTTP/1.1");
+        assertThat(fields.get(RESP_STATUS)).isEqualTo("200");
+        assertThat(fields.get(RESP_CONTENT_TYPE)).isEqualTo(TEXT_PLAIN);
+        assertThat(fields.get(RESP_LENGTH)).isEqualTo(String.valueOf(HELLO_WORLD_BYTES.length));
+        assertThat(fields.get(RESP_TIME)).isNotEmpty();
+    }
+
+    @Test
+    public void testSummariesAreLogged() throws InterruptedException {
+        // The outer request log filter logs once the summary filter has recorded the request
+        expectedLogEntry.mdcKeyAndValue(REQ_URI, "/summary/hello");
+        assertThat(target.path("/summary/hello").request().get().getStatus()).isEqualTo(HttpStatus.OK_200);
+        expectedLogEntry.getEntry();
+
+        final Logger logger = (Logger) LoggerFactory.getLogger(GelfLoggingFilter.class);
+        final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        try {
+            TestApp.SUMMARY_FILTER.logSummaries();
+        } finally {
+            logger.detachAppender(appender);
+        }
+
+        assertThat(appender.list).hasSize(1);
+        final ILoggingEvent logEntry = appender.list.get(0);
+        assertThat(logEntry.getFormattedMessage()).isEqualTo("1 requests \"GET /summary/hello\" 200 within 60 s");
+        final Map<String, String> mdc = logEntry.getMDCPropertyMap();
+        assertThat(mdc.get(REQ_ROUTE)).isEqualTo("/summary/hello");
+        assertThat(mdc.get(REQ_COUNT)).isEqualTo("1");
+        assertThat(mdc.get(RESP_LENGTH_TOTAL)).isEqualTo(String.valueOf(HELLO_WORLD_BYTES.length));
+        assertThat(Long.parseLong(mdc.get(RESP_TIME_P50)))
+                .isPositive()
+                .isLessThanOrEqualTo(Long.parseLong(mdc.get(RESP_TIME_P99)))
+                .isLessThanOrEqualTo(Long.parseLong(mdc.get(RESP_TIME_MAX)));
+    }
+
     private void verifyLength(final ILoggingEvent event, final int expectedSize) {
         final Map<String, String> mdc = event.getMDCPropertyMap();
         assertThat(mdc.get(RESP_LENGTH)).isEqualTo(String.valueOf(expectedSize));
@@ -172,12 +325,40 @@ public class GelfLoggingFilterTest {
 
     public static class TestApp extends Application<Configuration> {
 
+        private static final GelfLoggingFilter SUMMARY_FILTER = new GelfLoggingFilter();
+
         @Override
         public void run(final Configuration configuration, final Environment environment) throws Exception {
-            environment.servlets()
-                    .addFilter("request-log", new GelfLoggingFilter())
-                    .addMappingForUrlPatterns(EnumSet.allOf(DispatcherType.class), true, "/*");
+            final FilterRegistration.Dynamic filter =
+                    environment.servlets().addFilter("request-log", new GelfLoggingFilter());
+            filter.addMappingForUrlPatterns(EnumSet.allOf(DispatcherType.class), true, "/*");
+            filter.setInitParameters(ImmutableMap.of("pathSampleRates", "/unsampled=0", "statusSampleRates", "4xx=1"));
+            final FilterRegistration.Dynamic markerFilter =
+                    environment.servlets().addFilter("request-log-marker", new GelfLoggingFilter());
+            markerFilter.addMappingForUrlPatterns(EnumSet.allOf(DispatcherType.class), true, "/marker/*");
+            markerFilter.setInitParameter("fieldMode", "marker");
+            final FilterRegistration.Dynamic summaryFilter =
+                    environment.servlets().addFilter("request-log-summary", SUMMARY_FILTER);
+            summaryFilter.addMappingForUrlPatterns(EnumSet.allOf(DispatcherType.class), true, "/summary/*");
+            summaryFilter.setInitParameter("logMode", "summaries");
             environment.jersey().register(TestResource.class);
+            environment.jersey().register(new RouteTemplateFilter());
+            environment.servlets().addServlet("writer", new WriterServlet()).addMapping("/writer");
+        }
+    }
+
+    public static class WriterServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType(TEXT_PLAIN);
+            resp.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            final PrintWriter writer = resp.getWriter();
+            for (int i = 0; i < LARGE_ITERATIONS; ++i) {
+                writer.print(HELLO_WORLD);
+            }
         }
     }
 
@@ -193,6 +374,25 @@ public class GelfLoggingFilterTest {
             return HELLO_WORLD;
         }
 
+        @Path("/marker/hello")
+        @GET
+        public String markerHelloWorld() {
+            return HELLO_WORLD;
+        }
+
+        @Path("/upload")
+        @POST
+        @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+        public String upload(final InputStream body) throws IOException {
+            return String.valueOf(ByteStreams.exhaust(body));
+        }
+
+        @Path("/summary/hello")
+        @GET
+        public String summaryHelloWorld() {
+            return HELLO_WORLD;
+        }
+
         @Path("/async")
         @GET
         public void asyncHelloWorld(@Suspended final AsyncResponse response) {
@@ -206,6 +406,14 @@ public class GelfLoggingFilterTest {
             });
         }
 
+        @Path("/async-timeout")
+        @GET
+        public void asyncTimeout(@Suspended final AsyncResponse response,
+                                 @Context HttpServletRequest servletRequest) {
+            // Never resumed
+            servletRequest.getAsyncContext().setTimeout(ASYNC_TIMEOUT_IN_MS);
+        }
+
         @Path("/slow")
         @GET
         public String slowHelloWorld() throws InterruptedException {
@@ -0,0 +1,48 @@
+package net.gini.dropwizard.gelf.filters;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testThatBucketsCoverTheirValues() {
+        for (long value : new long[]{0L, 1L, 15L, 16L, 17L, 31L, 32L, 1_000L, 123_456_789L, Long.MAX_VALUE}) {
+            final int bucket = LatencyHistogram.bucket(value);
+            assertThat(LatencyHistogram.highestValue(bucket)).isGreaterThanOrEqualTo(value);
+            if (bucket > 0) {
+                assertThat(LatencyHistogram.highestValue(bucket - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    public void testThatPercentilesAreAccurate() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000_000L, 10L);
+        }
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(1000L);
+        assertThat(snapshot.getBytes()).isEqualTo(10_000L);
+        assertThat(snapshot.getMax()).isEqualTo(1_000_000_000L);
+        assertThat((double) snapshot.getValue(0.5d)).isCloseTo(500_000_000d, within(500_000_000d * 0.07d));
+        assertThat((double) snapshot.getValue(0.99d)).isCloseTo(990_000_000d, within(990_000_000d * 0.07d));
+        assertThat(snapshot.getValue(1.0d)).isEqualTo(1_000_000_000L);
+    }
+
+    @Test
+    public void testThatEmptySnapshotIsZero() {
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertThat(snapshot.getCount()).isZero();
+        assertThat(snapshot.getValue(0.5d)).isZero();
+        assertThat(snapshot.getMax()).isZero();
+    }
+}
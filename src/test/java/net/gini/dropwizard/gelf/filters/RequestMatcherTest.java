@@ -0,0 +1,60 @@
+package net.gini.dropwizard.gelf.filters;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link RequestMatcher}.
+ */
+public class RequestMatcherTest {
+
+    @Test
+    public void testThatPathsMatchExactly() {
+        final RequestMatcher matcher = RequestMatcher.of("/healthcheck, /ping");
+
+        assertThat(matcher.matches("GET", "/healthcheck")).isTrue();
+        assertThat(matcher.matches("POST", "/ping/")).isTrue();
+        assertThat(matcher.matches("GET", "/healthcheck/db")).isFalse();
+        assertThat(matcher.matches("GET", "/pingpong")).isFalse();
+        assertThat(matcher.matches("GET", "/")).isFalse();
+    }
+
+    @Test
+    public void testThatMethodsAreMatched() {
+        final RequestMatcher matcher = RequestMatcher.of("get /status, HEAD /**");
+
+        assertThat(matcher.matches("GET", "/status")).isTrue();
+        assertThat(matcher.matches("POST", "/status")).isFalse();
+        assertThat(matcher.matches("HEAD", "/users/42")).isTrue();
+        assertThat(matcher.matches("HEAD", "/")).isTrue();
+    }
+
+    @Test
+    public void testThatWildcardsMatchSegments() {
+        final RequestMatcher matcher = RequestMatcher.of("/static/**, /api/*/health, /api/v1/users");
+
+        assertThat(matcher.matches("GET", "/static")).isTrue();
+        assertThat(matcher.matches("GET", "/static/css/site.css")).isTrue();
+        assertThat(matcher.matches("GET", "/statics")).isFalse();
+        assertThat(matcher.matches("GET", "/api/v1/health")).isTrue();
+        assertThat(matcher.matches("GET", "/api/v2/health")).isTrue();
+        assertThat(matcher.matches("GET", "/api/v1/users")).isTrue();
+        assertThat(matcher.matches("GET", "/api/v1/users/42")).isFalse();
+        assertThat(matcher.matches("GET", "/api/health")).isFalse();
+    }
+
+    @Test
+    public void testThatNoneMatchesNothing() {
+        assertThat(RequestMatcher.NONE.matches("GET", "/")).isFalse();
+        assertThat(RequestMatcher.of("").matches("GET", "/hello")).isFalse();
+    }
+
+    @Test
+    public void testThatInvalidPatternsAreRejected() {
+        assertThatThrownBy(() -> RequestMatcher.of("healthcheck")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RequestMatcher.of("/static/**/css")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RequestMatcher.of("/static/*.css")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,100 @@
+package net.gini.dropwizard.gelf.filters;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link RequestSampler}.
+ */
+public class RequestSamplerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(2);
+
+    @Test
+    public void testThatAllRequestsAreSampledByDefault() {
+        final RequestSampler sampler = RequestSampler.of(Collections.<String, String>emptyMap()::get);
+
+        assertThat(sampler.rate("/hello", 200, FAST)).isEqualTo(1.0d);
+        assertThat(RequestSampler.ALL.rate("/hello", 500, FAST)).isEqualTo(1.0d);
+    }
+
+    @Test
+    public void testThatStatusClassRateTakesPrecedenceOverPathRate() {
+        final RequestSampler sampler = RequestSampler.of(ImmutableMap.of(
+                "sampleRate", "0.5",
+                "statusSampleRates", "5xx=1, 2xx=0.01",
+                "pathSampleRates", "/health=0")::get);
+
+        assertThat(sampler.rate("/health", 503, FAST)).isEqualTo(1.0d);
+        assertThat(sampler.rate("/health", 200, FAST)).isEqualTo(0.01d);
+        assertThat(sampler.rate("/health", 404, FAST)).isEqualTo(0.0d);
+        assertThat(sampler.rate("/hello", 404, FAST)).isEqualTo(0.5d);
+    }
+
+    @Test
+    public void testThatLongestPathPrefixWins() {
+        final RequestSampler sampler = RequestSampler.of(ImmutableMap.of(
+                "pathSampleRates", "/api=0.1,/api/orders=1,/=0.5")::get);
+
+        assertThat(sampler.rate("/api/orders/42", 200, FAST)).isEqualTo(1.0d);
+        assertThat(sampler.rate("/api/users", 200, FAST)).isEqualTo(0.1d);
+        assertThat(sampler.rate("/hello", 200, FAST)).isEqualTo(0.5d);
+    }
+
+    @Test
+    public void testThatOnlySlowAndErrorRequestsAreLoggedIfConfigured() {
+        final RequestSampler sampler = RequestSampler.of(ImmutableMap.of(
+                "slowRequestMillis", "1000",
+                "errorStatuses", "429, 5xx",
+                "pathSampleRates", "/api=0.5")::get);
+
+        assertThat(sampler.rate("/hello", 200, FAST)).isEqualTo(0.0d);
+        assertThat(sampler.rate("/hello", 404, FAST)).isEqualTo(0.0d);
+        assertThat(sampler.rate("/hello", 200, SLOW)).isEqualTo(1.0d);
+        assertThat(sampler.rate("/hello", 429, FAST)).isEqualTo(1.0d);
+        assertThat(sampler.rate("/hello", 503, FAST)).isEqualTo(1.0d);
+        assertThat(sampler.rate("/api/orders", 500, FAST)).isEqualTo(0.5d);
+    }
+
+    @Test
+    public void testThatErrorStatusesAloneDisableLoggingOfSlowRequests() {
+        final RequestSampler sampler = RequestSampler.of(ImmutableMap.of("errorStatuses", "5xx")::get);
+
+        assertThat(sampler.rate("/hello", 200, SLOW)).isEqualTo(0.0d);
+        assertThat(sampler.rate("/hello", 500, FAST)).isEqualTo(1.0d);
+    }
+
+    @Test
+    public void testThatSampleHonorsBoundaryRates() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(RequestSampler.sample(1.0d)).isTrue();
+            assertThat(RequestSampler.sample(0.0d)).isFalse();
+        }
+    }
+
+    @Test
+    public void testThatInvalidConfigurationIsRejected() {
+        assertInvalid("sampleRate", "1.5");
+        assertInvalid("sampleRate", "NaN");
+        assertInvalid("statusSampleRates", "200=1");
+        assertInvalid("statusSampleRates", "6xx=1");
+        assertInvalid("pathSampleRates", "health=0");
+        assertInvalid("pathSampleRates", "/health");
+        assertInvalid("slowRequestMillis", "-1");
+        assertInvalid("slowRequestMillis", "1s");
+        assertInvalid("errorStatuses", "600");
+        assertInvalid("errorStatuses", "5x");
+    }
+
+    private static void assertInvalid(String name, String value) {
+        assertThatThrownBy(() -> RequestSampler.of(ImmutableMap.of(name, value)::get))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
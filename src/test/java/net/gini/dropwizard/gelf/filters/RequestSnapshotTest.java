@@ -0,0 +1,59 @@
+package net.gini.dropwizard.gelf.filters;
+
+import com.google.common.net.HttpHeaders;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link RequestSnapshot}.
+ */
+public class RequestSnapshotTest {
+
+    @Test
+    public void testThatRequestIsReadOnce() {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getRequestURI()).thenReturn("/users/42");
+        when(request.getProtocol()).thenReturn("HTTP/1.1");
+        when(request.getHeader(HttpHeaders.USER_AGENT)).thenReturn("curl");
+        when(request.getHeader(HttpHeaders.X_FORWARDED_FOR)).thenReturn("10.0.0.1");
+        when(request.getAuthType()).thenReturn("BASIC");
+        when(request.getUserPrincipal()).thenReturn(() -> "alice");
+        when(request.getContentLength()).thenReturn(42);
+        when(request.getContentType()).thenReturn("application/json");
+        when(request.getCharacterEncoding()).thenReturn("UTF-8");
+
+        final RequestSnapshot snapshot = RequestSnapshot.of(request, "/users/{id}");
+        // The request may be recycled afterwards
+        when(request.getRequestURI()).thenThrow(IllegalStateException.class);
+
+        assertThat(snapshot.getMethod()).isEqualTo("POST");
+        assertThat(snapshot.getRequestUri()).isEqualTo("/users/42");
+        assertThat(snapshot.getRoute()).isEqualTo("/users/{id}");
+        assertThat(snapshot.getProtocol()).isEqualTo("HTTP/1.1");
+        assertThat(snapshot.getUserAgent()).isEqualTo("curl");
+        assertThat(snapshot.getClientAddress()).isEqualTo("10.0.0.1");
+        assertThat(snapshot.getAuthType()).isEqualTo("BASIC");
+        assertThat(snapshot.getPrincipal()).isEqualTo("alice");
+        assertThat(snapshot.getContentLength()).isEqualTo(42);
+        assertThat(snapshot.getContentType()).isEqualTo("application/json");
+        assertThat(snapshot.getCharacterEncoding()).isEqualTo("UTF-8");
+    }
+
+    @Test
+    public void testThatRemoteAddressIsUsedWithoutForwardedFor() {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getRemoteAddr()).thenReturn("127.0.0.1");
+
+        final RequestSnapshot snapshot = RequestSnapshot.of(request, null);
+
+        assertThat(snapshot.getClientAddress()).isEqualTo("127.0.0.1");
+        assertThat(snapshot.getPrincipal()).isNull();
+        assertThat(snapshot.getRoute()).isNull();
+    }
+}
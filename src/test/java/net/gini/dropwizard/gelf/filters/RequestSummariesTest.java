@@ -0,0 +1,65 @@
+package net.gini.dropwizard.gelf.filters;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.REQ_COUNT;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.REQ_ROUTE;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.REQ_URI;
+import static net.gini.dropwizard.gelf.filters.GelfLoggingFilter.AdditionalKeys.RESP_STATUS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link RequestSummaries}.
+ */
+public class RequestSummariesTest {
+
+    @Test
+    public void testThatRequestsAreSummarizedByRouteAndStatus() {
+        final RequestSummaries summaries = new RequestSummaries(16);
+        summaries.record("GET", "/users/{id}", "/users/1", 200, 1_000L, 10L);
+        summaries.record("GET", "/users/{id}", "/users/2", 200, 2_000L, 10L);
+        summaries.record("GET", "/users/{id}", "/users/3", 500, 3_000L, 0L);
+        summaries.record("POST", null, "/users/1", 200, 4_000L, 0L);
+
+        final List<Map<String, String>> fields = fields(summaries.drain(60L));
+
+        assertThat(fields).hasSize(3);
+        assertThat(fields).anySatisfy(summary -> {
+            assertThat(summary).containsEntry(REQ_ROUTE, "/users/{id}").containsEntry(RESP_STATUS, "200");
+            assertThat(summary).containsEntry(REQ_COUNT, "2").doesNotContainKey(REQ_URI);
+        });
+        assertThat(fields).anySatisfy(summary -> {
+            assertThat(summary).containsEntry(REQ_URI, "/users/1").containsEntry(REQ_COUNT, "1");
+        });
+        assertThat(summaries.drain(60L)).isEmpty();
+    }
+
+    @Test
+    public void testThatRoutesBeyondMaximumAreAggregated() {
+        final RequestSummaries summaries = new RequestSummaries(2);
+        for (int i = 0; i < 10; i++) {
+            summaries.record("GET", null, "/users/" + i, 200, 1_000L, 10L);
+        }
+
+        final List<Map<String, String>> fields = fields(summaries.drain(60L));
+
+        assertThat(fields).hasSize(3);
+        assertThat(fields).anySatisfy(summary -> {
+            assertThat(summary).containsEntry(REQ_URI, RequestSummaries.OTHER_ROUTE);
+            assertThat(summary).containsEntry(REQ_COUNT, "8");
+        });
+    }
+
+    private static List<Map<String, String>> fields(List<RequestSummaryMarker> summaries) {
+        return summaries.stream().map(summary -> {
+            final Map<String, String> fields = new HashMap<>();
+            summary.forEachField(fields::put);
+            return fields;
+        }).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,52 @@
+package net.gini.dropwizard.gelf.filters;
+
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link RouteNormalizer}.
+ */
+public class RouteNormalizerTest {
+
+    @Test
+    public void testThatUrisAreMatchedAgainstTemplatesInOrder() {
+        final RouteNormalizer routes = RouteNormalizer.of(
+                "/users/{id: \\d{1,9}}, /users/{name}, /users/{id}/orders/{orderId}, /files/{path: .+}");
+
+        assertThat(routes.route(request("/users/42"))).isEqualTo("/users/{id: \\d{1,9}}");
+        assertThat(routes.route(request("/users/alice/"))).isEqualTo("/users/{name}");
+        assertThat(routes.route(request("/users/42/orders/7"))).isEqualTo("/users/{id}/orders/{orderId}");
+        assertThat(routes.route(request("/files/a/b.txt"))).isEqualTo("/files/{path: .+}");
+        assertThat(routes.route(request("/health"))).isNull();
+    }
+
+    @Test
+    public void testThatRouteAttributeTakesPrecedence() {
+        final HttpServletRequest request = request("/users/42");
+        when(request.getAttribute(RouteNormalizer.ROUTE_ATTRIBUTE)).thenReturn("/users/{userId}");
+
+        assertThat(RouteNormalizer.of("/users/{id}").route(request)).isEqualTo("/users/{userId}");
+        assertThat(RouteNormalizer.ATTRIBUTE_ONLY.route(request)).isEqualTo("/users/{userId}");
+        assertThat(RouteNormalizer.ATTRIBUTE_ONLY.route(request("/users/42"))).isNull();
+    }
+
+    @Test
+    public void testThatInvalidTemplatesAreRejected() {
+        assertThatThrownBy(() -> RouteNormalizer.of("users/{id}")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RouteNormalizer.of("/users/{id")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RouteNormalizer.of("/users/{id: (}"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static HttpServletRequest request(String uri) {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getRequestURI()).thenReturn(uri);
+        return request;
+    }
+}
@@ -0,0 +1,96 @@
+package net.gini.dropwizard.gelf.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EncodingPipelineTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger(EncodingPipelineTest.class);
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final Set<String> senderThreads = ConcurrentHashMap.newKeySet();
+    private final Set<String> encoderThreads = ConcurrentHashMap.newKeySet();
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void sendsMessagesInSubmissionOrderFromOneThread() throws InterruptedException {
+        // Every encoding thread reuses its buffer, like StreamingGelfEncoder
+        final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(64));
+        final Function<ILoggingEvent, ByteBuffer> encoder = event -> {
+            encoderThreads.add(Thread.currentThread().getName());
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(100_000L));
+            final ByteBuffer buffer = buffers.get();
+            buffer.clear();
+            buffer.put(event.getMessage().getBytes(StandardCharsets.UTF_8)).flip();
+            return buffer;
+        };
+
+        try (EncodingPipeline pipeline = open(4, encoder)) {
+            for (int i = 0; i < 500; i++) {
+                pipeline.submit(event("message " + i));
+            }
+        }
+
+        assertThat(sent).containsExactlyElementsOf(IntStream.range(0, 500)
+                .mapToObj(i -> "message " + i)
+                .collect(Collectors.toList()));
+        assertThat(senderThreads).containsExactly("gelf-sender");
+        assertThat(encoderThreads).allMatch(name -> name.startsWith("gelf-encoder-"));
+        assertThat(errors).isEmpty();
+    }
+
+    @Test
+    public void skipsEventsWhichCannotBeEncoded() throws InterruptedException {
+        final Function<ILoggingEvent, ByteBuffer> encoder = event -> {
+            if (event.getMessage().equals("fail")) {
+                throw new IllegalStateException("broken");
+            }
+            if (event.getMessage().equals("skip")) {
+                return null;
+            }
+            return ByteBuffer.wrap(event.getMessage().getBytes(StandardCharsets.UTF_8));
+        };
+
+        try (EncodingPipeline pipeline = open(2, encoder)) {
+            pipeline.submit(event("first"));
+            pipeline.submit(event("fail"));
+            pipeline.submit(event("skip"));
+            pipeline.submit(event("second"));
+        }
+
+        assertThat(sent).containsExactly("first", "second");
+        assertThat(errors).hasSize(1);
+        assertThat(errors.get(0)).startsWith("Could not encode GELF message").contains("broken");
+    }
+
+    private EncodingPipeline open(int threads, Function<ILoggingEvent, ByteBuffer> encoder) {
+        return new EncodingPipeline(threads, encoder, message -> {
+            senderThreads.add(Thread.currentThread().getName());
+            final byte[] bytes = new byte[message.remaining()];
+            message.get(bytes);
+            sent.add(new String(bytes, StandardCharsets.UTF_8));
+        }, (message, e) -> errors.add(message));
+    }
+
+    private ILoggingEvent event(String message) {
+        return new LoggingEvent(Logger.FQCN, logger, Level.INFO, message, null, null);
+    }
+}
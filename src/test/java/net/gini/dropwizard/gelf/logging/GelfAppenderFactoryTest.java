@@ -1,21 +1,40 @@
 package net.gini.dropwizard.gelf.logging;
 
 import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.helpers.NOPAppender;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
 import io.dropwizard.configuration.ConfigurationException;
 import io.dropwizard.logging.async.AsyncLoggingEventAppenderFactory;
 import io.dropwizard.logging.filter.ThresholdLevelFilterFactory;
+import net.gini.dropwizard.gelf.transport.Compression;
+import net.gini.dropwizard.gelf.transport.GelfTransports;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
 
 public class GelfAppenderFactoryTest {
 
@@ -36,6 +55,14 @@ public class GelfAppenderFactoryTest {
         assertThat("default maximum message size is 8192", factory.getMaximumMessageSize(), is(8192));
         assertThat("default timestamp pattern is \"yyyy-MM-dd HH:mm:ss,SSSS\"", factory.getTimestampPattern(), is("yyyy-MM-dd HH:mm:ss,SSSS"));
         assertThat("default threshold is ALL", factory.getThreshold(), is("ALL"));
+        assertThat("default encoder is GELF_MESSAGE", factory.getEncoder(), is(GelfAppenderFactory.Encoder.GELF_MESSAGE));
+        assertThat("default batch size is 0", factory.getBatchBytes(), is(0));
+        assertThat("default linger is 10ms", factory.getLingerMillis(), is(10L));
+        assertThat("default compression is GZIP", factory.getCompression(), is(Compression.GZIP));
+        assertThat("default compression level is -1", factory.getCompressionLevel(), is(-1));
+        assertThat("default compression threshold is 0", factory.getCompressionThreshold(), is(0));
+        assertThat("default async queue is BLOCKING_QUEUE", factory.getAsyncQueue(), is(GelfAppenderFactory.AsyncQueue.BLOCKING_QUEUE));
+        assertThat("default overflow policy is BLOCK", factory.getOverflowPolicy(), is(GelfAppenderFactory.OverflowPolicy.BLOCK));
     }
 
     @Test
@@ -56,4 +83,326 @@ public class GelfAppenderFactoryTest {
 
         assertThat(appender, instanceOf(NOPAppender.class));
     }
+
+    @Test
+    public void buildStreamingGelfAppenderSendsMessages() throws IOException {
+        try (DatagramSocket server = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(5000);
+            final GelfAppenderFactory gelf = new GelfAppenderFactory();
+            gelf.setEncoder(GelfAppenderFactory.Encoder.STREAMING);
+            gelf.setHost("udp:127.0.0.1");
+            gelf.setPort(server.getLocalPort());
+            gelf.setOriginHost(Optional.of("origin.example.com"));
+
+            final LoggerContext context = new LoggerContext();
+            final Appender<ILoggingEvent> appender = gelf.build(context, APPLICATION_NAME, null, new ThresholdLevelFilterFactory(), new AsyncLoggingEventAppenderFactory());
+            final Logger logger = context.getLogger("streaming");
+            logger.addAppender(appender);
+            logger.info("Hello {}", "GELF");
+            appender.stop();
+
+            final DatagramPacket packet = new DatagramPacket(new byte[8192], 8192);
+            server.receive(packet);
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(packet.getData(), 0, packet.getLength()))) {
+                final JsonNode message = new ObjectMapper().readTree(in);
+                assertThat(message.get("host").asText(), is("origin.example.com"));
+                assertThat(message.get("facility").asText(), is(APPLICATION_NAME));
+                assertThat(message.get("short_message").asText(), is("Hello GELF"));
+                assertThat(message.get("_LoggerName").asText(), is("streaming"));
+            }
+        }
+    }
+
+    @Test
+    public void streamingEncoderRequiresSupportedHost() {
+        final GelfAppenderFactory gelf = new GelfAppenderFactory();
+        gelf.setHost("redis://localhost");
+        assertThat(gelf.isStreamingHostSupported(), is(true));
+
+        gelf.setEncoder(GelfAppenderFactory.Encoder.STREAMING);
+        assertThat(gelf.isStreamingHostSupported(), is(false));
+    }
+
+    @Test
+    public void buildBatchingGelfAppenderSendsMessages() throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(5000);
+            final GelfAppenderFactory gelf = new GelfAppenderFactory();
+            gelf.setHost("tcp:127.0.0.1");
+            gelf.setPort(server.getLocalPort());
+            gelf.setBatchBytes(4096);
+            gelf.setLingerMillis(20);
+
+            final LoggerContext context = new LoggerContext();
+            final Appender<ILoggingEvent> appender = gelf.build(context, APPLICATION_NAME, null, new ThresholdLevelFilterFactory(), new AsyncLoggingEventAppenderFactory());
+            assertThat(((AsyncAppender) appender).getAppender("dropwizard-gelf"), instanceOf(TransportGelfLogbackAppender.class));
+            final Logger logger = context.getLogger("batching");
+            logger.addAppender(appender);
+            logger.info("Hello {}", "GELF");
+
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(5000);
+                final ByteArrayOutputStream json = new ByteArrayOutputStream();
+                final InputStream in = socket.getInputStream();
+                int b;
+                while ((b = in.read()) > 0) {
+                    json.write(b);
+                }
+                final JsonNode message = new ObjectMapper().readTree(json.toByteArray());
+                assertThat(message.get("facility").asText(), is(APPLICATION_NAME));
+                assertThat(message.get("short_message").asText(), is("Hello GELF"));
+            } finally {
+                appender.stop();
+            }
+        }
+    }
+
+    @Test
+    public void buildGelfAppenderWithSenderThreadsSendsMessagesOverLanes() throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(5000);
+            final GelfAppenderFactory gelf = new GelfAppenderFactory();
+            gelf.setHost("tcp:127.0.0.1");
+            gelf.setPort(server.getLocalPort());
+            gelf.setEncoder(GelfAppenderFactory.Encoder.STREAMING);
+            gelf.setSenderThreads(3);
+            gelf.setEncodingThreads(2);
+
+            final LoggerContext context = new LoggerContext();
+            final Appender<ILoggingEvent> appender = gelf.build(context, APPLICATION_NAME, null, new ThresholdLevelFilterFactory(), new AsyncLoggingEventAppenderFactory());
+            try {
+                assertThat(appender, instanceOf(StripingAppender.class));
+                final StripingAppender stripingAppender = (StripingAppender) appender;
+                assertThat(stripingAppender.getLaneCount(), is(3));
+                for (int lane = 0; lane < 3; lane++) {
+                    final Appender<ILoggingEvent> async = stripingAppender.getAppender("async-dropwizard-gelf-" + lane);
+                    assertThat(((AsyncAppender) async).getAppender("dropwizard-gelf-" + lane), instanceOf(StreamingGelfAppender.class));
+                }
+
+                final Logger logger = context.getLogger("lanes");
+                logger.addAppender(appender);
+                logger.info("Hello {}", "lanes");
+
+                try (Socket socket = server.accept()) {
+                    socket.setSoTimeout(5000);
+                    final ByteArrayOutputStream json = new ByteArrayOutputStream();
+                    final InputStream in = socket.getInputStream();
+                    int b;
+                    while ((b = in.read()) > 0) {
+                        json.write(b);
+                    }
+                    final JsonNode message = new ObjectMapper().readTree(json.toByteArray());
+                    assertThat(message.get("short_message").asText(), is("Hello lanes"));
+                }
+            } finally {
+                appender.stop();
+            }
+        }
+    }
+
+    @Test
+    public void encodingThreadsRequireStreamingEncoder() {
+        final GelfAppenderFactory gelf = new GelfAppenderFactory();
+        assertThat(gelf.isEncodingThreadsEncoderSupported(), is(true));
+
+        gelf.setEncodingThreads(4);
+        assertThat(gelf.isEncodingThreadsEncoderSupported(), is(false));
+
+        gelf.setEncoder(GelfAppenderFactory.Encoder.STREAMING);
+        assertThat(gelf.isEncodingThreadsEncoderSupported(), is(true));
+    }
+
+    @Test
+    public void batchingRequiresTcpHost() {
+        final GelfAppenderFactory gelf = new GelfAppenderFactory();
+        gelf.setHost("udp:localhost");
+        assertThat(gelf.isBatchingHostSupported(), is(true));
+
+        gelf.setBatchBytes(4096);
+        assertThat(gelf.isBatchingHostSupported(), is(false));
+
+        gelf.setHost("tcp:localhost");
+        assertThat(gelf.isBatchingHostSupported(), is(true));
+    }
+
+    @Test
+    public void unixHostsAreValidatedAsStreamHosts() {
+        final GelfAppenderFactory gelf = new GelfAppenderFactory();
+        gelf.setHost("unix:/var/run/gelf.sock");
+        assumeTrue(GelfTransports.supports(gelf.getHost()));
+        assertThat(gelf.isUnixHostSupported(), is(true));
+
+        gelf.setBatchBytes(4096);
+        assertThat(gelf.isBatchingHostSupported(), is(true));
+
+        gelf.setCompressionThreshold(1024);
+        assertThat(gelf.isCompressionHostSupported(), is(false));
+
+        gelf.setHost("unix:");
+        assertThat(gelf.isUnixHostSupported(), is(false));
+    }
+
+    @Test
+    public void overflowLevelMustBeLevelName() {
+        final GelfAppenderFactory gelf = new GelfAppenderFactory();
+        assertThat(gelf.isOverflowLevelValid(), is(true));
+
+        gelf.setOverflowLevel("error");
+        assertThat(gelf.isOverflowLevelValid(), is(true));
+
+        gelf.setOverflowLevel("EROR");
+        assertThat(gelf.isOverflowLevelValid(), is(false));
+    }
+
+    @Test
+    public void compressionRequiresUdpHost() {
+        final GelfAppenderFactory gelf = new GelfAppenderFactory();
+        gelf.setHost("tcp:localhost");
+        assertThat(gelf.isCompressionHostSupported(), is(true));
+
+        gelf.setCompressionThreshold(1024);
+        assertThat(gelf.isCompressionHostSupported(), is(false));
+
+        gelf.setHost("localhost");
+        assertThat(gelf.isCompressionHostSupported(), is(true));
+    }
+
+    @Test
+    public void endpointsAreValidatedInsteadOfHost() {
+        final GelfAppenderFactory gelf = new GelfAppenderFactory();
+        final GelfAppenderFactory.Endpoint first = new GelfAppenderFactory.Endpoint();
+        first.setHost("tcp:graylog-1");
+        final GelfAppenderFactory.Endpoint second = new GelfAppenderFactory.Endpoint();
+        second.setHost("tcp:graylog-2");
+        gelf.setEndpoints(ImmutableList.of(first, second));
+        gelf.setBatchBytes(4096);
+        assertThat(gelf.isEndpointsHostSupported(), is(true));
+        assertThat(gelf.isBatchingHostSupported(), is(true));
+
+        second.setHost("udp:graylog-2");
+        assertThat(gelf.isBatchingHostSupported(), is(false));
+
+        second.setHost("http://graylog-2/gelf");
+        assertThat(gelf.isEndpointsHostSupported(), is(false));
+    }
+
+    @Test
+    public void buildGelfAppenderUsesTransportForCompression() {
+        final GelfAppenderFactory gelf = new GelfAppenderFactory();
+        gelf.setCompression(Compression.NONE);
+
+        final Appender<ILoggingEvent> appender = gelf.build(new LoggerContext(), APPLICATION_NAME, null, new ThresholdLevelFilterFactory(), new AsyncLoggingEventAppenderFactory());
+        try {
+            assertThat(((AsyncAppender) appender).getAppender("dropwizard-gelf"), instanceOf(TransportGelfLogbackAppender.class));
+        } finally {
+            appender.stop();
+        }
+    }
+
+    @Test
+    public void buildGelfAppenderWithRingBuffer() {
+        final GelfAppenderFactory gelf = new GelfAppenderFactory();
+        gelf.setAsyncQueue(GelfAppenderFactory.AsyncQueue.RING_BUFFER);
+
+        final Appender<ILoggingEvent> appender = gelf.build(new LoggerContext(), APPLICATION_NAME, null, new ThresholdLevelFilterFactory(), new AsyncLoggingEventAppenderFactory());
+        try {
+            assertThat(appender, instanceOf(RingBufferAsyncAppender.class));
+            assertThat(appender.getName(), is("async-dropwizard-gelf"));
+            assertThat(((RingBufferAsyncAppender) appender).getQueueCapacity(), is(256));
+        } finally {
+            appender.stop();
+        }
+    }
+
+    @Test
+    public void buildGelfAppenderSuppressesRepeatedMessages() throws IOException {
+        try (DatagramSocket server = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(5000);
+            final GelfAppenderFactory gelf = new GelfAppenderFactory();
+            gelf.setEncoder(GelfAppenderFactory.Encoder.STREAMING);
+            gelf.setHost("udp:127.0.0.1");
+            gelf.setPort(server.getLocalPort());
+            gelf.setRepeatLimit(1);
+
+            final LoggerContext context = new LoggerContext();
+            final Appender<ILoggingEvent> appender = gelf.build(context, APPLICATION_NAME, null, new ThresholdLevelFilterFactory(), new AsyncLoggingEventAppenderFactory());
+            assertThat(appender, instanceOf(RepeatSuppressingAppender.class));
+            final Logger logger = context.getLogger("repeats");
+            logger.addAppender(appender);
+            for (int i = 0; i < 3; i++) {
+                logger.warn("Connection to {} failed", "db");
+            }
+            appender.stop();
+
+            assertThat(receiveJson(server).get("short_message").asText(), is("Connection to db failed"));
+            final JsonNode summary = receiveJson(server);
+            assertThat(summary.get("short_message").asText(), is("Suppressed 2 repeated messages within 10000 ms: Connection to {} failed"));
+            assertThat(summary.get("_suppressedCount").asText(), is("2"));
+        }
+    }
+
+    @Test
+    public void buildGelfAppenderCachesStackTraces() throws IOException {
+        try (DatagramSocket server = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(5000);
+            final MetricRegistry registry = new MetricRegistry();
+            final GelfAppenderFactory gelf = new GelfAppenderFactory();
+            gelf.setHost("udp:127.0.0.1");
+            gelf.setPort(server.getLocalPort());
+            gelf.setExtractStackTrace(true);
+            gelf.setStackTraceCacheSize(8);
+            gelf.setMetrics(true);
+            gelf.setMetricRegistry(() -> registry);
+
+            final LoggerContext context = new LoggerContext();
+            final Appender<ILoggingEvent> appender = gelf.build(context, APPLICATION_NAME, null, new ThresholdLevelFilterFactory(), new AsyncLoggingEventAppenderFactory());
+            final Logger logger = context.getLogger("stacktraces");
+            logger.addAppender(appender);
+            for (int i = 0; i < 2; i++) {
+                logger.error("Request failed", new IllegalStateException("Connection refused"));
+            }
+            final String first = receiveJson(server).get("_StackTrace").asText();
+            final String second = receiveJson(server).get("_StackTrace").asText();
+            appender.stop();
+
+            assertThat(first.startsWith("java.lang.IllegalStateException: Connection refused"), is(true));
+            assertThat(second, is(first));
+            assertThat(registry.getGauges().get("net.gini.dropwizard.gelf.stacktraces.hits").getValue(), is(1L));
+            assertThat(registry.getGauges().get("net.gini.dropwizard.gelf.stacktraces.misses").getValue(), is(1L));
+        }
+    }
+
+    private static JsonNode receiveJson(DatagramSocket server) throws IOException {
+        final DatagramPacket packet = new DatagramPacket(new byte[8192], 8192);
+        server.receive(packet);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(packet.getData(), 0, packet.getLength()))) {
+            return new ObjectMapper().readTree(in);
+        }
+    }
+
+    @Test
+    public void buildGelfAppenderRegistersMetrics() throws IOException {
+        try (DatagramSocket server = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(5000);
+            final MetricRegistry registry = new MetricRegistry();
+            final GelfAppenderFactory gelf = new GelfAppenderFactory();
+            gelf.setHost("udp:127.0.0.1");
+            gelf.setPort(server.getLocalPort());
+            gelf.setMetrics(true);
+            gelf.setMetricRegistry(() -> registry);
+
+            final LoggerContext context = new LoggerContext();
+            final Appender<ILoggingEvent> appender = gelf.build(context, APPLICATION_NAME, null, new ThresholdLevelFilterFactory(), new AsyncLoggingEventAppenderFactory());
+            final Logger logger = context.getLogger("metrics");
+            logger.addAppender(appender);
+            logger.warn("Hello {}", "GELF");
+            server.receive(new DatagramPacket(new byte[8192], 8192));
+            appender.stop();
+
+            assertThat(((Meter) registry.getMetrics().get("net.gini.dropwizard.gelf.events.accepted.warn")).getCount(), is(1L));
+            assertThat(((Meter) registry.getMetrics().get("net.gini.dropwizard.gelf.datagrams")).getCount(), is(1L));
+            assertThat(((Timer) registry.getMetrics().get("net.gini.dropwizard.gelf.encode")).getCount(), is(1L));
+            assertThat(registry.getGauges().containsKey("net.gini.dropwizard.gelf.queue.size"), is(true));
+        }
+    }
 }
@@ -0,0 +1,82 @@
+package net.gini.dropwizard.gelf.logging;
+
+import ch.qos.logback.classic.Level;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GelfMetricsTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Test
+    public void registersMetricsOnceRegistryIsAvailable() {
+        final AtomicReference<MetricRegistry> available = new AtomicReference<>();
+        final GelfMetrics metrics = new GelfMetrics(available::get);
+
+        assertThat(metrics.register()).isFalse();
+        metrics.accepted(Level.INFO);
+
+        available.set(registry);
+        metrics.accepted(Level.INFO);
+        metrics.accepted(Level.ERROR);
+
+        assertThat(meter("events.accepted.info").getCount()).isEqualTo(2);
+        assertThat(meter("events.accepted.error").getCount()).isEqualTo(1);
+        assertThat(meter("events.accepted.debug").getCount()).isZero();
+    }
+
+    @Test
+    public void replacesMetricsOfPreviousAppender() {
+        final GelfMetrics previous = new GelfMetrics(() -> registry);
+        previous.register();
+        previous.sendFailed();
+
+        final GelfMetrics metrics = new GelfMetrics(() -> registry);
+        metrics.register();
+
+        assertThat(meter("errors").getCount()).isZero();
+    }
+
+    @Test
+    public void recordsQueueAndTransport() {
+        final GelfMetrics metrics = new GelfMetrics(() -> registry);
+        metrics.queue(() -> 3, level -> level == Level.DEBUG ? 7L : 0L);
+        metrics.register();
+
+        metrics.encoded(TimeUnit.MICROSECONDS.toNanos(15));
+        metrics.messageChunked(3);
+        metrics.datagramSent(1000);
+        metrics.datagramSent(500);
+        metrics.framesWritten(4, 200);
+        metrics.sendFailed();
+        metrics.reconnected();
+
+        assertThat(gauge("queue.size").getValue()).isEqualTo(3);
+        assertThat(gauge("events.dropped.debug").getValue()).isEqualTo(7L);
+        assertThat(gauge("events.dropped.error").getValue()).isEqualTo(0L);
+        assertThat(((Timer) registry.getMetrics().get(GelfMetrics.PREFIX + ".encode")).getCount()).isEqualTo(1);
+        assertThat(meter("chunked").getCount()).isEqualTo(1);
+        assertThat(meter("datagrams").getCount()).isEqualTo(2);
+        assertThat(meter("frames").getCount()).isEqualTo(4);
+        assertThat(meter("bytes").getCount()).isEqualTo(1700);
+        assertThat(meter("errors").getCount()).isEqualTo(1);
+        assertThat(((Counter) registry.getMetrics().get(GelfMetrics.PREFIX + ".reconnects")).getCount()).isEqualTo(1);
+    }
+
+    private Meter meter(String name) {
+        return (Meter) registry.getMetrics().get(GelfMetrics.PREFIX + "." + name);
+    }
+
+    private Gauge<?> gauge(String name) {
+        return (Gauge<?>) registry.getMetrics().get(GelfMetrics.PREFIX + "." + name);
+    }
+}
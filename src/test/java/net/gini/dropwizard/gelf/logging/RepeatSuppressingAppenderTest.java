@@ -0,0 +1,138 @@
+package net.gini.dropwizard.gelf.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RepeatSuppressingAppenderTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger(RepeatSuppressingAppenderTest.class);
+    private final ListAppender<ILoggingEvent> downstream = new ListAppender<>();
+    private RepeatSuppressingAppender appender;
+
+    @After
+    public void tearDown() {
+        if (appender != null) {
+            appender.stop();
+        }
+        context.stop();
+    }
+
+    @Test
+    public void forwardsFirstRepeatsAndSummarizesTheRest() {
+        start(2, 60_000L, 16);
+
+        for (int i = 0; i < 5; i++) {
+            appender.doAppend(event(Level.WARN, "Connection to {} failed", new IllegalStateException("" + i)));
+        }
+        appender.doAppend(event(Level.WARN, "Connection to {} failed", null));
+        appender.doAppend(event(Level.ERROR, "Connection to {} failed", new IllegalStateException()));
+
+        assertThat(messages()).containsExactly("Connection to {} failed", "Connection to {} failed",
+                "Connection to {} failed", "Connection to {} failed");
+        assertThat(appender.getSuppressedCount()).isEqualTo(3);
+        assertThat(appender.getFingerprintCount()).isEqualTo(3);
+
+        appender.stop();
+
+        final ILoggingEvent summary = downstream.list.get(4);
+        assertThat(summary.getLevel()).isEqualTo(Level.WARN);
+        assertThat(summary.getLoggerName()).isEqualTo(logger.getName());
+        assertThat(summary.getFormattedMessage())
+                .isEqualTo("Suppressed 3 repeated messages within 60000 ms: Connection to {} failed");
+        assertThat(summary.getMDCPropertyMap()).containsEntry(RepeatSuppressingAppender.SUPPRESSED_COUNT, "3");
+        assertThat(summary.getCallerData()).isEmpty();
+        assertThat(downstream.list).hasSize(5);
+    }
+
+    @Test
+    public void sendsSummaryOnceWindowHasPassed() throws InterruptedException {
+        start(1, 50L, 16);
+
+        appender.doAppend(event(Level.ERROR, "failed", null));
+        appender.doAppend(event(Level.ERROR, "failed", null));
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (downstream.list.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(messages()).containsExactly("failed", "Suppressed {} repeated messages within {} ms: {}");
+
+        appender.doAppend(event(Level.ERROR, "failed", null));
+        assertThat(downstream.list).hasSize(3);
+    }
+
+    @Test
+    public void forwardsEventsBeyondMaximumFingerprints() {
+        start(1, 60_000L, 1);
+
+        appender.doAppend(event(Level.INFO, "first", null));
+        appender.doAppend(event(Level.INFO, "second", null));
+        appender.doAppend(event(Level.INFO, "second", null));
+
+        assertThat(messages()).containsExactly("first", "second", "second");
+        assertThat(appender.getFingerprintCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void countsRepeatsFromConcurrentThreads() throws InterruptedException {
+        start(10, 60_000L, 16);
+        final int threads = 4;
+        final int events = 1000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int j = 0; j < events; j++) {
+                    appender.doAppend(event(Level.WARN, "repeated", null));
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(downstream.list).hasSize(10);
+        assertThat(appender.getSuppressedCount()).isEqualTo(threads * events - 10);
+    }
+
+    private void start(int limit, long windowMillis, int maximumFingerprints) {
+        downstream.setContext(context);
+        downstream.setName("downstream");
+        downstream.start();
+        appender = new RepeatSuppressingAppender(limit, windowMillis, maximumFingerprints);
+        appender.setContext(context);
+        appender.setName("suppressing");
+        appender.addAppender(downstream);
+        appender.start();
+        assertThat(appender.isStarted()).isTrue();
+    }
+
+    private ILoggingEvent event(Level level, String message, Throwable throwable) {
+        return new LoggingEvent(Logger.FQCN, logger, level, message, throwable, new Object[]{"db"});
+    }
+
+    private List<String> messages() {
+        return downstream.list.stream().map(ILoggingEvent::getMessage).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,167 @@
+package net.gini.dropwizard.gelf.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RingBufferAsyncAppenderTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger(RingBufferAsyncAppenderTest.class);
+    private final BlockingAppender downstream = new BlockingAppender();
+    private RingBufferAsyncAppender appender;
+
+    @After
+    public void tearDown() {
+        downstream.release.countDown();
+        if (appender != null) {
+            appender.stop();
+        }
+    }
+
+    @Test
+    public void passesEventsToAttachedAppenders() {
+        start(GelfAppenderFactory.OverflowPolicy.BLOCK);
+        downstream.release.countDown();
+
+        assertThat(appender.getAppender("downstream")).isSameAs(downstream);
+        appender.doAppend(event(Level.INFO, "first"));
+        appender.doAppend(event(Level.INFO, "second"));
+        appender.stop();
+
+        assertThat(messages()).containsExactly("first", "second");
+        assertThat(downstream.isStarted()).isFalse();
+    }
+
+    @Test
+    public void wakesIdleWorkerForNewEvents() throws InterruptedException {
+        start(GelfAppenderFactory.OverflowPolicy.BLOCK);
+        downstream.release.countDown();
+
+        for (int i = 0; i < 5; i++) {
+            // Let the worker go idle before every event
+            Thread.sleep(20L);
+            final long start = System.nanoTime();
+            appender.doAppend(event(Level.INFO, "message " + i));
+            final int expected = i + 1;
+            while (downstream.events.size() < expected
+                    && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+                Thread.yield();
+            }
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(500));
+        }
+
+        assertThat(messages()).hasSize(5);
+    }
+
+    @Test
+    public void dropsNewestEventUnlessOldestHasLowerLevel() throws InterruptedException {
+        start(GelfAppenderFactory.OverflowPolicy.DROP_NEWEST);
+        fill(Level.DEBUG, Level.INFO);
+
+        appender.doAppend(event(Level.DEBUG, "dropped"));
+        appender.doAppend(event(Level.ERROR, "error"));
+        appender.doAppend(event(Level.INFO, "dropped"));
+
+        assertThat(appender.getDroppedCount(Level.DEBUG)).isEqualTo(2);
+        assertThat(appender.getDroppedCount(Level.INFO)).isEqualTo(1);
+        assertThat(appender.getDroppedCount(Level.ERROR)).isZero();
+        downstream.release.countDown();
+        appender.stop();
+        assertThat(messages()).containsExactly("blocker", "INFO", "error");
+    }
+
+    @Test
+    public void dropsOldestEventUnlessItHasHigherLevel() throws InterruptedException {
+        start(GelfAppenderFactory.OverflowPolicy.DROP_OLDEST);
+        fill(Level.ERROR, Level.INFO);
+
+        appender.doAppend(event(Level.DEBUG, "dropped"));
+        assertThat(appender.getDroppedCount(Level.DEBUG)).isEqualTo(1);
+
+        appender.doAppend(event(Level.ERROR, "error"));
+        assertThat(appender.getDroppedCount(Level.ERROR)).isEqualTo(1);
+
+        downstream.release.countDown();
+        appender.stop();
+        assertThat(messages()).containsExactly("blocker", "INFO", "error");
+    }
+
+    @Test
+    public void dropsEventsBelowLevelAndBlocksOthers() throws InterruptedException {
+        start(GelfAppenderFactory.OverflowPolicy.DROP_BELOW_LEVEL);
+        fill(Level.INFO, Level.INFO);
+
+        appender.doAppend(event(Level.INFO, "dropped"));
+        assertThat(appender.getDroppedCount(Level.INFO)).isEqualTo(1);
+
+        final Thread blocked = new Thread(() -> appender.doAppend(event(Level.WARN, "warning")));
+        blocked.start();
+        blocked.join(100);
+        assertThat(blocked.isAlive()).isTrue();
+
+        downstream.release.countDown();
+        blocked.join(5000);
+        appender.stop();
+        assertThat(messages()).containsExactly("blocker", "INFO", "INFO", "warning");
+        assertThat(appender.getDroppedCount(Level.WARN)).isZero();
+    }
+
+    private void start(GelfAppenderFactory.OverflowPolicy policy) {
+        downstream.setContext(context);
+        downstream.setName("downstream");
+        downstream.start();
+        appender = new RingBufferAsyncAppender(2, policy, Level.WARN, false);
+        appender.setContext(context);
+        appender.setName("async");
+        appender.addAppender(downstream);
+        appender.start();
+    }
+
+    private void fill(Level first, Level second) throws InterruptedException {
+        appender.doAppend(event(Level.INFO, "blocker"));
+        assertThat(downstream.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        appender.doAppend(event(first, first.toString()));
+        appender.doAppend(event(second, second.toString()));
+        assertThat(appender.getQueueSize()).isEqualTo(appender.getQueueCapacity());
+    }
+
+    private ILoggingEvent event(Level level, String message) {
+        return new LoggingEvent(Logger.FQCN, logger, level, message, null, null);
+    }
+
+    private List<String> messages() {
+        return downstream.events.stream().map(ILoggingEvent::getMessage).collect(Collectors.toList());
+    }
+
+    private static class BlockingAppender extends AppenderBase<ILoggingEvent> {
+
+        private final List<ILoggingEvent> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package net.gini.dropwizard.gelf.logging;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RingBufferTest {
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertThat(new RingBuffer<>(1).capacity()).isEqualTo(1);
+        assertThat(new RingBuffer<>(5).capacity()).isEqualTo(8);
+        assertThat(new RingBuffer<>(256).capacity()).isEqualTo(256);
+    }
+
+    @Test
+    public void pollsElementsInInsertionOrder() {
+        final RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertThat(buffer.offer(i)).isTrue();
+            }
+            assertThat(buffer.offer(4)).isFalse();
+            assertThat(buffer.size()).isEqualTo(4);
+
+            for (int i = 0; i < 4; i++) {
+                assertThat(buffer.poll()).isEqualTo(i);
+            }
+            assertThat(buffer.poll()).isNull();
+            assertThat(buffer.isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    public void pollsOldestElementOnlyIfItMatches() {
+        final RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        buffer.offer(1);
+        buffer.offer(2);
+
+        assertThat(buffer.pollIf(i -> i > 1)).isNull();
+        assertThat(buffer.pollIf(i -> i == 1)).isEqualTo(1);
+        assertThat(buffer.pollIf(i -> i == 2)).isEqualTo(2);
+        assertThat(buffer.pollIf(i -> true)).isNull();
+    }
+
+    @Test
+    public void passesAllElementsFromConcurrentProducers() throws InterruptedException {
+        final RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        final int producers = 4;
+        final int elementsPerProducer = 10_000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < elementsPerProducer; i++) {
+                    while (!buffer.offer(producer * elementsPerProducer + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        final int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        int received = 0;
+        while (received < producers * elementsPerProducer) {
+            final Integer element = buffer.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            final int producer = element / elementsPerProducer;
+            assertThat(element % elementsPerProducer).isGreaterThan(last[producer]);
+            last[producer] = element % elementsPerProducer;
+            received++;
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(buffer.isEmpty()).isTrue();
+    }
+}
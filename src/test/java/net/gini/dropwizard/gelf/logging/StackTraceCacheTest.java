@@ -0,0 +1,87 @@
+package net.gini.dropwizard.gelf.logging;
+
+import biz.paluch.logging.StackTraceFilter;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StackTraceCacheTest {
+
+    @Test
+    public void cachesStackTraceOfRepeatedThrowable() {
+        final StackTraceCache cache = new StackTraceCache(16, false);
+
+        final String[] stackTraces = new String[2];
+        Exception exception = null;
+        for (int i = 0; i < stackTraces.length; i++) {
+            exception = fail("connection refused");
+            stackTraces[i] = cache.get(exception);
+        }
+
+        assertThat(stackTraces[1]).isSameAs(stackTraces[0]).isEqualTo(printStackTrace(exception));
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void distinguishesMessagesCausesAndCallSites() {
+        final StackTraceCache cache = new StackTraceCache(16, false);
+
+        for (String message : new String[]{"connection refused", "connection reset"}) {
+            assertThat(cache.get(fail(message))).startsWith("java.io.IOException: " + message);
+            assertThat(cache.get(new IllegalStateException("wrapped", fail(message))))
+                    .contains("Caused by: java.io.IOException: " + message);
+        }
+        assertThat(cache.get(fail("connection refused"))).startsWith("java.io.IOException: connection refused");
+
+        assertThat(cache.size()).isEqualTo(5);
+        assertThat(cache.hitCount()).isZero();
+    }
+
+    @Test
+    public void handlesCircularReferences() {
+        final StackTraceCache cache = new StackTraceCache(16, false);
+        final IllegalStateException outer = new IllegalStateException("outer");
+        final IllegalArgumentException inner = new IllegalArgumentException("inner", outer);
+        outer.addSuppressed(inner);
+
+        assertThat(cache.get(outer)).contains("CIRCULAR REFERENCE");
+        assertThat(cache.get(outer)).contains("CIRCULAR REFERENCE");
+        assertThat(cache.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void filtersStackTraces() {
+        final StackTraceCache cache = new StackTraceCache(16, true);
+        final Exception exception = fail("connection refused");
+
+        assertThat(cache.get(exception)).isEqualTo(StackTraceFilter.getFilteredStackTrace(exception, 0));
+    }
+
+    @Test
+    public void evictsStackTracesBeyondMaximumSize() {
+        final StackTraceCache cache = new StackTraceCache(2, false);
+
+        for (int i = 0; i < 10; i++) {
+            cache.get(fail("failure " + i));
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(2);
+        assertThat(cache.missCount()).isEqualTo(10);
+    }
+
+    private static Exception fail(String message) {
+        return new IOException(message);
+    }
+
+    private static String printStackTrace(Throwable throwable) {
+        final StringWriter writer = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+}
@@ -0,0 +1,274 @@
+package net.gini.dropwizard.gelf.logging;
+
+import biz.paluch.logging.RuntimeContainer;
+import biz.paluch.logging.gelf.intern.GelfMessage;
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.dropwizard.logging.filter.ThresholdLevelFilterFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamingGelfEncoderTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger(StreamingGelfEncoderTest.class);
+    private final GelfAppenderFactory factory = new GelfAppenderFactory();
+
+    @Before
+    public void setUp() {
+        RuntimeContainer.initialize((message, e) -> {
+        });
+        factory.setFacility(Optional.of("test-facility"));
+        factory.setOriginHost(Optional.of("origin.example.com"));
+    }
+
+    @After
+    public void tearDown() {
+        MDC.clear();
+    }
+
+    @Test
+    public void encodesSameFieldsAsGelfMessage() throws Exception {
+        factory.setAdditionalFields(ImmutableMap.of("environment", "test", "instance", "42"));
+        factory.setMdcFields(ImmutableList.of("requestId", "missing"));
+        factory.setDynamicMdcFields(ImmutableList.of("dyn.*"));
+        MDC.put("requestId", "4711");
+        MDC.put("dynamicValue", "a value with \"quotes\"");
+        MDC.put("ignored", "not included");
+
+        final Map<String, Object> message = assertEquivalent(event(Level.INFO, "Hello, world!", null));
+        assertThat(message)
+                .containsEntry("host", "origin.example.com")
+                .containsEntry("facility", "test-facility")
+                .containsEntry("short_message", "Hello, world!")
+                .containsEntry("level", 6)
+                .containsEntry("_requestId", 4711)
+                .containsEntry("_instance", 42)
+                .containsEntry("_dynamicValue", "a value with \"quotes\"")
+                .doesNotContainKeys("_missing", "_ignored");
+    }
+
+    @Test
+    public void encodesFullMdcOverridingOtherFields() throws Exception {
+        factory.setIncludeFullMDC(true);
+        factory.setAdditionalFields(ImmutableMap.of("environment", "test", "Thread", "static"));
+        factory.setMdcFields(ImmutableList.of("requestId"));
+        MDC.put("requestId", "4711");
+        MDC.put("environment", "mdc");
+        MDC.put("LoggerName", "mdc-logger");
+        MDC.put("blank", " ");
+        MDC.put("id", "skipped");
+
+        assertEquivalent(event(Level.WARN, "Warning", null));
+    }
+
+    @Test
+    public void encodesDiscoveredAndConfiguredFieldTypes() throws Exception {
+        factory.setIncludeFullMDC(true);
+        factory.setAdditionalFieldTypes(ImmutableMap.of("asString", "String", "asLong", "long",
+                "asDouble", "double", "invalidLong", "long", "invalidDouble", "Double"));
+        MDC.put("long", "-4711");
+        MDC.put("leadingZero", "007");
+        MDC.put("double", "3.14");
+        MDC.put("exponent", "1e3");
+        MDC.put("hex", "0x1F");
+        MDC.put("nan", "NaN");
+        MDC.put("infinity", "-Infinity");
+        MDC.put("tooLong", "123456789012345678901234567890");
+        MDC.put("asString", "42");
+        MDC.put("asLong", "42.5");
+        MDC.put("asDouble", "42");
+        MDC.put("invalidLong", "foo");
+        MDC.put("invalidDouble", "bar");
+
+        assertEquivalent(event(Level.DEBUG, "Types", null));
+    }
+
+    @Test
+    public void encodesLongMessagesAndSpecialCharacters() throws Exception {
+        assertEquivalent(event(Level.ERROR, Strings.repeat("Grüße € \t\"\\\u0001 ", 40), null));
+    }
+
+    @Test
+    public void encodesLocationAndMarker() throws Exception {
+        final LoggingEvent event = event(Level.INFO, "With location", null);
+        event.setCallerData(new StackTraceElement[]{
+                new StackTraceElement("com.example.Service", "handle", "Service.java", 123)});
+        event.setMarker(MarkerFactory.getMarker("AUDIT"));
+
+        assertEquivalent(event);
+
+        factory.setIncludeLocation(false);
+        assertEquivalent(event);
+    }
+
+    @Test
+    public void encodesFieldMarkerOverridingOtherFields() throws Exception {
+        factory.setAdditionalFields(ImmutableMap.of("environment", "test", "requestUri", "static"));
+        final LoggingEvent event = event(Level.INFO, "Request", null);
+        event.setMarker(new TestFieldMarker(ImmutableMap.of("requestUri", "/hello", "responseStatus", "200")));
+
+        final Map<String, Object> message = assertEquivalent(event);
+        assertThat(message).containsEntry("_requestUri", "/hello")
+                .containsEntry("_responseStatus", 200)
+                .containsEntry("_environment", "test")
+                .containsEntry("_Marker", "FIELDS");
+    }
+
+    @Test
+    public void encodesThrowableAsMessageAndStackTrace() throws Exception {
+        factory.setExtractStackTrace(true);
+        final IllegalStateException exception = new IllegalStateException("Broken", new RuntimeException("Cause"));
+
+        assertEquivalent(event(Level.ERROR, "Failure", exception));
+        assertEquivalent(event(Level.ERROR, null, exception));
+
+        factory.setFilterStackTrace(true);
+        assertEquivalent(event(Level.ERROR, "Failure", exception));
+    }
+
+    @Test
+    public void skipsEventsWithoutMessage() {
+        final StreamingGelfEncoder encoder = new StreamingGelfEncoder(factory, "origin.example.com", "facility");
+
+        assertThat(encoder.encode(event(Level.INFO, " ", null))).isNull();
+    }
+
+    @Test
+    public void discoversValueTypesLikeLogstashGelf() {
+        assertThat(StreamingGelfEncoder.discover("0")).isEqualTo(StreamingGelfEncoder.ValueType.LONG);
+        assertThat(StreamingGelfEncoder.discover("+12")).isEqualTo(StreamingGelfEncoder.ValueType.LONG);
+        assertThat(StreamingGelfEncoder.discover("1234567890123456789")).isEqualTo(StreamingGelfEncoder.ValueType.LONG);
+        assertThat(StreamingGelfEncoder.discover("12345678901234567890")).isEqualTo(StreamingGelfEncoder.ValueType.STRING);
+        assertThat(StreamingGelfEncoder.discover("-1.5e10")).isEqualTo(StreamingGelfEncoder.ValueType.DOUBLE);
+        assertThat(StreamingGelfEncoder.discover("Infinity")).isEqualTo(StreamingGelfEncoder.ValueType.DOUBLE);
+        assertThat(StreamingGelfEncoder.discover("abc")).isEqualTo(StreamingGelfEncoder.ValueType.STRING);
+        assertThat(StreamingGelfEncoder.discover("1.2.3")).isEqualTo(StreamingGelfEncoder.ValueType.STRING);
+        assertThat(StreamingGelfEncoder.discover("")).isEqualTo(StreamingGelfEncoder.ValueType.STRING);
+    }
+
+    private LoggingEvent event(Level level, String message, Throwable throwable) {
+        final LoggingEvent event = new LoggingEvent(Logger.FQCN, logger, level, message, throwable, null);
+        event.setTimeStamp(1500000000123L);
+        event.setThreadName("main");
+        event.setCallerData(new StackTraceElement[0]);
+        event.getMDCPropertyMap();
+        return event;
+    }
+
+    private Map<String, Object> assertEquivalent(ILoggingEvent event) throws Exception {
+        final StreamingGelfEncoder encoder = new StreamingGelfEncoder(factory, "origin.example.com",
+                "test-facility");
+        final ByteBuffer encoded = encoder.encode(event);
+
+        final Map<String, Object> message = parse(StandardCharsets.UTF_8.decode(encoded).toString());
+        assertThat(message).isEqualTo(parse(gelfMessage(event).toJson()));
+        return message;
+    }
+
+    private GelfMessage gelfMessage(ILoggingEvent event) throws Exception {
+        final Appender<ILoggingEvent> appender = factory.build(context, "application", null,
+                new ThresholdLevelFilterFactory(), AsyncAppender::new);
+        try {
+            final Appender<ILoggingEvent> gelfAppender = ((AsyncAppender) appender).getAppender("dropwizard-gelf");
+            final Method createGelfMessage = gelfAppender.getClass()
+                    .getDeclaredMethod("createGelfMessage", ILoggingEvent.class);
+            createGelfMessage.setAccessible(true);
+            return (GelfMessage) createGelfMessage.invoke(gelfAppender, event);
+        } finally {
+            appender.stop();
+        }
+    }
+
+    private static final class TestFieldMarker implements FieldMarker {
+
+        private final Map<String, String> fields;
+
+        private TestFieldMarker(Map<String, String> fields) {
+            this.fields = fields;
+        }
+
+        @Override
+        public void forEachField(BiConsumer<String, String> consumer) {
+            fields.forEach(consumer);
+        }
+
+        @Override
+        public String getName() {
+            return "FIELDS";
+        }
+
+        @Override
+        public void add(Marker reference) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean remove(Marker reference) {
+            return false;
+        }
+
+        @Override
+        @Deprecated
+        public boolean hasChildren() {
+            return false;
+        }
+
+        @Override
+        public boolean hasReferences() {
+            return false;
+        }
+
+        @Override
+        public Iterator<Marker> iterator() {
+            return Collections.emptyIterator();
+        }
+
+        @Override
+        public boolean contains(Marker other) {
+            return this == other;
+        }
+
+        @Override
+        public boolean contains(String name) {
+            return getName().equals(name);
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+
+    private static Map<String, Object> parse(String json) throws Exception {
+        return MAPPER.readValue(json, new TypeReference<Map<String, Object>>() {
+        });
+    }
+}
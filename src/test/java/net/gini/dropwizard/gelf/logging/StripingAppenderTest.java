@@ -0,0 +1,117 @@
+package net.gini.dropwizard.gelf.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StripingAppenderTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final List<ListAppender<ILoggingEvent>> lanes = new ArrayList<>();
+    private StripingAppender appender;
+
+    @After
+    public void tearDown() {
+        if (appender != null) {
+            appender.stop();
+        }
+        context.stop();
+    }
+
+    @Test
+    public void keepsEventsOfThreadInOneLaneInOrder() {
+        start(GelfAppenderFactory.PartitionKey.THREAD, 4);
+
+        for (int thread = 0; thread < 16; thread++) {
+            for (int i = 0; i < 3; i++) {
+                appender.doAppend(event("a.Logger", "worker-" + thread, "message " + i));
+            }
+        }
+
+        int total = 0;
+        int used = 0;
+        for (ListAppender<ILoggingEvent> lane : lanes) {
+            total += lane.list.size();
+            used += lane.list.isEmpty() ? 0 : 1;
+            for (String thread : lane.list.stream().map(ILoggingEvent::getThreadName).distinct()
+                    .collect(Collectors.toList())) {
+                assertThat(lane.list.stream().filter(e -> e.getThreadName().equals(thread))
+                        .map(ILoggingEvent::getMessage))
+                        .containsExactly("message 0", "message 1", "message 2");
+                for (ListAppender<ILoggingEvent> other : lanes) {
+                    if (other != lane) {
+                        assertThat(other.list).noneMatch(e -> e.getThreadName().equals(thread));
+                    }
+                }
+            }
+        }
+        assertThat(total).isEqualTo(48);
+        assertThat(used).isGreaterThan(1);
+    }
+
+    @Test
+    public void partitionsEventsByLogger() {
+        start(GelfAppenderFactory.PartitionKey.LOGGER, 2);
+
+        appender.doAppend(event("a.Logger", "worker-1", "first"));
+        appender.doAppend(event("a.Logger", "worker-2", "second"));
+        appender.doAppend(event("a.Logger", "worker-3", "third"));
+
+        assertThat(lanes).anySatisfy(lane -> assertThat(lane.list).extracting(ILoggingEvent::getMessage)
+                .containsExactly("first", "second", "third"));
+    }
+
+    @Test
+    public void stopsLanes() {
+        start(GelfAppenderFactory.PartitionKey.THREAD, 2);
+
+        appender.stop();
+
+        assertThat(lanes).noneMatch(ListAppender::isStarted);
+        assertThat(appender.getLaneCount()).isZero();
+    }
+
+    @Test
+    public void doesNotStartWithoutLanes() {
+        appender = new StripingAppender(GelfAppenderFactory.PartitionKey.THREAD);
+        appender.setContext(context);
+        appender.start();
+
+        assertThat(appender.isStarted()).isFalse();
+    }
+
+    private void start(GelfAppenderFactory.PartitionKey partitionKey, int laneCount) {
+        appender = new StripingAppender(partitionKey);
+        appender.setContext(context);
+        appender.setName("striping");
+        for (int i = 0; i < laneCount; i++) {
+            final ListAppender<ILoggingEvent> lane = new ListAppender<>();
+            lane.setContext(context);
+            lane.setName("lane-" + i);
+            lane.start();
+            lanes.add(lane);
+            appender.addAppender(lane);
+        }
+        appender.start();
+        assertThat(appender.isStarted()).isTrue();
+        assertThat(appender.getLaneCount()).isEqualTo(laneCount);
+    }
+
+    private ILoggingEvent event(String loggerName, String threadName, String message) {
+        final Logger logger = context.getLogger(loggerName);
+        final LoggingEvent event = new LoggingEvent(Logger.FQCN, logger, Level.INFO, message, null, null);
+        event.setThreadName(threadName);
+        return event;
+    }
+}
@@ -1,10 +1,13 @@
 package net.gini.dropwizard.gelf.testing;
 
 import net.gini.dropwizard.gelf.filters.GelfLoggingFilter;
+import net.gini.dropwizard.gelf.logging.FieldMarker;
 
 import org.junit.rules.ExternalResource;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -27,6 +30,7 @@ public class ExpectedLogEntry extends ExternalResource {
     private LogAppender appender;
     private String key;
     private String expectedValue;
+    private boolean markerField;
     private ILoggingEvent entry;
     private final CountDownLatch entryFound = new CountDownLatch(1);
 
@@ -42,6 +46,13 @@ public class ExpectedLogEntry extends ExternalResource {
     public void mdcKeyAndValue(final String key, final String expectedValue) {
         this.key = key;
         this.expectedValue = expectedValue;
+        this.markerField = false;
+    }
+
+    public void markerFieldAndValue(final String key, final String expectedValue) {
+        this.key = key;
+        this.expectedValue = expectedValue;
+        this.markerField = true;
     }
 
     @Override
@@ -68,12 +79,21 @@ public class ExpectedLogEntry extends ExternalResource {
         return entry;
     }
 
+    public static Map<String, String> markerFields(final ILoggingEvent event) {
+        final Map<String, String> fields = new HashMap<>();
+        if (event.getMarker() instanceof FieldMarker) {
+            ((FieldMarker) event.getMarker()).forEachField(fields::put);
+        }
+        return fields;
+    }
+
     private class LogAppender extends AppenderBase<ILoggingEvent> {
 
         @Override
         protected void append(final ILoggingEvent eventObject) {
             if (key != null) {
-                final String value = eventObject.getMDCPropertyMap().get(key);
+                final String value = markerField ? markerFields(eventObject).get(key)
+                        : eventObject.getMDCPropertyMap().get(key);
                 if (expectedValue.equals(value)) {
                     entry = eventObject;
                     entryFound.countDown();
@@ -0,0 +1,177 @@
+package net.gini.dropwizard.gelf.transport;
+
+import com.google.common.base.Strings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BatchingTcpGelfTransportTest {
+
+    private ServerSocket server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(5000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void flushesBatchAfterLinger() throws IOException {
+        try (GelfTransport transport = GelfTransports.builder("tcp:127.0.0.1", server.getLocalPort())
+                .batchBytes(1024)
+                .lingerMillis(20)
+                .build()) {
+            assertThat(transport).isInstanceOf(BatchingTcpGelfTransport.class);
+            assertThat(transport.send(utf8("{\"short_message\":\"first\"}"))).isTrue();
+            assertThat(transport.send(utf8("{\"short_message\":\"second\"}"))).isTrue();
+
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(5000);
+                final InputStream in = socket.getInputStream();
+                assertThat(readMessage(in)).isEqualTo("{\"short_message\":\"first\"}");
+                assertThat(readMessage(in)).isEqualTo("{\"short_message\":\"second\"}");
+            }
+        }
+    }
+
+    @Test
+    public void flushesBatchWhenFull() throws IOException {
+        final String message = Strings.repeat("x", 31);
+        try (GelfTransport transport = GelfTransports.builder("tcp:127.0.0.1", server.getLocalPort())
+                .batchBytes(64)
+                .lingerMillis(60_000)
+                .build()) {
+            assertThat(transport.send(utf8(message))).isTrue();
+            assertThat(transport.send(utf8(message))).isTrue();
+            assertThat(transport.send(utf8("pending"))).isTrue();
+
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(200);
+                final InputStream in = socket.getInputStream();
+                assertThat(readMessage(in)).isEqualTo(message);
+                assertThat(readMessage(in)).isEqualTo(message);
+                assertThatThrownBy(() -> readMessage(in)).isInstanceOf(SocketTimeoutException.class);
+
+                transport.close();
+                socket.setSoTimeout(5000);
+                assertThat(readMessage(in)).isEqualTo("pending");
+            }
+        }
+    }
+
+    @Test
+    public void writesMessagesLargerThanBatchWithBatch() throws IOException {
+        final String large = Strings.repeat("y", 1000);
+        try (GelfTransport transport = GelfTransports.builder("tcp:127.0.0.1", server.getLocalPort())
+                .batchBytes(64)
+                .lingerMillis(60_000)
+                .build()) {
+            assertThat(transport.send(utf8("small"))).isTrue();
+            assertThat(transport.send(utf8(large))).isTrue();
+
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(5000);
+                final InputStream in = socket.getInputStream();
+                assertThat(readMessage(in)).isEqualTo("small");
+                assertThat(readMessage(in)).isEqualTo(large);
+            }
+        }
+    }
+
+    @Test(timeout = 30_000L)
+    public void sendsMessagesOfConcurrentSenders() throws Exception {
+        final int senders = 4;
+        final int messagesPerSender = 250;
+        final Set<String> received = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(senders + 1);
+        try (GelfTransport transport = GelfTransports.builder("tcp:127.0.0.1", server.getLocalPort())
+                .batchBytes(256)
+                .lingerMillis(1)
+                .build()) {
+            final Future<?> reader = executor.submit(() -> {
+                try (Socket socket = server.accept()) {
+                    socket.setSoTimeout(5000);
+                    final InputStream in = socket.getInputStream();
+                    while (received.size() < senders * messagesPerSender) {
+                        received.add(readMessage(in));
+                    }
+                }
+                return null;
+            });
+            final List<Future<?>> sent = new ArrayList<>();
+            for (int sender = 0; sender < senders; sender++) {
+                final int id = sender;
+                sent.add(executor.submit(() -> {
+                    for (int i = 0; i < messagesPerSender; i++) {
+                        // Mix messages appended to the batch with messages larger than the batch
+                        final String padding = Strings.repeat(i % 3 == 0 ? "x" : "y", i % 3 == 0 ? 300 : 40);
+                        assertThat(transport.send(utf8(id + "-" + i + "-" + padding))).isTrue();
+                    }
+                }));
+            }
+            for (Future<?> future : sent) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            reader.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(received).hasSize(senders * messagesPerSender);
+    }
+
+    @Test
+    public void reportsConnectionFailures() throws IOException {
+        final int port = server.getLocalPort();
+        server.close();
+        final StringBuilder errors = new StringBuilder();
+
+        try (GelfTransport transport = GelfTransports.builder("tcp:127.0.0.1", port)
+                .batchBytes(64)
+                .errorReporter((message, e) -> errors.append(message))
+                .build()) {
+            assertThat(transport.send(utf8(Strings.repeat("z", 100)))).isFalse();
+        }
+
+        assertThat(errors.toString()).startsWith("Could not send GELF message to 127.0.0.1:" + port);
+    }
+
+    private static ByteBuffer utf8(String message) {
+        return ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readMessage(InputStream in) throws IOException {
+        final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) > 0) {
+            message.write(b);
+        }
+        return new String(message.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
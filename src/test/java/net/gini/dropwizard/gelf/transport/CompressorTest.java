@@ -0,0 +1,97 @@
+package net.gini.dropwizard.gelf.transport;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompressorTest {
+
+    private static final String MESSAGE = "{\"short_message\":\"" + Strings.repeat("Hello, GELF! ", 500) + "\"}";
+
+    @Test
+    public void compressesWithGzip() throws IOException {
+        final Compressor compressor = new Compressor(Compression.GZIP, -1, 0);
+
+        assertThat(gunzip(compressor.compress(utf8(MESSAGE)))).isEqualTo(MESSAGE);
+        assertThat(gunzip(compressor.compress(utf8("{}")))).isEqualTo("{}");
+    }
+
+    @Test
+    public void compressesWithZlib() throws IOException {
+        final Compressor compressor = new Compressor(Compression.ZLIB, 9, 0);
+
+        assertThat(inflate(compressor.compress(utf8(MESSAGE)))).isEqualTo(MESSAGE);
+        assertThat(inflate(compressor.compress(utf8("{}")))).isEqualTo("{}");
+    }
+
+    @Test
+    public void compressesDirectBuffers() throws IOException {
+        final byte[] bytes = MESSAGE.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer message = ByteBuffer.allocateDirect(bytes.length);
+        message.put(bytes).flip();
+
+        assertThat(gunzip(new Compressor(Compression.GZIP, 1, 0).compress(message))).isEqualTo(MESSAGE);
+        assertThat(message.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void leavesMessagesBelowThresholdUncompressed() throws IOException {
+        final Compressor compressor = new Compressor(Compression.GZIP, -1, 1024);
+        final ByteBuffer small = utf8("{\"short_message\":\"small\"}");
+
+        assertThat(compressor.compress(small)).isSameAs(small);
+        assertThat(gunzip(compressor.compress(utf8(MESSAGE)))).isEqualTo(MESSAGE);
+    }
+
+    @Test
+    public void leavesMessagesUncompressedWithoutCompression() {
+        final ByteBuffer message = utf8(MESSAGE);
+
+        assertThat(new Compressor(Compression.NONE, -1, 0).compress(message)).isSameAs(message);
+    }
+
+    @Test
+    public void leavesMessagesUncompressedOnceClosed() {
+        final Compressor compressor = new Compressor(Compression.GZIP, -1, 0);
+        final ByteBuffer message = utf8(MESSAGE);
+
+        compressor.close();
+        compressor.close();
+
+        assertThat(compressor.compress(message)).isSameAs(message);
+    }
+
+    private static ByteBuffer utf8(String message) {
+        return ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String gunzip(ByteBuffer compressed) throws IOException {
+        return read(new GZIPInputStream(new ByteArrayInputStream(toArray(compressed))));
+    }
+
+    private static String inflate(ByteBuffer compressed) throws IOException {
+        return read(new InflaterInputStream(new ByteArrayInputStream(toArray(compressed))));
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            return new String(ByteStreams.toByteArray(stream), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package net.gini.dropwizard.gelf.transport;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DirectBufferPoolTest {
+
+    @Test
+    public void allocatesDirectBuffersOfRequestedCapacity() {
+        final DirectBufferPool pool = new DirectBufferPool(2, 1024, 4096);
+
+        final ByteBuffer small = pool.acquire(10);
+        assertThat(small.isDirect()).isTrue();
+        assertThat(small.capacity()).isEqualTo(1024);
+
+        assertThat(pool.acquire(1500).capacity()).isEqualTo(2048);
+    }
+
+    @Test
+    public void reusesReleasedBuffers() {
+        final DirectBufferPool pool = new DirectBufferPool(2, 1024, 4096);
+        final ByteBuffer buffer = pool.acquire(100);
+        buffer.put((byte) 1);
+
+        pool.release(buffer);
+        assertThat(pool.size()).isEqualTo(1);
+
+        final ByteBuffer reused = pool.acquire(100);
+        assertThat(reused).isSameAs(buffer);
+        assertThat(reused.position()).isZero();
+        assertThat(reused.limit()).isEqualTo(1024);
+        assertThat(pool.size()).isZero();
+    }
+
+    @Test
+    public void retainsBoundedNumberOfBuffers() {
+        final DirectBufferPool pool = new DirectBufferPool(2, 1024, 4096);
+
+        pool.release(pool.acquire(100));
+        pool.release(ByteBuffer.allocateDirect(1024));
+        pool.release(ByteBuffer.allocateDirect(1024));
+        pool.release(ByteBuffer.allocateDirect(8192));
+
+        assertThat(pool.size()).isEqualTo(2);
+    }
+}
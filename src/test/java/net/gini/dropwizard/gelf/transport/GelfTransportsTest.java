@@ -0,0 +1,65 @@
+package net.gini.dropwizard.gelf.transport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GelfTransportsTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void supportsUdpAndTcpHosts() {
+        assertThat(GelfTransports.supports("localhost")).isTrue();
+        assertThat(GelfTransports.supports("udp:graylog.example.com")).isTrue();
+        assertThat(GelfTransports.supports("TCP:graylog.example.com")).isTrue();
+        assertThat(GelfTransports.supports("127.0.0.1")).isTrue();
+    }
+
+    @Test
+    public void doesNotSupportOtherSchemesOrQueryParameters() {
+        assertThat(GelfTransports.supports("")).isFalse();
+        assertThat(GelfTransports.supports("redis://localhost")).isFalse();
+        assertThat(GelfTransports.supports("http://localhost/gelf")).isFalse();
+        assertThat(GelfTransports.supports("tcp:localhost?readTimeout=1s")).isFalse();
+    }
+
+    @Test
+    public void builderRejectsUnsupportedHosts() {
+        assertThatThrownBy(() -> GelfTransports.builder("redis://localhost", 6379))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void builderWrapsTransportWithSpillDirectory() {
+        try (GelfTransport transport = GelfTransports.builder("tcp:127.0.0.1", 12201)
+                .spillDirectory(folder.getRoot().toPath().resolve("spill"))
+                .build()) {
+            assertThat(transport).isInstanceOf(SpillingGelfTransport.class);
+        }
+        assertThat(folder.getRoot().toPath().resolve("spill")).isDirectory();
+    }
+
+    @Test
+    public void builderBalancesAcrossEndpoints() {
+        try (GelfTransport transport = GelfTransports.builder("localhost", 12201)
+                .endpoints(Arrays.asList(new GelfEndpoint("tcp:127.0.0.1", 12201),
+                        new GelfEndpoint("udp:127.0.0.1", 12201)))
+                .build()) {
+            assertThat(transport).isInstanceOf(LoadBalancingGelfTransport.class);
+        }
+    }
+
+    @Test
+    public void builderRejectsUnsupportedEndpoints() {
+        assertThatThrownBy(() -> GelfTransports.builder("localhost", 12201)
+                .endpoints(Arrays.asList(new GelfEndpoint("redis://localhost", 6379))))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
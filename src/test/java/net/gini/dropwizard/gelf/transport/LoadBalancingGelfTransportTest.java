@@ -0,0 +1,236 @@
+package net.gini.dropwizard.gelf.transport;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadBalancingGelfTransportTest {
+
+    private final AtomicInteger circuits = new AtomicInteger();
+    private final TransportListener listener = new TransportListener() {
+        @Override
+        public void circuitOpened() {
+            circuits.incrementAndGet();
+        }
+
+        @Override
+        public void circuitClosed() {
+            circuits.decrementAndGet();
+        }
+    };
+
+    @Test
+    public void distributesMessagesRoundRobin() throws InterruptedException {
+        final FakeTransport first = new FakeTransport();
+        final FakeTransport second = new FakeTransport();
+        try (LoadBalancingGelfTransport transport = open(Balancing.ROUND_ROBIN, 3, 10_000L, first, second)) {
+            for (int i = 0; i < 10; i++) {
+                assertThat(transport.send(utf8("message " + i))).isTrue();
+            }
+            await(() -> first.messages.size() + second.messages.size() == 10);
+        }
+
+        assertThat(first.messages).hasSize(5);
+        assertThat(second.messages).hasSize(5);
+    }
+
+    @Test
+    public void prefersEndpointWithFewestOutstandingMessages() throws InterruptedException {
+        final FakeTransport slow = new FakeTransport();
+        final FakeTransport fast = new FakeTransport();
+        slow.blocked = new CountDownLatch(1);
+        try (LoadBalancingGelfTransport transport = open(Balancing.LEAST_OUTSTANDING, 3, 10_000L, slow, fast)) {
+            for (int i = 0; i < 100; i++) {
+                final long start = System.nanoTime();
+                assertThat(transport.send(utf8("message " + i))).isTrue();
+                assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(100));
+                Thread.sleep(1L);
+            }
+
+            await(() -> fast.messages.size() >= 90);
+            slow.blocked.countDown();
+            await(() -> slow.messages.size() + fast.messages.size() == 100);
+        }
+
+        assertThat(fast.messages.size()).isGreaterThanOrEqualTo(90);
+    }
+
+    @Test
+    public void opensCircuitOfFailingEndpointAndFailsOver() throws InterruptedException {
+        final FakeTransport failing = new FakeTransport();
+        final FakeTransport healthy = new FakeTransport();
+        failing.failing = true;
+        try (LoadBalancingGelfTransport transport = open(Balancing.ROUND_ROBIN, 2, 10_000L, failing, healthy)) {
+            for (int i = 0; i < 20; i++) {
+                assertThat(transport.send(utf8("message " + i))).isTrue();
+            }
+            await(() -> healthy.messages.size() == 20);
+
+            assertThat(transport.isAvailable(0)).isFalse();
+            assertThat(transport.isAvailable(1)).isTrue();
+        }
+
+        assertThat(failing.attempts.get()).isEqualTo(2);
+        assertThat(circuits.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void closesCircuitOnceEndpointRecovers() throws InterruptedException {
+        final FakeTransport recovering = new FakeTransport();
+        final FakeTransport healthy = new FakeTransport();
+        recovering.failing = true;
+        try (LoadBalancingGelfTransport transport = open(Balancing.ROUND_ROBIN, 1, 50L, recovering, healthy)) {
+            transport.send(utf8("first"));
+            await(() -> healthy.messages.size() == 1);
+            assertThat(circuits.get()).isEqualTo(1);
+
+            recovering.failing = false;
+            Thread.sleep(60L);
+            transport.send(utf8("second"));
+            transport.send(utf8("third"));
+            await(() -> recovering.messages.size() == 1);
+
+            assertThat(transport.isAvailable(0)).isTrue();
+            assertThat(circuits.get()).isZero();
+        }
+    }
+
+    @Test
+    public void rejectsMessagesWithoutAvailableEndpoint() throws InterruptedException {
+        final FakeTransport failing = new FakeTransport();
+        failing.failing = true;
+        try (LoadBalancingGelfTransport transport = open(Balancing.ROUND_ROBIN, 1, 10_000L, failing)) {
+            assertThat(transport.send(utf8("first"))).isTrue();
+            await(() -> !transport.isAvailable(0));
+
+            assertThat(transport.send(utf8("second"))).isFalse();
+        }
+    }
+
+    @Test
+    public void triesEveryEndpointOnceBeforeDroppingMessage() throws InterruptedException {
+        final FakeTransport first = new FakeTransport();
+        final FakeTransport second = new FakeTransport();
+        first.failing = true;
+        second.failing = true;
+        try (LoadBalancingGelfTransport transport = open(Balancing.ROUND_ROBIN, 100, 10_000L, first, second)) {
+            assertThat(transport.send(utf8("message"))).isTrue();
+            await(() -> first.attempts.get() + second.attempts.get() == 2);
+            Thread.sleep(50L);
+        }
+
+        assertThat(first.attempts.get()).isEqualTo(1);
+        assertThat(second.attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void queuesSingleProbeOnceCircuitBreakerElapsed() throws InterruptedException {
+        final FakeTransport recovering = new FakeTransport();
+        final FakeTransport healthy = new FakeTransport();
+        recovering.failing = true;
+        try (LoadBalancingGelfTransport transport = open(Balancing.ROUND_ROBIN, 1, 50L, recovering, healthy)) {
+            transport.send(utf8("first"));
+            await(() -> !transport.isAvailable(0) && healthy.messages.size() == 1);
+
+            recovering.blocked = new CountDownLatch(1);
+            Thread.sleep(60L);
+            for (int i = 0; i < 10; i++) {
+                assertThat(transport.send(utf8("message " + i))).isTrue();
+            }
+            await(() -> healthy.messages.size() == 10);
+            assertThat(transport.isAvailable(0)).isFalse();
+
+            recovering.failing = false;
+            recovering.blocked.countDown();
+            await(() -> transport.isAvailable(0));
+        }
+
+        assertThat(recovering.attempts.get()).isEqualTo(2);
+        assertThat(recovering.messages).hasSize(1);
+        assertThat(circuits.get()).isZero();
+    }
+
+    @Test
+    public void closeStopsSenderThreadsAndClosesTransportsOnThem() {
+        final FakeTransport blocked = new FakeTransport();
+        blocked.blocked = new CountDownLatch(1);
+        final LoadBalancingGelfTransport transport = open(Balancing.ROUND_ROBIN, 3, 10_000L, blocked);
+        for (int i = 0; i < 10; i++) {
+            assertThat(transport.send(utf8("message " + i))).isTrue();
+        }
+
+        final long start = System.nanoTime();
+        transport.close();
+
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+        assertThat(blocked.closedBy).startsWith("gelf-endpoint-sender-");
+        assertThat(blocked.messages.size()).isLessThan(10);
+    }
+
+    private LoadBalancingGelfTransport open(Balancing balancing, int failures, long millis,
+                                            FakeTransport... transports) {
+        final List<GelfEndpoint> endpoints = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < transports.length; i++) {
+            endpoints.add(new GelfEndpoint("tcp:graylog-" + i, 12201));
+        }
+        final List<FakeTransport> fakes = Arrays.asList(transports);
+        return new LoadBalancingGelfTransport(endpoints, endpoint -> fakes.get(endpoints.indexOf(endpoint)),
+                balancing, failures, millis, (message, e) -> {
+        }, listener);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private static ByteBuffer utf8(String message) {
+        return ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class FakeTransport implements GelfTransport {
+
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private volatile boolean failing;
+        private volatile CountDownLatch blocked;
+        private volatile String closedBy;
+
+        @Override
+        public boolean send(ByteBuffer message) {
+            attempts.incrementAndGet();
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing) {
+                return false;
+            }
+            final byte[] bytes = new byte[message.remaining()];
+            message.get(bytes);
+            messages.add(new String(bytes, StandardCharsets.UTF_8));
+            return true;
+        }
+
+        @Override
+        public void close() {
+            closedBy = Thread.currentThread().getName();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package net.gini.dropwizard.gelf.transport;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpillBufferTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+    private final AtomicInteger dropped = new AtomicInteger();
+    private SpillBuffer buffer;
+
+    @After
+    public void tearDown() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void replaysMessagesInOrderAcrossSegments() throws IOException {
+        buffer = open(1024, 128);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(buffer.append(utf8("{\"message\":" + i + "}"))).isTrue();
+        }
+        assertThat(buffer.pending()).isEqualTo(10);
+        assertThat(buffer.segments()).isGreaterThan(1);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(string(buffer.peek())).isEqualTo("{\"message\":" + i + "}");
+            buffer.commit();
+        }
+        assertThat(buffer.peek()).isNull();
+        assertThat(buffer.pending()).isZero();
+        assertThat(buffer.segments()).isEqualTo(1);
+        assertThat(folder.getRoot().list()).hasSize(1);
+    }
+
+    @Test
+    public void rejectsMessagesWhileFull() throws IOException {
+        buffer = open(128, 128);
+
+        assertThat(buffer.append(utf8(repeat('a', 40)))).isTrue();
+        assertThat(buffer.append(utf8(repeat('b', 40)))).isFalse();
+        assertThat(buffer.append(utf8(repeat('c', 100)))).isFalse();
+
+        assertThat(string(buffer.peek())).isEqualTo(repeat('a', 40));
+        buffer.commit();
+        assertThat(buffer.peek()).isNull();
+        assertThat(buffer.append(utf8(repeat('b', 40)))).isTrue();
+    }
+
+    @Test
+    public void discardsExpiredMessages() throws IOException {
+        buffer = open(1024, 256);
+
+        buffer.append(utf8("old"));
+        clock.addAndGet(500L);
+        buffer.append(utf8("new"));
+        clock.addAndGet(600L);
+
+        assertThat(string(buffer.peek())).isEqualTo("new");
+        assertThat(dropped.get()).isEqualTo(1);
+        assertThat(buffer.pending()).isEqualTo(1);
+    }
+
+    @Test
+    public void recoversPendingMessagesAfterRestart() throws IOException {
+        buffer = open(1024, 128);
+        for (int i = 0; i < 5; i++) {
+            buffer.append(utf8("message " + i));
+        }
+        buffer.peek();
+        buffer.commit();
+        buffer.close();
+
+        buffer = open(1024, 128);
+
+        assertThat(buffer.pending()).isEqualTo(4);
+        for (int i = 1; i < 5; i++) {
+            assertThat(string(buffer.peek())).isEqualTo("message " + i);
+            buffer.commit();
+        }
+        buffer.append(utf8("message 5"));
+        assertThat(string(buffer.peek())).isEqualTo("message 5");
+    }
+
+    @Test
+    public void endsRecoveredSegmentAtTornRecord() throws IOException {
+        buffer = open(1024, 256);
+        buffer.append(utf8("first"));
+        buffer.append(utf8("second"));
+        buffer.close();
+
+        final File segment = folder.getRoot().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            final long secondPayload = SpillBuffer.HEADER_BYTES + 2L * SpillBuffer.RECORD_HEADER_BYTES + 5L;
+            file.seek(secondPayload);
+            file.write('S');
+        }
+
+        buffer = open(1024, 256);
+
+        assertThat(buffer.pending()).isEqualTo(1);
+        assertThat(string(buffer.peek())).isEqualTo("first");
+        buffer.commit();
+        assertThat(buffer.peek()).isNull();
+    }
+
+    @Test
+    public void deletesSegmentsWithCorruptHeader() throws IOException {
+        buffer = open(1024, 256);
+        buffer.append(utf8("message"));
+        buffer.close();
+
+        final File segment = folder.getRoot().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(12L);
+            file.writeInt(512);
+        }
+
+        buffer = open(1024, 256);
+
+        assertThat(buffer.pending()).isZero();
+        assertThat(buffer.peek()).isNull();
+        assertThat(segment).doesNotExist();
+    }
+
+    @Test
+    public void preallocatesSegmentFiles() throws IOException {
+        buffer = open(1024, 256);
+        assertThat(buffer.append(utf8("message"))).isTrue();
+
+        final File[] segments = folder.getRoot().listFiles();
+        assertThat(segments).hasSize(1);
+        assertThat(segments[0]).hasSize(256L);
+    }
+
+    private SpillBuffer open(long maximumBytes, int segmentBytes) throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        return new SpillBuffer(directory, maximumBytes, segmentBytes, 1000L, clock::get, (message, e) -> {
+        }, new TransportListener() {
+            @Override
+            public void spillDropped() {
+                dropped.incrementAndGet();
+            }
+        });
+    }
+
+    private static ByteBuffer utf8(String message) {
+        return ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(ByteBuffer message) {
+        final byte[] bytes = new byte[message.remaining()];
+        message.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(char c, int count) {
+        return new String(new char[count]).replace('\0', c);
+    }
+}
@@ -0,0 +1,163 @@
+package net.gini.dropwizard.gelf.transport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpillingGelfTransportTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final FakeTransport delegate = new FakeTransport();
+    private final CountingListener listener = new CountingListener();
+
+    @Test
+    public void spillsWhileTransportFailsAndReplaysOnceItSucceeds() throws IOException, InterruptedException {
+        delegate.failing = true;
+        try (SpillingGelfTransport transport = open(1024 * 1024, 100_000)) {
+            assertThat(transport.send(utf8("first"))).isTrue();
+            assertThat(transport.send(utf8("second"))).isTrue();
+            assertThat(transport.send(utf8("third"))).isTrue();
+
+            assertThat(transport.isHealthy()).isFalse();
+            assertThat(listener.spilled.get()).isEqualTo(3);
+
+            delegate.failing = false;
+            awaitMessages(3);
+
+            assertThat(delegate.messages).containsExactly("first", "second", "third");
+            assertThat(listener.replayed.get()).isEqualTo(3);
+
+            awaitHealthy(transport);
+            assertThat(transport.send(utf8("fourth"))).isTrue();
+            assertThat(delegate.messages).endsWith("fourth");
+            assertThat(listener.spilled.get()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void doesNotCallFailingTransportForEverySpilledMessage() throws IOException {
+        delegate.failing = true;
+        try (SpillingGelfTransport transport = open(1024 * 1024, 1)) {
+            for (int i = 0; i < 100; i++) {
+                transport.send(utf8("message " + i));
+            }
+
+            assertThat(delegate.attempts.get()).isLessThan(10);
+            assertThat(listener.spilled.get()).isEqualTo(100);
+        }
+    }
+
+    @Test
+    public void dropsMessagesWhileSpillBufferIsFull() throws IOException {
+        delegate.failing = true;
+        try (SpillingGelfTransport transport = open(128, 1)) {
+            assertThat(transport.send(utf8(repeat('a', 40)))).isTrue();
+            assertThat(transport.send(utf8(repeat('b', 40)))).isFalse();
+
+            assertThat(listener.dropped.get()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void replaysMessagesSpilledByPreviousTransport() throws IOException, InterruptedException {
+        delegate.failing = true;
+        try (SpillingGelfTransport transport = open(1024 * 1024, 100_000)) {
+            transport.send(utf8("before restart"));
+        }
+
+        delegate.failing = false;
+        try (SpillingGelfTransport ignored = open(1024 * 1024, 100)) {
+            awaitMessages(1);
+            assertThat(delegate.messages).containsExactly("before restart");
+        }
+    }
+
+    private SpillingGelfTransport open(long maximumBytes, int replayRate) throws IOException {
+        final SpillBuffer spillBuffer = new SpillBuffer(folder.getRoot().toPath(), maximumBytes,
+                (int) Math.min(maximumBytes, 64 * 1024), 60_000L, System::currentTimeMillis, (message, e) -> {
+        }, listener);
+        return new SpillingGelfTransport(delegate, spillBuffer, replayRate, 10L, (message, e) -> {
+        }, listener);
+    }
+
+    private void awaitMessages(int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delegate.messages.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitHealthy(SpillingGelfTransport transport) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!transport.isHealthy() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static ByteBuffer utf8(String message) {
+        return ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String repeat(char c, int count) {
+        return new String(new char[count]).replace('\0', c);
+    }
+
+    private static final class FakeTransport implements GelfTransport {
+
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private volatile boolean failing;
+
+        @Override
+        public boolean send(ByteBuffer message) {
+            attempts.incrementAndGet();
+            if (failing) {
+                // Consume the message like a transport failing halfway through
+                message.position(message.limit());
+                return false;
+            }
+            final byte[] bytes = new byte[message.remaining()];
+            message.get(bytes);
+            messages.add(new String(bytes, StandardCharsets.UTF_8));
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class CountingListener implements TransportListener {
+
+        private final AtomicInteger spilled = new AtomicInteger();
+        private final AtomicInteger replayed = new AtomicInteger();
+        private final AtomicInteger dropped = new AtomicInteger();
+
+        @Override
+        public void messageSpilled() {
+            spilled.incrementAndGet();
+        }
+
+        @Override
+        public void messageReplayed() {
+            replayed.incrementAndGet();
+        }
+
+        @Override
+        public void spillDropped() {
+            dropped.incrementAndGet();
+        }
+    }
+}
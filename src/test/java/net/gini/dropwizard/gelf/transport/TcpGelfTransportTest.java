@@ -0,0 +1,105 @@
+package net.gini.dropwizard.gelf.transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TcpGelfTransportTest {
+
+    private ServerSocket server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(5000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void sendsNullByteDelimitedMessages() throws IOException {
+        try (GelfTransport transport = GelfTransports.builder("tcp:127.0.0.1", server.getLocalPort()).build()) {
+            assertThat(transport.send(utf8("{\"short_message\":\"first\"}"))).isTrue();
+            assertThat(transport.send(utf8("{\"short_message\":\"second\"}"))).isTrue();
+
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(5000);
+                final InputStream in = socket.getInputStream();
+                assertThat(readMessage(in)).isEqualTo("{\"short_message\":\"first\"}");
+                assertThat(readMessage(in)).isEqualTo("{\"short_message\":\"second\"}");
+            }
+        }
+    }
+
+    @Test
+    public void reportsConnectionFailures() throws IOException {
+        final int port = server.getLocalPort();
+        server.close();
+        final StringBuilder errors = new StringBuilder();
+
+        try (GelfTransport transport = GelfTransports.builder("tcp:127.0.0.1", port)
+                .errorReporter((message, e) -> errors.append(message))
+                .build()) {
+            assertThat(transport.send(utf8("{}"))).isFalse();
+        }
+
+        assertThat(errors.toString()).startsWith("Could not send GELF message to 127.0.0.1:" + port);
+    }
+
+    @Test
+    public void failsWritesToServerWhichStoppedReading() throws IOException {
+        final StringBuilder errors = new StringBuilder();
+        final TcpConnection connection = new TcpConnection("127.0.0.1", server.getLocalPort(), 200L,
+                (message, e) -> errors.append(message), TransportListener.NOOP);
+        final ByteBuffer message = ByteBuffer.allocate(1024 * 1024);
+
+        try (GelfTransport transport = new TcpGelfTransport(connection, TransportListener.NOOP);
+             Socket socket = connectAndAccept(transport)) {
+            boolean sent = true;
+            for (int i = 0; sent && i < 256; i++) {
+                message.clear();
+                final long start = System.nanoTime();
+                sent = transport.send(message);
+                assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(2));
+            }
+
+            assertThat(sent).isFalse();
+            assertThat(socket.isClosed()).isFalse();
+        }
+
+        assertThat(errors.toString()).contains("Timed out after 200 ms");
+    }
+
+    private Socket connectAndAccept(GelfTransport transport) throws IOException {
+        assertThat(transport.send(utf8("{}"))).isTrue();
+        return server.accept();
+    }
+
+    private static ByteBuffer utf8(String message) {
+        return ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readMessage(InputStream in) throws IOException {
+        final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) > 0) {
+            message.write(b);
+        }
+        return new String(message.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,179 @@
+package net.gini.dropwizard.gelf.transport;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UdpGelfTransportTest {
+
+    private DatagramSocket server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(5000);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void sendsCompressedDatagram() throws IOException {
+        final String message = "{\"short_message\":\"Hello\"}";
+
+        try (GelfTransport transport = transport(8192)) {
+            assertThat(transport.send(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)))).isTrue();
+        }
+
+        assertThat(gunzip(receive())).isEqualTo(message);
+    }
+
+    @Test
+    public void sendsSmallMessagesUncompressedBelowThreshold() throws IOException {
+        final String message = "{\"short_message\":\"Hello\"}";
+
+        try (GelfTransport transport = GelfTransports.builder("udp:127.0.0.1", server.getLocalPort())
+                .compression(Compression.ZLIB)
+                .compressionThreshold(64)
+                .build()) {
+            assertThat(transport.send(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)))).isTrue();
+        }
+
+        assertThat(new String(receive(), StandardCharsets.UTF_8)).isEqualTo(message);
+    }
+
+    @Test
+    public void sharesPooledCompressorsBetweenSendingThreads() throws Exception {
+        final UdpGelfTransport transport = (UdpGelfTransport) transport(8192);
+        final ByteBuffer message = ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8));
+        assertThat(transport.send(message.duplicate())).isTrue();
+        for (int i = 0; i < 3; i++) {
+            final Thread sender = new Thread(() -> transport.send(message.duplicate()));
+            sender.start();
+            sender.join();
+        }
+        assertThat(transport.getCompressorCount()).isEqualTo(1);
+
+        transport.close();
+
+        assertThat(transport.getCompressorCount()).isZero();
+    }
+
+    @Test
+    public void resendsOnlyFailedChunkAfterChannelHasBeenClosed() throws IOException {
+        final byte[] random = new byte[2048];
+        ThreadLocalRandom.current().nextBytes(random);
+        final String message = "{\"short_message\":\"" + Arrays.toString(random) + "\"}";
+        final AtomicInteger sent = new AtomicInteger();
+
+        try (GelfTransport transport = GelfTransports.builder("udp:127.0.0.1", server.getLocalPort())
+                .maximumMessageSize(512)
+                .listener(new TransportListener() {
+                    @Override
+                    public void datagramSent(int bytes) {
+                        if (sent.incrementAndGet() == 1) {
+                            // Closes the channel on the next write
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                })
+                .build()) {
+            assertThat(transport.send(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)))).isTrue();
+            assertThat(Thread.interrupted()).isTrue();
+        }
+
+        final byte[] first = receive();
+        final int count = first[11];
+        assertThat(sent.get()).isEqualTo(count);
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(first, UdpGelfTransport.CHUNK_HEADER_SIZE, first.length - UdpGelfTransport.CHUNK_HEADER_SIZE);
+        for (int sequence = 1; sequence < count; sequence++) {
+            final byte[] chunk = receive();
+            assertThat(chunk[10]).isEqualTo((byte) sequence);
+            payload.write(chunk, UdpGelfTransport.CHUNK_HEADER_SIZE, chunk.length - UdpGelfTransport.CHUNK_HEADER_SIZE);
+        }
+        assertThat(gunzip(payload.toByteArray())).isEqualTo(message);
+
+        server.setSoTimeout(100);
+        assertThatThrownBy(this::receive).isInstanceOf(SocketTimeoutException.class);
+    }
+
+    @Test
+    public void sendsChunksForLargeMessages() throws IOException {
+        final byte[] random = new byte[2048];
+        ThreadLocalRandom.current().nextBytes(random);
+        final String message = "{\"short_message\":\"" + Arrays.toString(random) + "\"}";
+
+        try (GelfTransport transport = transport(512)) {
+            assertThat(transport.send(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)))).isTrue();
+        }
+
+        final byte[] first = receive();
+        assertThat(first[0]).isEqualTo((byte) 0x1e);
+        assertThat(first[1]).isEqualTo((byte) 0x0f);
+        final int count = first[11];
+        assertThat(count).isGreaterThan(1);
+
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(first, UdpGelfTransport.CHUNK_HEADER_SIZE, first.length - UdpGelfTransport.CHUNK_HEADER_SIZE);
+        for (int sequence = 1; sequence < count; sequence++) {
+            final byte[] chunk = receive();
+            assertThat(Arrays.copyOfRange(chunk, 2, 10)).isEqualTo(Arrays.copyOfRange(first, 2, 10));
+            assertThat(chunk[10]).isEqualTo((byte) sequence);
+            assertThat(chunk.length).isLessThanOrEqualTo(UdpGelfTransport.CHUNK_HEADER_SIZE + 512);
+            payload.write(chunk, UdpGelfTransport.CHUNK_HEADER_SIZE, chunk.length - UdpGelfTransport.CHUNK_HEADER_SIZE);
+        }
+
+        assertThat(gunzip(payload.toByteArray())).isEqualTo(message);
+    }
+
+    @Test
+    public void rejectsMessagesExceedingMaximumNumberOfChunks() {
+        final byte[] random = new byte[128 * 64];
+        ThreadLocalRandom.current().nextBytes(random);
+        final String message = Strings.repeat(Arrays.toString(random), 2);
+
+        try (GelfTransport transport = transport(32)) {
+            assertThat(transport.send(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)))).isFalse();
+        }
+    }
+
+    private GelfTransport transport(int maximumMessageSize) {
+        return GelfTransports.builder("udp:127.0.0.1", server.getLocalPort())
+                .maximumMessageSize(maximumMessageSize)
+                .build();
+    }
+
+    private byte[] receive() throws IOException {
+        final DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
+        server.receive(packet);
+        return Arrays.copyOf(packet.getData(), packet.getLength());
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package net.gini.dropwizard.gelf.transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class UnixGelfTransportTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private String path;
+    private ServerSocketChannel server;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("Unix domain sockets require Java 16 or later", UnixDomainSockets.isSupported());
+        path = folder.getRoot().toPath().resolve("gelf.sock").toString();
+        // Opened reflectively, the tests are compiled against the Java 8 API
+        server = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class)
+                .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+        server.bind(UnixDomainSockets.address(path));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void supportsUnixHosts() {
+        assertThat(GelfTransports.supports("unix:" + path)).isTrue();
+        assertThat(GelfTransports.supports("unix:")).isFalse();
+        assertThat(GelfTransports.isUnix("UNIX:" + path)).isTrue();
+        assertThat(GelfTransports.isStream("unix:" + path)).isTrue();
+        assertThat(GelfTransports.isTcp("unix:" + path)).isFalse();
+    }
+
+    @Test
+    public void sendsNullByteDelimitedMessages() throws IOException {
+        try (GelfTransport transport = GelfTransports.builder("unix:" + path, 0).build()) {
+            assertThat(transport.send(utf8("{\"short_message\":\"first\"}"))).isTrue();
+            assertThat(transport.send(utf8("{\"short_message\":\"second\"}"))).isTrue();
+
+            try (SocketChannel client = server.accept()) {
+                final InputStream in = Channels.newInputStream(client);
+                assertThat(readMessage(in)).isEqualTo("{\"short_message\":\"first\"}");
+                assertThat(readMessage(in)).isEqualTo("{\"short_message\":\"second\"}");
+            }
+        }
+    }
+
+    @Test
+    public void sendsBatchedMessages() throws IOException {
+        try (GelfTransport transport = GelfTransports.builder("unix:" + path, 0)
+                .batchBytes(1024)
+                .lingerMillis(10L)
+                .build()) {
+            assertThat(transport).isInstanceOf(BatchingTcpGelfTransport.class);
+            assertThat(transport.send(utf8("{\"short_message\":\"first\"}"))).isTrue();
+            assertThat(transport.send(utf8("{\"short_message\":\"second\"}"))).isTrue();
+
+            try (SocketChannel client = server.accept()) {
+                final InputStream in = Channels.newInputStream(client);
+                assertThat(readMessage(in)).isEqualTo("{\"short_message\":\"first\"}");
+                assertThat(readMessage(in)).isEqualTo("{\"short_message\":\"second\"}");
+            }
+        }
+    }
+
+    @Test
+    public void reportsConnectionFailures() throws IOException {
+        server.close();
+        Files.deleteIfExists(folder.getRoot().toPath().resolve("gelf.sock"));
+        final StringBuilder errors = new StringBuilder();
+
+        try (GelfTransport transport = GelfTransports.builder("unix:" + path, 0)
+                .errorReporter((message, e) -> errors.append(message))
+                .build()) {
+            assertThat(transport.send(utf8("{}"))).isFalse();
+        }
+
+        assertThat(errors.toString()).startsWith("Could not send GELF message to " + path);
+    }
+
+    private static ByteBuffer utf8(String message) {
+        return ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readMessage(InputStream in) throws IOException {
+        final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) > 0) {
+            message.write(b);
+        }
+        return new String(message.toByteArray(), StandardCharsets.UTF_8);
+    }
+}